@@ -52,6 +52,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.tuweni.bytes.Bytes;
 import org.hyperledger.besu.crypto.KeyPair;
 
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -69,6 +73,8 @@ public class Kernel {
     protected AddressStore addressStore;
     protected BlockStore blockStore;
     protected OrphanBlockStore orphanBlockStore;
+    // Overlay buffering the block index and address writes of one main block
+    protected WriteSet writeSet;
     protected TransactionHistoryStore txHistoryStore;
 
     protected SnapshotStore snapshotStore;
@@ -105,6 +111,10 @@ public class Kernel {
     // RPC related components
     protected XdagApi api;
 
+    // Replica mode: period to catch up with the primary, in milliseconds
+    public static final long REPLICA_CATCH_UP_PERIOD = 1000;
+    protected ScheduledExecutorService replicaCatchUp;
+
     public Kernel(Config config, Wallet wallet) {
         this.config = config;
         this.wallet = wallet;
@@ -135,17 +145,31 @@ public class Kernel {
         netDBMgr.start();
 
         // Initialize database components
-        dbFactory = new RocksdbFactory(this.config);
+        dbFactory = config.getNodeSpec().isStoreMemoryEnabled() ? new MemoryDatabaseFactory()
+                : new RocksdbFactory(this.config);
+        writeSet = new WriteSet();
+        writeSet.setVerify(config.getNodeSpec().isStoreWriteSetVerify());
+        // the height index is a mapped file, in-memory stores keep heights in the index source only
+        KVSource<byte[], byte[]> heightSource = dbFactory.getDB(DatabaseName.HEIGHT);
+        WriteSetKVSource indexSource = new WriteSetKVSource(dbFactory.getDB(DatabaseName.INDEX), writeSet);
+        WriteSetKVSource addressSource = new WriteSetKVSource(dbFactory.getDB(DatabaseName.ADDRESS), writeSet);
+        writeSet.setJournal(indexSource, new byte[]{BlockStore.SETTING_WRITE_SET_JOURNAL});
+        if (config.getNodeSpec().isStoreSegmentEnabled()) {
+            importSegments();
+        }
         blockStore = new BlockStoreImpl(
-                dbFactory.getDB(DatabaseName.INDEX),
+                indexSource,
                 dbFactory.getDB(DatabaseName.BLOCK),
-                dbFactory.getDB(DatabaseName.TIME),
-                dbFactory.getDB(DatabaseName.TXHISTORY));
+                dbFactory.getDB(config.getNodeSpec().isStoreSegmentEnabled() ? DatabaseName.SEGMENT : DatabaseName.TIME),
+                dbFactory.getDB(DatabaseName.TXHISTORY),
+                heightSource instanceof HeightKVSource ? (HeightKVSource) heightSource : null);
         log.info("Block Store init.");
         blockStore.start();
 
-        addressStore = new AddressStoreImpl(dbFactory.getDB(DatabaseName.ADDRESS));
+        addressStore = new AddressStoreImpl(addressSource);
         addressStore.start();
+        // the index and address databases are written in separate batches, finish any cut short
+        writeSet.recover();
 
 
         orphanBlockStore = new OrphanBlockStoreImpl(dbFactory.getDB(DatabaseName.ORPHANIND));
@@ -248,6 +272,109 @@ public class Kernel {
         Launcher.registerShutdownHook("kernel", this::testStop);
     }
 
+    /**
+     * A data directory written without segment files keeps its raw blocks in RocksDB, copy them over once
+     * before the block store reads from the segments.
+     */
+    private void importSegments() throws IOException {
+        if (!(dbFactory.getDB(DatabaseName.SEGMENT) instanceof SegmentKVSource segments)) {
+            return;
+        }
+        segments.init();
+        if (!segments.isEmpty() && !segments.isImportPending()) {
+            return;
+        }
+        KVSource<byte[], byte[]> timeSource = dbFactory.getDB(DatabaseName.BLOCK);
+        timeSource.init();
+        boolean[] hasBlocks = {false};
+        timeSource.fetchPrefix(new byte[]{BlockStore.TIME_HASH_INFO}, pair -> hasBlocks[0] = true);
+        if (!hasBlocks[0] && !segments.isImportPending()) {
+            return;
+        }
+        KVSource<byte[], byte[]> rawSource = dbFactory.getDB(DatabaseName.TIME);
+        rawSource.init();
+        long start = System.currentTimeMillis();
+        long copied = segments.importFrom(timeSource, rawSource);
+        if (copied > 0) {
+            log.info("Copied {} raw blocks into segment files in {} ms", copied, System.currentTimeMillis() - start);
+        }
+        rawSource.close();
+    }
+
+    /**
+     * Start the kernel as a read-only replica: the stores are opened as RocksDB secondary instances over
+     * the primary's store dir and only the RPC server runs. Stats are reloaded after each catch up.
+     */
+    public synchronized void replicaStart() {
+        if (isRunning.get()) {
+            return;
+        }
+        if (!config.getNodeSpec().isStoreReplicaEnabled()) {
+            throw new IllegalStateException("replica start requires node.store.replica.enable");
+        }
+        if (config.getNodeSpec().isStoreSegmentEnabled() || config.getNodeSpec().isStoreMemoryEnabled()) {
+            throw new IllegalStateException("replica mode only follows RocksDB stores");
+        }
+        isRunning.set(true);
+        startEpoch = XdagTime.getCurrentEpoch();
+
+        // Initialize database components as secondary instances, the height index is left to the primary
+        dbFactory = new RocksdbFactory(this.config);
+        blockStore = new BlockStoreImpl(
+                dbFactory.getDB(DatabaseName.INDEX),
+                dbFactory.getDB(DatabaseName.BLOCK),
+                dbFactory.getDB(DatabaseName.TIME),
+                dbFactory.getDB(DatabaseName.TXHISTORY));
+        blockStore.start();
+        addressStore = new AddressStoreImpl(dbFactory.getDB(DatabaseName.ADDRESS));
+        addressStore.start();
+        orphanBlockStore = new OrphanBlockStoreImpl(dbFactory.getDB(DatabaseName.ORPHANIND));
+        orphanBlockStore.start();
+        log.info("Replica stores opened, following {}", config.getNodeSpec().getStoreDir());
+
+        if (config.getEnableTxHistory()) {
+            txHistoryStore = new TransactionHistoryStoreImpl(config.getTxPageSizeLimit());
+        }
+
+        BlockchainImpl chain = new BlockchainImpl(this);
+        blockchain = chain;
+
+        replicaCatchUp = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "replica-catch-up"));
+        replicaCatchUp.scheduleAtFixedRate(() -> {
+            try {
+                for (DatabaseName name : new DatabaseName[]{DatabaseName.INDEX, DatabaseName.BLOCK,
+                        DatabaseName.TIME, DatabaseName.TXHISTORY, DatabaseName.ADDRESS, DatabaseName.ORPHANIND}) {
+                    ((RocksdbKVSource) dbFactory.getDB(name)).tryCatchUpWithPrimary();
+                }
+                chain.loadStatus();
+            } catch (Throwable e) {
+                log.error(e.getMessage(), e);
+            }
+        }, REPLICA_CATCH_UP_PERIOD, REPLICA_CATCH_UP_PERIOD, TimeUnit.MILLISECONDS);
+
+        // Start RPC
+        api = new XdagApiImpl(this);
+        api.start();
+
+        Launcher.registerShutdownHook("kernel", this::replicaStop);
+    }
+
+    /**
+     * Stops a kernel started with {@link #replicaStart()}.
+     */
+    public synchronized void replicaStop() {
+        if (!isRunning.get()) {
+            return;
+        }
+        isRunning.set(false);
+
+        if (api != null) {
+            api.stop();
+        }
+        replicaCatchUp.shutdownNow();
+        dbFactory.close();
+    }
+
     /**
      * Stops the kernel in an orderly fashion.
      */
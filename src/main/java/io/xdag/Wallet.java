@@ -65,7 +65,6 @@ import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
@@ -93,6 +92,10 @@ public class Wallet {
     private final Config config;
 
     private final Map<Bytes, KeyPair> accounts = Collections.synchronizedMap(new LinkedHashMap<>());
+    /**
+     * Position of each account in {@link #getAccounts()} by address, guarded by {@link #accounts}
+     */
+    private final Map<Bytes, Integer> accountIndex = new HashMap<>();
     private String password;
 
     // HD wallet key
@@ -132,15 +135,17 @@ public class Wallet {
      */
     public void lock() {
         password = null;
-        accounts.clear();
+        synchronized (accounts) {
+            accounts.clear();
+            accountIndex.clear();
+        }
     }
 
     public KeyPair getDefKey() {
-        List<KeyPair> accountList = getAccounts();
-        if (CollectionUtils.isNotEmpty(accountList)) {
-            return accountList.get(0);
+        requireUnlocked();
+        synchronized (accounts) {
+            return accounts.isEmpty() ? null : accounts.values().iterator().next();
         }
-        return null;
     }
 
     /**
@@ -183,6 +188,7 @@ public class Wallet {
                         Bytes b = Bytes.wrap(Keys.toBytesAddress(account));
                         accounts.put(b, account);
                     }
+                    reindex();
                 }
             }
             this.password = password;
@@ -282,12 +288,26 @@ public class Wallet {
      */
     public void setAccounts(List<KeyPair> list) {
         requireUnlocked();
-        accounts.clear();
+        synchronized (accounts) {
+            accounts.clear();
+            accountIndex.clear();
+        }
         for (KeyPair key : list) {
             addAccount(key);
         }
     }
 
+    /**
+     * Returns the index of an account in {@link #getAccounts()}, or -1 if the address is not ours.
+     */
+    public int getAccountIndex(byte[] address) {
+        requireUnlocked();
+        synchronized (accounts) {
+            Integer index = accountIndex.get(Bytes.wrap(address));
+            return index == null ? -1 : index;
+        }
+    }
+
     /**
      * Returns account by index.
      */
@@ -366,6 +386,7 @@ public class Wallet {
             }
 
             accounts.put(b, newKey);
+            accountIndex.put(b, accountIndex.size());
             return true;
         }
     }
@@ -406,7 +427,11 @@ public class Wallet {
     public boolean removeAccount(byte[] address) {
         requireUnlocked();
         synchronized (accounts) {
-            return accounts.remove(Bytes.of(address)) != null;
+            if (accounts.remove(Bytes.of(address)) == null) {
+                return false;
+            }
+            reindex();
+            return true;
         }
     }
 
@@ -467,11 +492,21 @@ public class Wallet {
             Bip32ECKeyPair masterKeypair = Bip32ECKeyPair.generateKeyPair(seed);
             Bip32ECKeyPair bip44Keypair = WalletUtils.generateBip44KeyPair(masterKeypair, nextAccountIndex++);
             Bytes b = Bytes.wrap(Keys.toBytesAddress(bip44Keypair.getKeyPair()));
-            accounts.put(b, bip44Keypair.getKeyPair());
+            if (accounts.put(b, bip44Keypair.getKeyPair()) == null) {
+                accountIndex.put(b, accountIndex.size());
+            }
             return bip44Keypair.getKeyPair();
         }
     }
 
+    private void reindex() {
+        accountIndex.clear();
+        int i = 0;
+        for (Bytes address : accounts.keySet()) {
+            accountIndex.put(address, i++);
+        }
+    }
+
     private void requireHdWalletInitialized() {
         if (!isHdWalletInitialized()) {
             throw new IllegalArgumentException("HD Seed is not initialized");
@@ -286,7 +286,7 @@ public class Commands {
             ImportResult result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
             if (result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST) {
                 kernel.getChannelMgr().sendNewBlock(blockWrapper);
-                Block block = new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray()));
+                Block block = new Block(blockWrapper.getBlock().getXdagBlock());
                 List<Address> inputs = block.getInputs();
                 UInt64 blockNonce = block.getTxNonceField().getTransactionNonce();
                 for (Address input : inputs) {
@@ -669,6 +669,30 @@ public class Commands {
         return "Key " + (size - 1) + " generated and set as default,now key size is:" + size;
     }
 
+    /**
+     * Get the state hash of all balances after the main block at a height
+     * @param height Main block height, 0 for the latest
+     */
+    public String stateHash(long height) {
+        if (height <= 0) {
+            height = kernel.getBlockchain().getXdagStats().nmain;
+        }
+        Bytes32 stateHash = kernel.getBlockchain().getStateHash(height);
+        if (stateHash == null) {
+            return "No state hash at height " + height;
+        }
+        return String.format("state hash at height %d: %s", height, stateHash.toUnprefixedHexString());
+    }
+
+    /**
+     * Recompute the state hash of the latest main block from all balances
+     */
+    public String rebuildStateHash() {
+        Bytes32 stateHash = kernel.getBlockchain().rebuildStateHash();
+        return String.format("state hash at height %d rebuilt: %s", kernel.getBlockchain().getXdagStats().nmain,
+                stateHash.toUnprefixedHexString());
+    }
+
     /**
      * Get current XDAG state
      */
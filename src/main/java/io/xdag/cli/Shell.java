@@ -78,6 +78,7 @@ public class Shell extends JlineCommandRegistry implements CommandRegistry, Teln
         commandExecute.put("mainblocks", new CommandMethods(this::processMainBlocks, this::defaultCompleter));
         commandExecute.put("minedblocks", new CommandMethods(this::processMinedblocks, this::defaultCompleter));
         commandExecute.put("state", new CommandMethods(this::processState, this::defaultCompleter));
+        commandExecute.put("statehash", new CommandMethods(this::processStateHash, this::defaultCompleter));
         commandExecute.put("stats", new CommandMethods(this::processStats, this::defaultCompleter));
         commandExecute.put("xfer", new CommandMethods(this::processXfer, this::defaultCompleter));
         commandExecute.put("xfertonew", new CommandMethods(this::processXferToNew, this::defaultCompleter));
@@ -348,6 +349,33 @@ public class Shell extends JlineCommandRegistry implements CommandRegistry, Teln
         }
     }
 
+    private void processStateHash(CommandInput input) {
+        final String[] usage = {
+                "statehash -  print the state hash of all balances at main block [HEIGHT] (the latest by default)",
+                "Usage: statehash [HEIGHT]",
+                "  -? --help                    Show help",
+                "  -r --rebuild                 recompute the state hash of the latest main block from all balances",
+        };
+        try {
+            Options opt = parseOptions(usage, input.args());
+            List<String> argv = opt.args();
+            if (opt.isSet("help")) {
+                throw new Options.HelpException(opt.usage());
+            }
+            if (opt.isSet("rebuild")) {
+                println(commands.rebuildStateHash());
+                return;
+            }
+            long height = 0;
+            if (!argv.isEmpty() && NumberUtils.isDigits(argv.get(0))) {
+                height = NumberUtils.toLong(argv.get(0));
+            }
+            println(commands.stateHash(height));
+        } catch (Exception e) {
+            saveException(e);
+        }
+    }
+
     private void processStats(CommandInput input) {
         final String[] usage = {
                 "stats -  print statistics for loaded and all known blocks",
@@ -134,6 +134,12 @@ public class XdagCli extends Launcher {
                 .hasArg(true).optionalArg(true).argName("covertuint").type(String.class)
                 .build();
         addOption(makeSnapshotOption);
+
+        Option replicaOption = Option.builder()
+                .longOpt(XdagOption.REPLICA.toString())
+                .desc("serve rpc from a read-only replica of the local node's store")
+                .build();
+        addOption(replicaOption);
     }
 
     public static void main(String[] args, XdagCli cli) throws Exception {
@@ -213,6 +219,9 @@ public class XdagCli extends Launcher {
                     System.out.println("params error");
                 }
             }
+            if (cmd.hasOption(XdagOption.REPLICA.toString())) {
+                config.getNodeSpec().setStoreReplicaEnabled(true);
+            }
             start();
         }
     }
@@ -262,7 +271,11 @@ public class XdagCli extends Launcher {
      */
     protected Kernel startKernel(Config config, Wallet wallet) throws Exception {
         Kernel kernel = new Kernel(config, wallet);
-        kernel.testStart();
+        if (config.getNodeSpec().isStoreReplicaEnabled()) {
+            kernel.replicaStart();
+        } else {
+            kernel.testStart();
+        }
         return kernel;
     }
 
@@ -79,6 +79,11 @@ public enum XdagOption {
      */
     ENABLE_SNAPSHOT("enablesnapshot"),
 
+    /**
+     * Start as a read-only RPC replica of a local node
+     */
+    REPLICA("replica"),
+
     /**
      * Create a new snapshot
      */
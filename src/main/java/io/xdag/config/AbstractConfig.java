@@ -105,6 +105,16 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
     protected int storeMaxOpenFiles = 1024;
     protected int storeMaxThreads = 1;
     protected boolean storeFromBackup = false;
+    protected boolean storeSegmentEnabled = false;
+    protected boolean storeMemoryEnabled = false;
+    protected boolean storeReplicaEnabled = false;
+    protected String storeReplicaDir;
+    protected boolean storeWriteSetVerify = false;
+    protected boolean importPipelineEnabled = false;
+    protected int importPipelineThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    protected boolean applyParallelEnabled = false;
+    protected int applyParallelThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    protected boolean applyParallelVerify = false;
     protected String originStoreDir = "./testdate";
 
     // Whitelist configuration
@@ -160,6 +170,9 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
     public void setDir() {
         storeDir = getRootDir() + "/rocksdb/xdagdb";
         storeBackupDir = getRootDir() + "/rocksdb/xdagdb/backupdata";
+        if (storeReplicaDir == null) {
+            storeReplicaDir = getRootDir() + "/rocksdb/replica";
+        }
     }
 
     @Override
@@ -248,6 +261,20 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
         maxInboundConnectionsPerIp = config.getInt("node.maxInboundConnectionsPerIp");
         enableTxHistory = config.hasPath("node.transaction.history.enable") && config.getBoolean("node.transaction.history.enable");
         enableGenerateBlock = config.hasPath("node.generate.block.enable") && config.getBoolean("node.generate.block.enable");
+        storeSegmentEnabled = config.hasPath("node.store.segment.enable") && config.getBoolean("node.store.segment.enable");
+        storeMemoryEnabled = config.hasPath("node.store.memory.enable") && config.getBoolean("node.store.memory.enable");
+        storeReplicaEnabled = config.hasPath("node.store.replica.enable") && config.getBoolean("node.store.replica.enable");
+        storeReplicaDir = config.hasPath("node.store.replica.dir") ? config.getString("node.store.replica.dir") : null;
+        storeWriteSetVerify = config.hasPath("node.store.writeset.verify") && config.getBoolean("node.store.writeset.verify");
+        importPipelineEnabled = config.hasPath("node.import.pipeline.enable") && config.getBoolean("node.import.pipeline.enable");
+        if (config.hasPath("node.import.pipeline.threads")) {
+            importPipelineThreads = Math.max(1, config.getInt("node.import.pipeline.threads"));
+        }
+        applyParallelEnabled = config.hasPath("node.apply.parallel.enable") && config.getBoolean("node.apply.parallel.enable");
+        if (config.hasPath("node.apply.parallel.threads")) {
+            applyParallelThreads = Math.max(1, config.getInt("node.apply.parallel.threads"));
+        }
+        applyParallelVerify = config.hasPath("node.apply.parallel.verify") && config.getBoolean("node.apply.parallel.verify");
         txPageSizeLimit = config.hasPath("node.transaction.history.pageSizeLimit") ? config.getInt("node.transaction.history.pageSizeLimit") : 500;
         fundAddress = config.hasPath("fund.address") ? config.getString("fund.address") : "4duPWMbYUgAifVYkKDCWxLvRRkSByf5gb";
         fundRation = config.hasPath("fund.ration") ? config.getDouble("fund.ration") : 5;
@@ -88,7 +88,10 @@ public class Constants {
     public enum MessageType {
         UPDATE,
         PRE_TOP,
-        NEW_LINK
+        NEW_LINK,
+        NEW_MAIN,
+        UNWIND_MAIN,
+        BALANCE
     }
 
     public static final short MAINNET_VERSION = 0;
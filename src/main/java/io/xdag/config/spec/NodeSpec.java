@@ -79,6 +79,23 @@ public interface NodeSpec {
     int getStoreMaxOpenFiles();
     int getStoreMaxThreads();
     boolean isStoreFromBackup();
+    boolean isStoreSegmentEnabled();
+    boolean isStoreMemoryEnabled();
+    boolean isStoreReplicaEnabled();
+    void setStoreReplicaEnabled(boolean enabled);
+    String getStoreReplicaDir();
+    boolean isStoreWriteSetVerify();
+
+    // Block import pipeline
+    boolean isImportPipelineEnabled();
+    int getImportPipelineThreads();
+
+    // Transactions of a main block
+    boolean isApplyParallelEnabled();
+    void setApplyParallelEnabled(boolean enabled);
+    int getApplyParallelThreads();
+    boolean isApplyParallelVerify();
+    void setApplyParallelVerify(boolean verify);
 
     // Network packet settings
     int getNetMaxFrameBodySize();
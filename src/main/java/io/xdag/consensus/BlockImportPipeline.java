@@ -0,0 +1,221 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import io.xdag.core.AbstractXdagLifecycle;
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.core.Blockchain;
+import io.xdag.core.ImportResult;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Two-stage block import pipeline.
+ * <p>
+ * Stage one runs the context-free checks (type, time bounds, field layout, hashing and
+ * signature verification) on a worker pool. Stage two is a single writer that applies the
+ * state-dependent part through {@link SyncManager#validateAndAddNewBlock(BlockWrapper)}.
+ * Commits happen strictly in submission order, so the behaviour of the chain is the same
+ * as importing every block directly; only the expensive work moves off the writer thread.
+ */
+@Slf4j
+public class BlockImportPipeline extends AbstractXdagLifecycle {
+
+    // Maximum number of blocks admitted to the pipeline but not yet committed
+    public static final int MAX_PENDING = 4096;
+    // Number of commits between two throughput reports
+    public static final long REPORT_INTERVAL = 10000;
+
+    private final Blockchain blockchain;
+    private final Function<BlockWrapper, ImportResult> committer;
+    private final int threads;
+    private final Semaphore pending = new Semaphore(MAX_PENDING);
+
+    @Getter
+    private final StageStats validateStats = new StageStats("validate");
+    @Getter
+    private final StageStats commitStats = new StageStats("commit");
+
+    private ExecutorService validators;
+    private ExecutorService writer;
+
+    public BlockImportPipeline(Blockchain blockchain, Function<BlockWrapper, ImportResult> committer, int threads) {
+        this.blockchain = blockchain;
+        this.committer = committer;
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    protected void doStart() {
+        validators = Executors.newFixedThreadPool(threads, new BasicThreadFactory.Builder()
+                .namingPattern("ImportValidate-thread-%d")
+                .daemon(true)
+                .build());
+        writer = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+                .namingPattern("ImportCommit-thread-%d")
+                .daemon(true)
+                .build());
+        log.info("Block import pipeline started with {} validation threads", threads);
+    }
+
+    @Override
+    protected void doStop() {
+        validators.shutdown();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        validators.shutdownNow();
+        report();
+    }
+
+    /**
+     * Submit a block to the pipeline. Blocks the caller while {@link #MAX_PENDING} blocks are in flight.
+     * Falls through to a direct import when the pipeline is not running.
+     */
+    public CompletableFuture<ImportResult> submit(BlockWrapper blockWrapper) {
+        if (!isRunning()) {
+            return CompletableFuture.completedFuture(committer.apply(blockWrapper));
+        }
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(ImportResult.ERROR);
+        }
+        try {
+            CompletableFuture<Boolean> validated = CompletableFuture.supplyAsync(() -> validate(blockWrapper), validators);
+            // The writer is single threaded and tasks are queued here, in submission order
+            return CompletableFuture.supplyAsync(() -> commit(blockWrapper, validated), writer);
+        } catch (RuntimeException e) {
+            pending.release();
+            log.debug("Block import pipeline rejected block:{}", blockWrapper.getBlock().getHashLow());
+            return CompletableFuture.completedFuture(ImportResult.ERROR);
+        }
+    }
+
+    private boolean validate(BlockWrapper blockWrapper) {
+        long start = System.nanoTime();
+        try {
+            Block block = new Block(blockWrapper.getBlock().getXdagBlock());
+            boolean ok = blockchain.preValidate(block);
+            if (ok) {
+                blockWrapper.setPrepared(block);
+            }
+            return ok;
+        } catch (Throwable e) {
+            log.debug("Block pre-validation failed:{}", e.getMessage());
+            return false;
+        } finally {
+            validateStats.record(System.nanoTime() - start);
+        }
+    }
+
+    private ImportResult commit(BlockWrapper blockWrapper, CompletableFuture<Boolean> validated) {
+        try {
+            if (!validated.join()) {
+                validateStats.rejected.incrementAndGet();
+                return ImportResult.INVALID_BLOCK;
+            }
+            long start = System.nanoTime();
+            try {
+                return committer.apply(blockWrapper);
+            } finally {
+                commitStats.record(System.nanoTime() - start);
+                if (commitStats.getCount() % REPORT_INTERVAL == 0) {
+                    report();
+                }
+            }
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+            return ImportResult.ERROR;
+        } finally {
+            pending.release();
+        }
+    }
+
+    private void report() {
+        log.info("Block import pipeline: {}, {}", validateStats, commitStats);
+    }
+
+    /**
+     * Counters of one pipeline stage
+     */
+    public static class StageStats {
+        private final String name;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        void record(long elapsed) {
+            nanos.addAndGet(elapsed);
+            count.incrementAndGet();
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public long getNanos() {
+            return nanos.get();
+        }
+
+        /**
+         * Blocks per second of busy time, summed over all threads of the stage
+         */
+        public double getThroughput() {
+            long n = nanos.get();
+            return n == 0 ? 0 : count.get() * 1e9 / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[count=%d, rejected=%d, %.1f blocks/s]", name, getCount(), getRejected(), getThroughput());
+        }
+    }
+}
@@ -27,6 +27,7 @@ package io.xdag.consensus;
 import com.google.common.collect.Queues;
 import io.xdag.Kernel;
 import io.xdag.config.*;
+import io.xdag.config.spec.NodeSpec;
 import io.xdag.core.*;
 import io.xdag.db.TransactionHistoryStore;
 import io.xdag.net.Channel;
@@ -40,10 +41,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.FastDateFormat;
+import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt64;
 import org.hyperledger.besu.crypto.SecureRandomProvider;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Queue;
@@ -86,7 +91,7 @@ public class SyncManager extends AbstractXdagLifecycle {
     /**
      * Queue for blocks with missing links
      */
-    private ConcurrentHashMap<Bytes32, Queue<BlockWrapper>> syncMap = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<HashLow, Queue<BlockWrapper>> syncMap = new ConcurrentHashMap<>();
     /**
      * Queue for polling oldest blocks
      */
@@ -96,6 +101,10 @@ public class SyncManager extends AbstractXdagLifecycle {
 
     private ScheduledFuture<?> checkStateFuture;
     private final TransactionHistoryStore txHistoryStore;
+    /**
+     * Import pipeline for blocks received from the network, null when disabled
+     */
+    private BlockImportPipeline importPipeline;
 
     public SyncManager(Kernel kernel) {
         this.kernel = kernel;
@@ -104,11 +113,19 @@ public class SyncManager extends AbstractXdagLifecycle {
         this.stateListener = new StateListener();
         checkStateTask = new ScheduledThreadPoolExecutor(1, factory);
         this.txHistoryStore = kernel.getTxHistoryStore();
+        NodeSpec nodeSpec = kernel.getConfig().getNodeSpec();
+        if (nodeSpec.isImportPipelineEnabled()) {
+            this.importPipeline = new BlockImportPipeline(blockchain, this::validateAndAddNewBlock,
+                    nodeSpec.getImportPipelineThreads());
+        }
     }
 
     @Override
     protected void doStart() {
         log.debug("Download receiveBlock run...");
+        if (importPipeline != null) {
+            importPipeline.start();
+        }
         new Thread(this.stateListener, "xdag-stateListener").start();
         checkStateFuture = checkStateTask.scheduleAtFixedRate(this::checkState, 64, 5, TimeUnit.SECONDS);
     }
@@ -120,6 +137,9 @@ public class SyncManager extends AbstractXdagLifecycle {
             this.stateListener.isRunning = false;
         }
         stopStateTask();
+        if (importPipeline != null) {
+            importPipeline.stop();
+        }
     }
 
     private void checkState() {
@@ -173,8 +193,13 @@ public class SyncManager extends AbstractXdagLifecycle {
     // TODO: Modify consensus
     public ImportResult importBlock(BlockWrapper blockWrapper) {
         log.debug("importBlock:{}", blockWrapper.getBlock().getHashLow());
-        ImportResult importResult = blockchain
-                .tryToConnect(new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray())));
+        Block block = blockWrapper.getPrepared();
+        if (block != null) {
+            blockWrapper.setPrepared(null);
+        } else {
+            block = new Block(blockWrapper.getBlock().getXdagBlock());
+        }
+        ImportResult importResult = blockchain.tryToConnect(block);
 
         if (importResult == EXIST) {
             log.debug("Block have exist:{}", blockWrapper.getBlock().getHashLow());
@@ -192,6 +217,88 @@ public class SyncManager extends AbstractXdagLifecycle {
         return importResult;
     }
 
+    /**
+     * Import a block received from the network, through the import pipeline when it is enabled
+     */
+    public void submitBlock(BlockWrapper blockWrapper) {
+        if (importPipeline != null && importPipeline.isRunning()) {
+            importPipeline.submit(blockWrapper);
+        } else {
+            validateAndAddNewBlock(blockWrapper);
+        }
+    }
+
+    /**
+     * Import a local account transaction, or hold it in the pending pool while the nonces before it
+     * are missing. Held transactions of the sender that become next are imported right after it.
+     * Any other block is imported as is.
+     */
+    public synchronized ImportResult submitTransaction(BlockWrapper blockWrapper) {
+        Block block = blockWrapper.getBlock();
+        block.parse();
+        Bytes sender = PendingTxPool.senderOf(block);
+        if (sender == null) {
+            return validateAndAddNewBlock(blockWrapper);
+        }
+        long nonce = PendingTxPool.nonceOf(block);
+        long nextNonce = kernel.getAddressStore().getTxQuantity(sender.toArrayUnsafe()).toLong() + 1;
+        PendingTxPool.Admission admission = blockchain.getPendingTxPool().add(blockWrapper, nextNonce);
+        switch (admission) {
+            case READY -> {
+                ImportResult result = validateAndAddNewBlock(blockWrapper);
+                if (result == IMPORTED_BEST || result == IMPORTED_NOT_BEST) {
+                    kernel.getAddressStore().updateTxQuantity(sender.toArrayUnsafe(), UInt64.valueOf(nonce));
+                    importPending(sender, nonce + 1);
+                }
+                return result;
+            }
+            case QUEUED, REPLACED -> {
+                log.debug("Transaction {} of nonce {} waits for nonce {}", block.getHashLow(), nonce, nextNonce);
+                return PENDING;
+            }
+            default -> {
+                log.debug("Transaction {} of nonce {} not accepted by the pending pool: {}",
+                        block.getHashLow(), nonce, admission);
+                return INVALID_BLOCK;
+            }
+        }
+    }
+
+    /**
+     * Submit transactions in one call, lower nonces first so that a run of nonces is imported
+     * without waiting. Results are in the order of the given transactions.
+     */
+    public synchronized List<ImportResult> submitTransactions(List<BlockWrapper> blockWrappers) {
+        List<Integer> order = new ArrayList<>(blockWrappers.size());
+        List<Long> nonces = new ArrayList<>(blockWrappers.size());
+        for (int i = 0; i < blockWrappers.size(); i++) {
+            Block block = blockWrappers.get(i).getBlock();
+            block.parse();
+            order.add(i);
+            nonces.add(block.getTxNonceField() == null ? -1 : PendingTxPool.nonceOf(block));
+        }
+        order.sort(Comparator.comparingLong(nonces::get));
+        ImportResult[] results = new ImportResult[blockWrappers.size()];
+        for (int i : order) {
+            results[i] = submitTransaction(blockWrappers.get(i));
+        }
+        return Arrays.asList(results);
+    }
+
+    private void importPending(Bytes sender, long nonce) {
+        BlockWrapper pending;
+        while ((pending = blockchain.getPendingTxPool().pollReady(sender, nonce)) != null) {
+            ImportResult result = validateAndAddNewBlock(pending);
+            if (result != IMPORTED_BEST && result != IMPORTED_NOT_BEST) {
+                log.debug("Pending transaction {} of nonce {} not imported: {}",
+                        pending.getBlock().getHashLow(), nonce, result);
+                return;
+            }
+            kernel.getAddressStore().updateTxQuantity(sender.toArrayUnsafe(), UInt64.valueOf(nonce));
+            nonce++;
+        }
+    }
+
     public synchronized ImportResult validateAndAddNewBlock(BlockWrapper blockWrapper) {
         blockWrapper.getBlock().parse();
         ImportResult result = importBlock(blockWrapper);
@@ -228,8 +335,8 @@ public class SyncManager extends AbstractXdagLifecycle {
     public boolean syncPushBlock(BlockWrapper blockWrapper, Bytes32 hashLow) {
         if (syncMap.size() >= MAX_SIZE) {
             for (int j = 0; j < DELETE_NUM; j++) {
-                List<Bytes32> keyList = new ArrayList<>(syncMap.keySet());
-                Bytes32 key = keyList.get(SecureRandomProvider.publicSecureRandom().nextInt(keyList.size()));
+                List<HashLow> keyList = new ArrayList<>(syncMap.keySet());
+                HashLow key = keyList.get(SecureRandomProvider.publicSecureRandom().nextInt(keyList.size()));
                 assert key != null;
                 if (syncMap.remove(key) != null) blockchain.getXdagStats().nwaitsync--;
             }
@@ -242,11 +349,11 @@ public class SyncManager extends AbstractXdagLifecycle {
         newQueue.add(blockWrapper);
         blockchain.getXdagStats().nwaitsync++;
 
-        syncMap.merge(hashLow, newQueue,
+        syncMap.merge(HashLow.of(hashLow), newQueue,
                 (oldQ, newQ) -> {
                     blockchain.getXdagStats().nwaitsync--;
                     for (BlockWrapper b : oldQ) {
-                        if (b.getBlock().getHashLow().equals(blockWrapper.getBlock().getHashLow())) {
+                        if (b.getBlock().getHashLowKey().equals(blockWrapper.getBlock().getHashLowKey())) {
                             // after 64 sec must resend block request
                             if (now - b.getTime() > 64 * 1000) {
                                 b.setTime(now);
@@ -271,9 +378,9 @@ public class SyncManager extends AbstractXdagLifecycle {
     public void syncPopBlock(BlockWrapper blockWrapper) {
         Block block = blockWrapper.getBlock();
 
-        Queue<BlockWrapper> queue = syncMap.getOrDefault(block.getHashLow(), null);
+        Queue<BlockWrapper> queue = syncMap.getOrDefault(block.getHashLowKey(), null);
         if (queue != null) {
-            syncMap.remove(block.getHashLow());
+            syncMap.remove(block.getHashLowKey());
             blockchain.getXdagStats().nwaitsync--;
             queue.forEach(bw -> {
                 ImportResult importResult = importBlock(bw);
@@ -268,8 +268,7 @@ public class XdagPow implements PoW, Listener, Runnable, XdagLifecycle {
                 // Calculate hash
                 hash = Bytes32.wrap(kernel.getRandomx().randomXPoolCalcHash(taskData, task.getTaskTime()).reverse());
             } else {
-                XdagSha256Digest digest = new XdagSha256Digest(task.getDigest());
-                hash = Bytes32.wrap(digest.sha256Final(share.reverse()));
+                hash = Bytes32.wrap(task.getDigest().sha256FinalWith(share.reverse()));
             }
             synchronized (minHash) {
                 Bytes32 mh = minHash.get();
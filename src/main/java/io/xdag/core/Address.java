@@ -26,6 +26,7 @@ package io.xdag.core;
 
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.WalletUtils;
+import java.nio.ByteOrder;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.tuweni.bytes.Bytes;
@@ -65,13 +66,17 @@ public class Address {
     /**
      * Flag indicating if the address has been parsed
      */
-    protected boolean parsed = false;
+    protected volatile boolean parsed = false;
+
+    /**
+     * Field as stored in the block (reversed), read on demand instead of copied
+     */
+    private Bytes field;
 
     public Address(XdagField field, Boolean isAddress) {
         this.isAddress = isAddress;
         this.type = field.getType();
-        this.data = MutableBytes32.wrap(field.getData().reverse().mutableCopy());
-        parse();
+        this.field = field.getData();
     }
 
     /**
@@ -126,7 +131,13 @@ public class Address {
     }
 
     public Bytes getData() {
-        if (this.data == null) {
+        if (this.data == null && this.field != null) {
+            synchronized (this) {
+                if (this.data == null) {
+                    this.data = MutableBytes32.wrap(field.reverse().mutableCopy());
+                }
+            }
+        } else if (this.data == null) {
             this.data = MutableBytes32.create();
             if(!this.isAddress){
                 this.data.set(8, this.addressHash.slice(8, 24));
@@ -140,7 +151,13 @@ public class Address {
     }
 
     public void parse() {
-        if (!parsed) {
+        if (!parsed && field != null) {
+            synchronized (this) {
+                if (!parsed) {
+                    parseField();
+                }
+            }
+        } else if (!parsed) {
             if(!isAddress){
                 this.addressHash = MutableBytes32.create();
                 this.addressHash.set(8, this.data.slice(8, 24));
@@ -154,6 +171,20 @@ public class Address {
         }
     }
 
+    /**
+     * Same as parse, reading the reversed field directly: byte i of data is byte 31 - i of the field
+     */
+    private void parseField() {
+        MutableBytes32 hash = MutableBytes32.create();
+        int length = isAddress ? 20 : 24;
+        for (int i = 0; i < length; i++) {
+            hash.set(8 + i, field.get(23 - i));
+        }
+        this.addressHash = hash;
+        this.amount = XAmount.ofXAmount(field.getLong(24, ByteOrder.LITTLE_ENDIAN));
+        this.parsed = true;
+    }
+
     public XAmount getAmount() {
         parse();
         return this.amount;
@@ -171,6 +202,7 @@ public class Address {
 
     @Override
     public String toString() {
+        parse();
         if(isAddress){
             return "Address [" + WalletUtils.toBase58(addressHash.slice(8,20).toArray()) + "]";
         }else {
@@ -27,9 +27,12 @@ package io.xdag.core;
 import com.google.common.collect.Lists;
 import io.xdag.config.Config;
 import io.xdag.crypto.Hash;
+import io.xdag.crypto.PublicKeyCache;
 import io.xdag.crypto.Sign;
+import io.xdag.crypto.SignatureVerifier;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.SimpleEncoder;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -40,7 +43,6 @@ import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.bytes.MutableBytes32;
 import org.apache.tuweni.units.bigints.UInt64;
-import org.bouncycastle.math.ec.ECPoint;
 import org.hyperledger.besu.crypto.KeyPair;
 import org.hyperledger.besu.crypto.SECPPublicKey;
 import org.hyperledger.besu.crypto.SECPSignature;
@@ -93,6 +95,21 @@ public class Block implements Cloneable {
     private int tempLength;
     private boolean pretopCandidate;
     private BigInteger pretopCandidateDiff;
+    /**
+     * Memoized result of {@link #verifiedKeys()}, reset whenever the block is signed
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile List<SECPPublicKey> verifiedKeys;
+    /**
+     * Memoized {@link #getHashLowKey()} and the info hashlow array it was read from
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private HashLow hashLowKey;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte[] hashLowKeySource;
 
     public Block(
             Config config,
@@ -159,8 +176,7 @@ public class Block implements Cloneable {
 
         if (CollectionUtils.isNotEmpty(keys)) {
             for (KeyPair key : keys) {
-                byte[] keydata = Sign.publicKeyBytesFromPrivate(key.getPrivateKey().getEncodedBytes().toUnsignedBigInteger(), true); //poor performance
-//                byte[] keydata = key.getCompressPubKeyBytes(); //good performance
+                byte[] keydata = PublicKeyCache.compress(key.getPublicKey()).toArrayUnsafe();
                 boolean yBit = BytesUtils.toByte(BytesUtils.subArray(keydata, 0, 1)) == 0x03;
                 XdagField.FieldType type = yBit ? XDAG_FIELD_PUBLIC_KEY_1 : XDAG_FIELD_PUBLIC_KEY_0;
                 setType(type, lenghth++);
@@ -218,7 +234,7 @@ public class Block implements Cloneable {
         if (xdagBlock == null) {
             xdagBlock = getXdagBlock();
         }
-        return Bytes32.wrap(Hash.hashTwice(Bytes.wrap(xdagBlock.getData())).reverse()).toArray();
+        return xdagBlock.getHash().reverse().toArray();
     }
 
     /**
@@ -226,7 +242,7 @@ public class Block implements Cloneable {
      */
     public Bytes32 recalcHash() {
         xdagBlock = new XdagBlock(toBytes());
-        return Bytes32.wrap(Hash.hashTwice(Bytes.wrap(xdagBlock.getData())).reverse());
+        return Bytes32.wrap(xdagBlock.getHash().reverse());
     }
 
     /**
@@ -298,12 +314,7 @@ public class Block implements Cloneable {
                 case XDAG_FIELD_PUBLIC_KEY_0, XDAG_FIELD_PUBLIC_KEY_1 -> {
                     Bytes key = xdagBlock.getField(i).getData();
                     boolean yBit = (field.getType().ordinal() == XDAG_FIELD_PUBLIC_KEY_1.ordinal());
-                    ECPoint point = Sign.decompressKey(key.toUnsignedBigInteger(), yBit);
-                    // Parse to uncompressed public key without prefix
-                    byte[] encodePub = point.getEncoded(false);
-                    SECPPublicKey publicKey = SECPPublicKey.create(
-                            new BigInteger(1, Arrays.copyOfRange(encodePub, 1, encodePub.length)), Sign.CURVE_NAME);
-                    pubKeys.add(publicKey);
+                    pubKeys.add(PublicKeyCache.decompress(key, yBit));
                 }
                 default -> {
                 }
@@ -357,7 +368,7 @@ public class Block implements Cloneable {
             encoder.write(info.getRemark());
         }
         for (SECPPublicKey publicKey : pubKeys) {
-            byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
+            byte[] pubkeyBytes = PublicKeyCache.compress(publicKey).toArray();
             byte[] key = BytesUtils.subArray(pubkeyBytes, 1, 32);
             encoder.writeField(key);
         }
@@ -393,12 +404,13 @@ public class Block implements Cloneable {
     private void sign(KeyPair ecKey, XdagField.FieldType type) {
         byte[] encoded = toBytes();
         // log.debug("sign encoded:{}", Hex.toHexString(encoded));
-        byte[] pubkeyBytes = ecKey.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
+        byte[] pubkeyBytes = PublicKeyCache.compress(ecKey.getPublicKey()).toArray();
         byte[] digest = BytesUtils.merge(encoded, pubkeyBytes);
         //log.debug("sign digest:{}", Hex.toHexString(digest));
         Bytes32 hash = Hash.hashTwice(Bytes.wrap(digest));
         //log.debug("sign hash:{}", Hex.toHexString(hash.toArray()));
         SECPSignature signature = Sign.SECP256K1.sign(hash, ecKey);
+        verifiedKeys = null;
         if (type == XDAG_FIELD_SIGN_OUT) {
             outsig = signature;
         } else {
@@ -410,28 +422,41 @@ public class Block implements Cloneable {
      * Only match input signatures and return useful keys
      */
     public List<SECPPublicKey> verifiedKeys() {
+        List<SECPPublicKey> res = verifiedKeys;
+        if (res == null) {
+            res = Collections.unmodifiableList(doVerifiedKeys());
+            verifiedKeys = res;
+        }
+        return res;
+    }
+
+    private List<SECPPublicKey> doVerifiedKeys() {
         List<SECPPublicKey> keys = getPubKeys();
-        List<SECPPublicKey> res = Lists.newArrayList();
-        Bytes digest;
-        Bytes32 hash;
-        for (SECPSignature sig : this.getInsigs().keySet()) {
-            digest = getSubRawData(this.getInsigs().get(sig) - 1);
-            for (SECPPublicKey publicKey : keys) {
-                // TODO: paulochen can this be replaced?
-                byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-                hash = Hash.hashTwice(Bytes.wrap(digest, Bytes.wrap(pubkeyBytes)));
-                if (Sign.SECP256K1.verify(hash, sig, publicKey)) {
-                    res.add(publicKey);
-                }
+        // Encode every key once instead of once per signature
+        List<Bytes> encodedKeys = Lists.newArrayListWithCapacity(keys.size());
+        for (SECPPublicKey publicKey : keys) {
+            encodedKeys.add(PublicKeyCache.compress(publicKey));
+        }
+        Bytes32 hash = getHash();
+        List<SignatureVerifier.Request> requests = Lists.newArrayList();
+        for (Map.Entry<SECPSignature, Integer> insig : this.getInsigs().entrySet()) {
+            Bytes digest = getSubRawData(insig.getValue() - 1);
+            for (int i = 0; i < keys.size(); i++) {
+                requests.add(new SignatureVerifier.Request(hash, insig.getValue(), digest, insig.getKey(),
+                        keys.get(i), encodedKeys.get(i)));
             }
         }
-        digest = getSubRawData(getOutsigIndex() - 2);
-        for (SECPPublicKey publicKey : keys) {
-            // TODO: paulochen can this be replaced?
-            byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-            hash = Hash.hashTwice(Bytes.wrap(digest, Bytes.wrap(pubkeyBytes)));
-            if (Sign.SECP256K1.verify(hash, this.getOutsig(), publicKey)) {
-                res.add(publicKey);
+        int outsigIndex = getOutsigIndex();
+        Bytes digest = getSubRawData(outsigIndex - 2);
+        for (int i = 0; i < keys.size(); i++) {
+            requests.add(new SignatureVerifier.Request(hash, outsigIndex, digest, this.getOutsig(),
+                    keys.get(i), encodedKeys.get(i)));
+        }
+        boolean[] verified = SignatureVerifier.getInstance().verify(requests);
+        List<SECPPublicKey> res = Lists.newArrayList();
+        for (int i = 0; i < verified.length; i++) {
+            if (verified[i]) {
+                res.add(requests.get(i).publicKey());
             }
         }
         return res;
@@ -466,6 +491,23 @@ public class Block implements Cloneable {
         return MutableBytes32.wrap(info.getHashlow());
     }
 
+    /**
+     * Hashlow as a map key, see {@link HashLow}
+     */
+    public HashLow getHashLowKey() {
+        if (info.getHashlow() == null) {
+            getHashLow();
+        }
+        byte[] source = info.getHashlow();
+        HashLow key = hashLowKey;
+        if (key == null || hashLowKeySource != source) {
+            key = HashLow.of(source);
+            hashLowKey = key;
+            hashLowKeySource = source;
+        }
+        return key;
+    }
+
     public SECPSignature getOutsig() {
         return outsig == null ? null : outsig;
     }
@@ -486,12 +528,12 @@ public class Block implements Cloneable {
         }
 
         Block block = (Block) o;
-        return Objects.equals(getHashLow(), block.getHashLow());
+        return getHashLowKey().equals(block.getHashLowKey());
     }
 
     @Override
     public int hashCode() {
-        return Bytes.of(this.getHashLow().toArray()).hashCode();
+        return getHashLowKey().hashCode();
     }
 
     public long getTimestamp() {
@@ -49,6 +49,11 @@ public class BlockWrapper implements Cloneable {
     // Flag indicating if this is an old block
     private boolean isOld;
 
+    /**
+     * Fresh copy of the block already checked by the import pipeline, consumed by the first import attempt
+     */
+    private volatile Block prepared;
+
     /**
      * Constructor with all fields
      * @param block The block to wrap
@@ -24,8 +24,8 @@
 
 package io.xdag.core;
 
+import io.xdag.listener.EventBus;
 import io.xdag.listener.Listener;
-import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.units.bigints.UInt64;
 import org.hyperledger.besu.crypto.KeyPair;
@@ -41,6 +41,9 @@ public interface Blockchain {
     // Try to connect a new block to the blockchain
     ImportResult tryToConnect(Block block);
 
+    // Stateless checks that may run outside the chain lock ahead of tryToConnect
+    boolean preValidate(Block block);
+
     // Create a new block with given parameters
     Block createNewBlock(
             Map<Address, KeyPair> pairs,
@@ -68,8 +71,23 @@ public interface Blockchain {
     // Get list of mined blocks with specified count
     List<Block> listMinedBlocks(int count);
 
+    // Get our main blocks from the mined block index, the highest first
+    List<MinedBlock> getMinedBlocks(int count);
+
+    // Get our main block at the height, null if the main block there is not ours
+    MinedBlock getMinedBlock(long height);
+
+    // Record that the reward of our main block at the height was paid out
+    void setMinedBlockPaid(long height);
+
+    // Get the state hash of all balances after the main block at the height, null if not recorded
+    Bytes32 getStateHash(long height);
+
+    // Recompute the state hash of the latest main block from all balances and record it, the next main blocks move on from it
+    Bytes32 rebuildStateHash();
+
     // Get memory blocks created by current node
-    Map<Bytes, Integer> getMemOurBlocks();
+    Map<HashLow, Integer> getMemOurBlocks();
 
     // Get XDAG network statistics
     XdagStats getXdagStats();
@@ -95,6 +113,16 @@ public interface Blockchain {
     // Register blockchain event listener
     void registerListener(Listener listener);
 
+    /**
+     * Chain events, subscribers are called on their own threads
+     */
+    EventBus getEventBus();
+
+    /**
+     * Account transactions waiting for their nonce or for a block to link them
+     */
+    PendingTxPool getPendingTxPool();
+
     // Get transaction history for given address
     List<TxHistory> getBlockTxHistoryByAddress(Bytes32 addressHashlow, int page, Object... parameters);
 
@@ -24,22 +24,32 @@
 
 package io.xdag.core;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.UnsignedLong;
 import io.xdag.Kernel;
 import io.xdag.Wallet;
 import io.xdag.config.MainnetConfig;
+import io.xdag.config.spec.NodeSpec;
 import io.xdag.core.XdagField.FieldType;
 import io.xdag.crypto.Hash;
 import io.xdag.crypto.Keys;
+import io.xdag.crypto.PublicKeyCache;
 import io.xdag.crypto.RandomX;
 import io.xdag.crypto.Sign;
+import io.xdag.crypto.SignatureVerifier;
 import io.xdag.db.*;
 import io.xdag.db.rocksdb.RocksdbKVSource;
 import io.xdag.db.rocksdb.SnapshotStoreImpl;
+import io.xdag.db.rocksdb.WriteSet;
+import io.xdag.listener.BalanceMessage;
 import io.xdag.listener.BlockMessage;
+import io.xdag.listener.EventBus;
 import io.xdag.listener.Listener;
+import io.xdag.listener.MainBlockMessage;
 import io.xdag.listener.PretopMessage;
+import io.xdag.listener.UnwindMessage;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.WalletUtils;
@@ -49,12 +59,13 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.apache.tuweni.bytes.MutableBytes32;
+import org.apache.tuweni.units.bigints.UInt256;
 import org.apache.tuweni.units.bigints.UInt64;
-import org.bouncycastle.math.ec.ECPoint;
 import org.bouncycastle.util.Arrays;
 import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.besu.crypto.KeyPair;
@@ -65,6 +76,8 @@ import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import static io.xdag.config.Constants.*;
 import static io.xdag.config.Constants.MessageType.NEW_LINK;
@@ -81,8 +94,19 @@ import static io.xdag.utils.WalletUtils.toBase58;
 @Getter
 public class BlockchainImpl implements Blockchain {
 
-    // Static gas fee accumulator
-    private static XAmount sumGas = XAmount.ZERO;
+    // Result of a block that was already processed or skipped during apply
+    private static final XAmount NOT_APPLIED = XAmount.ZERO.subtract(XAmount.ONE);
+
+    // Epochs of the chain kept in the in-memory window
+    private static final int CHAIN_WINDOW_EPOCHS = 128;
+    private static final int WORK_DIFF_CACHE_SIZE = 4096;
+    // Main blocks below the top that keep an undo record
+    private static final int UNDO_RECORD_DEPTH = 1024;
+    // Blocks applied by a main block below which they are checked on the calling thread
+    private static final int PARALLEL_APPLY_MIN_BLOCKS = 8;
+    // Heights walked by one backfill of the mined block index, and between saves of its floor
+    private static final int MINED_BACKFILL_HEIGHTS = 4096;
+    private static final int MINED_FLOOR_INTERVAL = 256;
     
     // Thread factory for main chain checking
     private static final ThreadFactory factory = new BasicThreadFactory.Builder()
@@ -97,23 +121,47 @@ public class BlockchainImpl implements Blockchain {
     private final AddressStore addressStore;
     private final BlockStore blockStore;
     private final TransactionHistoryStore txHistoryStore;
+    // Buffers the store writes of one main block, null if the stores are not wrapped
+    private final WriteSet writeSet;
     
+    // Recent blocks for walks along max difficulty links
+    private final ChainWindow chainWindow;
+    // Work of a block hash, the RandomX part depends on the seed and is dropped when it may change
+    private final Cache<Bytes32, BigInteger> workDiffCache = Caffeine.newBuilder()
+            .maximumSize(WORK_DIFF_CACHE_SIZE)
+            .build();
+
     // Store for non-Extra orphan blocks
     private final OrphanBlockStore orphanBlockStore;
 
     // In-memory pools and maps
-    private final LinkedHashMap<Bytes, Block> memOrphanPool = new LinkedHashMap<>();
-    private final Map<Bytes, Integer> memOurBlocks = new ConcurrentHashMap<>();
+    private final ExtraBlockPool extraBlockPool = new ExtraBlockPool(MAX_ALLOWED_EXTRA);
+    // one backfill of the mined block index at a time
+    private final Object minedBackfillLock = new Object();
+    private final Map<HashLow, Integer> memOurBlocks = new ConcurrentHashMap<>();
+    private final PendingTxPool pendingTxPool = new PendingTxPool(PendingTxPool.DEFAULT_MAX_SIZE,
+            PendingTxPool.DEFAULT_MAX_PER_SENDER);
     
     // Stats and status tracking
-    private final XdagStats xdagStats;
+    // replaced by loadStatus when a replica follows its primary
+    private volatile XdagStats xdagStats;
     private final Kernel kernel;
-    private final XdagTopStatus xdagTopStatus;
+    private volatile XdagTopStatus xdagTopStatus;
+    // stats or top status changed since they were last written, guarded by this
+    private boolean statusDirty;
+    // change of the state hash by the main block being set, guarded by this
+    private UInt256 stateDelta = UInt256.ZERO;
 
     // Main chain checking components
     private final ScheduledExecutorService checkLoop;
     private final RandomX randomx;
-    private final List<Listener> listeners = Lists.newArrayList();
+    private final EventBus eventBus = new EventBus();
+    // Checks the transactions of a main block in parallel, null when they are applied one by one
+    private final ForkJoinPool applyPool;
+    // Also checks every transaction sequentially and counts the parallel checks that differ
+    private final boolean applyVerify;
+    private final AtomicLong applyVerified = new AtomicLong();
+    private final AtomicLong applyMismatches = new AtomicLong();
     private ScheduledFuture<?> checkLoopFuture;
     
     // Snapshot related fields
@@ -137,10 +185,16 @@ public class BlockchainImpl implements Blockchain {
         this.blockStore = kernel.getBlockStore();
         this.orphanBlockStore = kernel.getOrphanBlockStore();
         this.txHistoryStore = kernel.getTxHistoryStore();
+        this.writeSet = kernel.getWriteSet();
+        this.chainWindow = new ChainWindow(CHAIN_WINDOW_EPOCHS, hashlow -> getBlockByHash(hashlow, false));
+        NodeSpec nodeSpec = kernel.getConfig().getNodeSpec();
+        this.applyPool = nodeSpec.isApplyParallelEnabled() ? new ForkJoinPool(nodeSpec.getApplyParallelThreads()) : null;
+        this.applyVerify = nodeSpec.isApplyParallelVerify();
         snapshotHeight = kernel.getConfig().getSnapshotSpec().getSnapshotHeight();
 
-        // Initialize snapshot if enabled
-        if (kernel.getConfig().getSnapshotSpec().isSnapshotEnabled()
+        // Initialize snapshot if enabled, a replica only reads the state its primary booted from it
+        if (!nodeSpec.isStoreReplicaEnabled()
+                && kernel.getConfig().getSnapshotSpec().isSnapshotEnabled()
                 && kernel.getConfig().getSnapshotSpec().getSnapshotHeight() > 0
                 && !blockStore.isSnapshotBoot()) {
             
@@ -156,28 +210,28 @@ public class BlockchainImpl implements Blockchain {
             blockStore.saveXdagStatus(xdagStats);
             
         } else {
-            // Load existing state
-            XdagStats storedStats = blockStore.getXdagStatus();
-            XdagTopStatus storedTopStatus = blockStore.getXdagTopStatus();
-            
-            if (storedStats != null) {
-                storedStats.setNwaitsync(0);
-                this.xdagStats = storedStats;
-                this.xdagStats.nextra = 0;
-            } else {
-                this.xdagStats = new XdagStats();
+            loadStatus();
+            if (!nodeSpec.isStoreReplicaEnabled()) {
+                recoverStatus();
             }
-            
-            this.xdagTopStatus = Objects.requireNonNullElseGet(storedTopStatus, XdagTopStatus::new);
-            
-            Block lastBlock = getBlockByHeight(xdagStats.nmain);
-            if (lastBlock != null) {
-                xdagStats.setMaxdifficulty(lastBlock.getInfo().getDifficulty());
-                xdagStats.setDifficulty(lastBlock.getInfo().getDifficulty());
-                xdagTopStatus.setTop(lastBlock.getHashLow().toArray());
-                xdagTopStatus.setTopDiff(lastBlock.getInfo().getDifficulty());
+        }
+        if (!nodeSpec.isStoreReplicaEnabled()) {
+            // cleared again when the status is flushed on stop
+            blockStore.setStatusOpen(true);
+        }
+        if (!nodeSpec.isStoreReplicaEnabled() && blockStore.getMinedFloor() < 0) {
+            // main blocks from here on are indexed as they are set, older ones on demand
+            blockStore.saveMinedFloor(xdagStats.nmain + 1);
+        }
+        if (!nodeSpec.isStoreReplicaEnabled() && blockStore.getStateHash(xdagStats.nmain) == null) {
+            if (xdagStats.nmain == 0) {
+                // a new chain has next to no balances yet, the following hashes are moved from this one
+                rebuildStateHash();
+            } else {
+                // scanning every balance of a long chain takes minutes, leave it to the operator
+                log.info("No state hash recorded at height {}, run 'statehash -r' to start keeping them",
+                        xdagStats.nmain);
             }
-            preSeed = blockStore.getPreSeed();
         }
 
         // Initialize RandomX
@@ -186,9 +240,83 @@ public class BlockchainImpl implements Blockchain {
             randomx.setBlockchain(this);
         }
 
-        // Start main chain checking
-        checkLoop = new ScheduledThreadPoolExecutor(1, factory);
-        this.startCheckMain(1024);
+        // Start main chain checking, a replica only reads what the primary has written
+        if (kernel.getConfig().getNodeSpec().isStoreReplicaEnabled()) {
+            checkLoop = null;
+        } else {
+            checkLoop = new ScheduledThreadPoolExecutor(1, factory);
+            this.startCheckMain(1024);
+        }
+    }
+
+    /**
+     * Load stats and top status from the block store, also used by replicas to follow the primary
+     */
+    public void loadStatus() {
+        XdagStats storedStats = blockStore.getXdagStatus();
+        XdagTopStatus storedTopStatus = blockStore.getXdagTopStatus();
+
+        XdagStats stats;
+        if (storedStats != null) {
+            storedStats.setNwaitsync(0);
+            stats = storedStats;
+            stats.nextra = 0;
+        } else {
+            stats = new XdagStats();
+        }
+
+        XdagTopStatus topStatus = Objects.requireNonNullElseGet(storedTopStatus, XdagTopStatus::new);
+
+        // read the top block straight from the store, so that readers never see the new stats
+        // with the old top status
+        Block lastBlock = stats.nmain > 0 ? blockStore.getBlockByHeight(stats.nmain) : null;
+        if (lastBlock != null) {
+            stats.setMaxdifficulty(lastBlock.getInfo().getDifficulty());
+            stats.setDifficulty(lastBlock.getInfo().getDifficulty());
+            topStatus.setTop(lastBlock.getHashLow().toArray());
+            topStatus.setTopDiff(lastBlock.getInfo().getDifficulty());
+        }
+        this.xdagTopStatus = topStatus;
+        this.xdagStats = stats;
+        preSeed = blockStore.getPreSeed();
+    }
+
+    /**
+     * Stats are written with each main block and otherwise flushed in batches, so after a crash
+     * the main chain is consistent but the counters, difficulties and top status changed by later
+     * imports may lag behind. The block and orphan counts are counted again from the stored block
+     * infos and the difficulties and top status are rebuilt from the latest main block.
+     */
+    private void recoverStatus() {
+        if (!blockStore.isStatusOpen()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long[] counts = new long[2];
+        blockStore.fetchBlockInfos(info -> {
+            counts[0]++;
+            if ((info.getFlags() & BI_REF) == 0) {
+                counts[1]++;
+            }
+        });
+        log.info("Last run did not stop cleanly, blocks {} and orphans {} recounted as {} and {} in {} ms",
+                xdagStats.nblocks, xdagStats.nnoref, counts[0], counts[1], System.currentTimeMillis() - start);
+        xdagStats.nblocks = counts[0];
+        xdagStats.totalnblocks = Math.max(xdagStats.totalnblocks, counts[0]);
+        xdagStats.nnoref = counts[1];
+
+        Block lastBlock = getBlockByHeight(xdagStats.nmain);
+        if (lastBlock != null) {
+            BigInteger diff = lastBlock.getInfo().getDifficulty();
+            xdagStats.setDifficulty(diff);
+            xdagStats.setMaxdifficulty(diff);
+            xdagTopStatus.setTop(lastBlock.getHashLow().toArray());
+            xdagTopStatus.setTopDiff(diff);
+            xdagTopStatus.setPreTop(lastBlock.getHashLow().toArray());
+            xdagTopStatus.setPreTopDiff(diff);
+        }
+        blockStore.saveXdagTopStatus(xdagTopStatus);
+        blockStore.saveXdagStatus(xdagStats);
     }
 
     // Initialize snapshot data
@@ -239,10 +367,69 @@ public class BlockchainImpl implements Blockchain {
         System.out.printf("All amount: %s%n", allBalance.toDecimal(9, XUnit.XDAG).toPlainString());
     }
 
-    // Register event listener
+    // Register event listener, the blocks we link or mine are broadcast through it and never dropped
     @Override
     public void registerListener(Listener listener) {
-        this.listeners.add(listener);
+        eventBus.subscribe(listener.getClass().getSimpleName(), EventBus.DEFAULT_CAPACITY,
+                EventBus.OverflowPolicy.KEEP_BLOCKS, listener);
+    }
+
+    /**
+     * Context-free validation of a block: everything that can be decided from the block
+     * itself without touching chain state. Also warms the block's hash and signature
+     * caches so the later {@link #tryToConnect(Block)} does not recompute them.
+     *
+     * @return true if the block passed the stateless checks
+     */
+    @Override
+    public boolean preValidate(Block block) {
+        try {
+            if (checkBlockHeader(block) != null) {
+                return false;
+            }
+            block.getHashLow();
+            return canUseInputKeys(block);
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Failing result of {@link #checkBlockHeader(Block)} with its detail. The check also runs on
+     * the import pipeline's validator threads, so it must not set the detail on the shared enum.
+     */
+    private record HeaderError(ImportResult result, String errorInfo) {
+    }
+
+    /**
+     * Validate block type and timestamp
+     *
+     * @return null if the header is acceptable, otherwise the failing result
+     */
+    private HeaderError checkBlockHeader(Block block) {
+        // Validate block type
+        long type = block.getType() & 0xf;
+        if (kernel.getConfig() instanceof MainnetConfig) {
+            if (type != XDAG_FIELD_HEAD.asByte()) {
+                log.debug("Block type error, is not a mainnet block");
+                return new HeaderError(ImportResult.ERROR, "Block type error, is not a mainnet block");
+            }
+        } else {
+            if (type != XDAG_FIELD_HEAD_TEST.asByte()) {
+                log.debug("Block type error, is not a testnet block");
+                return new HeaderError(ImportResult.ERROR, "Block type error, is not a testnet block");
+            }
+        }
+
+        // Validate block timestamp
+        if (block.getTimestamp() > (XdagTime.getCurrentTimestamp() + MAIN_CHAIN_PERIOD / 4)
+                || block.getTimestamp() < kernel.getConfig().getXdagEra()
+        ) {
+            log.debug("Block's time is illegal");
+            return new HeaderError(ImportResult.INVALID_BLOCK, "Block's time is illegal");
+        }
+        return null;
     }
 
     // Try to connect a new block to the chain
@@ -252,35 +439,13 @@ public class BlockchainImpl implements Blockchain {
         // TODO: if current height is snapshot height, we need change logic to process new block
 
         try {
-            ImportResult result = ImportResult.IMPORTED_NOT_BEST;
-
-            // Validate block type
-            long type = block.getType() & 0xf;
-            if (kernel.getConfig() instanceof MainnetConfig) {
-                if (type != XDAG_FIELD_HEAD.asByte()) {
-                    result = ImportResult.ERROR;
-                    result.setErrorInfo("Block type error, is not a mainnet block");
-                    log.debug("Block type error, is not a mainnet block");
-                    return result;
-                }
-            } else {
-                if (type != XDAG_FIELD_HEAD_TEST.asByte()) {
-                    result = ImportResult.ERROR;
-                    result.setErrorInfo("Block type error, is not a testnet block");
-                    log.debug("Block type error, is not a testnet block");
-                    return result;
-                }
-            }
-
-            // Validate block timestamp
-            if (block.getTimestamp() > (XdagTime.getCurrentTimestamp() + MAIN_CHAIN_PERIOD / 4)
-                    || block.getTimestamp() < kernel.getConfig().getXdagEra()
-            ) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setErrorInfo("Block's time is illegal");
-                log.debug("Block's time is illegal");
+            HeaderError headerError = checkBlockHeader(block);
+            if (headerError != null) {
+                ImportResult result = headerError.result();
+                result.setErrorInfo(headerError.errorInfo());
                 return result;
             }
+            ImportResult result = ImportResult.IMPORTED_NOT_BEST;
 
             // Check if block already exists
             if (isExist(block.getHashLow())) {
@@ -309,7 +474,7 @@ public class BlockchainImpl implements Blockchain {
                         log.debug("Address's amount isn't zero");
                         return result;
                     }
-                    Block refBlock = getBlockByHash(ref.getAddress(), false);
+                    ChainWindow.Node refBlock = chainWindow.get(ref.getAddress());
                     if (refBlock == null) {
                         result = ImportResult.NO_PARENT;
                         result.setHashlow(ref.getAddress());
@@ -320,7 +485,7 @@ public class BlockchainImpl implements Blockchain {
                         // Ensure ref block's time is earlier than block's time
                         if (refBlock.getTimestamp() >= block.getTimestamp()) {
                             result = ImportResult.INVALID_BLOCK;
-                            result.setHashlow(refBlock.getHashLow());
+                            result.setHashlow(MutableBytes32.wrap(refBlock.getHashlow().toArray()));
                             result.setErrorInfo("Ref block's time >= block's time");
                             log.debug("Ref block's time >= block's time");
                             return result;
@@ -399,14 +564,15 @@ public class BlockchainImpl implements Blockchain {
             }
             
             int id = 0;
-            // Remove links
+            // Remove links, extra blocks gaining a reference are saved together afterwards
+            List<Block> referencedExtra = new ArrayList<>();
             for (Address ref : all) {
                 FieldType fType;
                 if (!ref.isAddress) {
-                    removeOrphan(ref.getAddress(),
+                    unlinkOrphan(ref.getAddress(),
                             (block.getInfo().flags & BI_EXTRA) != 0
                                     ? OrphanRemoveActions.ORPHAN_REMOVE_EXTRA
-                                    : OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
+                                    : OrphanRemoveActions.ORPHAN_REMOVE_NORMAL, referencedExtra);
 
                     fType = ref.getType().equals(XDAG_FIELD_IN) ? XDAG_FIELD_OUT : XDAG_FIELD_IN;
                 } else {
@@ -419,6 +585,7 @@ public class BlockchainImpl implements Blockchain {
                 }
                 id++;
             }
+            saveExtraBlocks(referencedExtra);
 
             // Check current main chain
             checkNewMain();
@@ -432,6 +599,7 @@ public class BlockchainImpl implements Blockchain {
             // Calculate block difficulty
             BigInteger cuDiff = calculateCurrentBlockDiff(block);
             calculateBlockDiff(block, cuDiff);
+            chainWindow.put(block);
 
             // Process extra blocks
             processExtraBlock();
@@ -483,16 +651,19 @@ public class BlockchainImpl implements Blockchain {
             xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
 
             if ((block.getInfo().flags & BI_EXTRA) != 0) {
-                memOrphanPool.put(block.getHashLow(), block);
+                extraBlockPool.put(block);
                 xdagStats.nextra++;
             } else {
                 saveBlock(block);
                 if (kernel.getConfig().getEnableGenerateBlock() && kernel.getPow() != null) {
                     orphanBlockStore.addOrphan(block);
+                    if (isAccountTx(block) && block.getTxNonceField() != null) {
+                        pendingTxPool.onImported(block);
+                    }
                 }
                 xdagStats.nnoref++;
             }
-            blockStore.saveXdagStatus(xdagStats);
+            statusDirty = true;
 
             // Log transaction info
             if (!block.getInputs().isEmpty()) {
@@ -613,22 +784,16 @@ public class BlockchainImpl implements Blockchain {
 
     // Find common ancestor block
     public Block findAncestor(Block block, boolean isFork) {
-        Block blockRef;
-        Block blockRef0 = null;
+        ChainWindow.Node blockRef;
+        ChainWindow.Node blockRef0 = null;
         
         // Find highest difficulty non-main chain block
-        for (blockRef = block;
-             blockRef != null && ((blockRef.getInfo().flags & BI_MAIN_CHAIN) == 0);
-             blockRef = getMaxDiffLink(blockRef, false)) {
-            Block tmpRef = getMaxDiffLink(blockRef, false);
-            if (
-                    (tmpRef == null
-                            || blockRef.getInfo().getDifficulty().compareTo(calculateBlockDiff(tmpRef, calculateCurrentBlockDiff(tmpRef))) > 0) &&
-                            (blockRef0 == null || XdagTime.getEpoch(blockRef0.getTimestamp()) > XdagTime
-                                    .getEpoch(blockRef.getTimestamp()))
-            ) {
+        for (blockRef = chainWindow.put(block);
+             blockRef != null && !blockRef.hasFlag(BI_MAIN_CHAIN);
+             blockRef = chainWindow.next(blockRef)) {
+            if (isChainCandidate(blockRef, blockRef0)) {
                 if (!isFork) {
-                    updateBlockFlag(blockRef, BI_MAIN_CHAIN, true);
+                    updateBlockFlag(toBlock(blockRef, block), BI_MAIN_CHAIN, true);
                 }
                 blockRef0 = blockRef;
             }
@@ -637,11 +802,11 @@ public class BlockchainImpl implements Blockchain {
         // Handle fork point
         if (blockRef != null
                 && blockRef0 != null
-                && !blockRef.equals(blockRef0)
-                && XdagTime.getEpoch(blockRef.getTimestamp()) == XdagTime.getEpoch(blockRef0.getTimestamp())) {
-            blockRef = getMaxDiffLink(blockRef, false);
+                && !blockRef.getHashlow().equals(blockRef0.getHashlow())
+                && blockRef.getEpoch() == blockRef0.getEpoch()) {
+            blockRef = chainWindow.next(blockRef);
         }
-        return blockRef;
+        return blockRef == null ? null : toBlock(blockRef, block);
     }
 
     // Update new chain after fork
@@ -649,80 +814,116 @@ public class BlockchainImpl implements Blockchain {
         if (!isFork) {
             return;
         }
-        Block blockRef;
-        Block blockRef0 = null;
+        ChainWindow.Node blockRef;
+        ChainWindow.Node blockRef0 = null;
         
         // Update main chain flags
-        for (blockRef = block;
-             blockRef != null && ((blockRef.getInfo().flags & BI_MAIN_CHAIN) == 0);
-             blockRef = getMaxDiffLink(blockRef, false)) {
-            Block tmpRef = getMaxDiffLink(blockRef, false);
-            if (
-                    (tmpRef == null
-                            || blockRef.getInfo().getDifficulty().compareTo(calculateBlockDiff(tmpRef, calculateCurrentBlockDiff(tmpRef))) > 0) &&
-                            (blockRef0 == null || XdagTime.getEpoch(blockRef0.getTimestamp()) > XdagTime
-                                    .getEpoch(blockRef.getTimestamp()))
-            ) {
-                updateBlockFlag(blockRef, BI_MAIN_CHAIN, true);
+        for (blockRef = chainWindow.put(block);
+             blockRef != null && !blockRef.hasFlag(BI_MAIN_CHAIN);
+             blockRef = chainWindow.next(blockRef)) {
+            if (isChainCandidate(blockRef, blockRef0)) {
+                updateBlockFlag(toBlock(blockRef, block), BI_MAIN_CHAIN, true);
                 blockRef0 = blockRef;
             }
         }
     }
 
+    // Block on the max difficulty path that adds difficulty and lies in an earlier epoch than the last one taken
+    private boolean isChainCandidate(ChainWindow.Node blockRef, ChainWindow.Node blockRef0) {
+        ChainWindow.Node tmpRef = chainWindow.next(blockRef);
+        return (tmpRef == null
+                || blockRef.getDifficulty().compareTo(difficultyOf(tmpRef)) > 0)
+                && (blockRef0 == null || blockRef0.getEpoch() > blockRef.getEpoch());
+    }
+
+    private BigInteger difficultyOf(ChainWindow.Node node) {
+        if (node.getDifficulty() != null) {
+            return node.getDifficulty();
+        }
+        Block tmpRef = getBlockByHash(node.getHashlow(), false);
+        BigInteger diff = calculateBlockDiff(tmpRef, calculateCurrentBlockDiff(tmpRef));
+        // keep the computed difficulty for the next walk
+        chainWindow.refresh(tmpRef);
+        return diff;
+    }
+
+    // The block of a window node, the given block itself if it is that node
+    private Block toBlock(ChainWindow.Node node, Block block) {
+        if (block != null && node.getHashlow().equals(block.getHashLow())) {
+            return block;
+        }
+        return getBlockByHash(node.getHashlow(), false);
+    }
+
     // Process extra blocks
     public void processExtraBlock() {
-        if (memOrphanPool.size() > MAX_ALLOWED_EXTRA) {
-            Block reuse = memOrphanPool.entrySet().iterator().next().getValue();
-            log.debug("Remove when extra too big");
+        Block reuse;
+        int evicted = 0;
+        while ((reuse = extraBlockPool.overflow()) != null) {
             removeOrphan(reuse.getHashLow(), OrphanRemoveActions.ORPHAN_REMOVE_REUSE);
+            if (extraBlockPool.contains(reuse.getHashLow())) {
+                log.warn("Extra block {} can't be removed from pool", reuse.getHashLow().toHexString());
+                break;
+            }
             xdagStats.nblocks--;
             xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
 
             if ((reuse.getInfo().flags & BI_OURS) != 0) {
                 removeOurBlock(reuse);
             }
+            evicted++;
+        }
+        if (evicted > 0) {
+            log.debug("Remove {} blocks when extra too big, {}", evicted, extraBlockPool);
         }
     }
 
     // Notify listeners of new pretop
     protected void onNewPretop() {
-        for (Listener listener : listeners) {
-            listener.onMessage(new PretopMessage(Bytes.wrap(xdagTopStatus.getTop()), PRE_TOP));
+        if (eventBus.hasSubscribers()) {
+            eventBus.publish(new PretopMessage(Bytes.wrap(xdagTopStatus.getTop()), PRE_TOP));
         }
     }
 
     // Notify listeners of new block
     protected void onNewBlock(Block block) {
-        for (Listener listener : listeners) {
-            listener.onMessage(new BlockMessage(Bytes.wrap(block.getXdagBlock().getData()), NEW_LINK));
+        if (eventBus.hasSubscribers()) {
+            eventBus.publish(new BlockMessage(Bytes.wrap(block.getXdagBlock().getData()), NEW_LINK));
+        }
+    }
+
+    // Notify listeners of our balance if it changed
+    private void onBalance(XAmount before) {
+        if (eventBus.hasSubscribers() && !before.equals(xdagStats.getBalance())) {
+            eventBus.publish(new BalanceMessage(xdagStats.getBalance()));
         }
     }
 
     // Check and update main chain
     @Override
     public synchronized void checkNewMain() {
-        Block p = null;
+        ChainWindow.Node p = null;
         int i = 0;
         
         // If it's a snapshot point main block, return directly since data before snapshot is already determined
         if (xdagTopStatus.getTop() != null) {
-            for (Block block = getBlockByHash(Bytes32.wrap(xdagTopStatus.getTop()), false); block != null
-                    && ((block.getInfo().flags & BI_MAIN) == 0);
-                 block = getMaxDiffLink(getBlockByHash(block.getHashLow(), true), true)) {
+            for (ChainWindow.Node node = chainWindow.get(Bytes32.wrap(xdagTopStatus.getTop())); node != null
+                    && !node.hasFlag(BI_MAIN);
+                 node = chainWindow.next(node)) {
 
-                if ((block.getInfo().flags & BI_MAIN_CHAIN) != 0) {
-                    p = block;
+                if (node.hasFlag(BI_MAIN_CHAIN)) {
+                    p = node;
                     ++i;
                 }
             }
         }
         long ct = XdagTime.getCurrentTimestamp();
         if (p != null
-                && ((p.getInfo().flags & BI_REF) != 0)
+                && p.hasFlag(BI_REF)
                 && i > 1
                 && ct >= p.getTimestamp() + 2 * 1024) {
 //            log.info("setMain success block:{}", Hex.toHexString(p.getHashLow()));
-            setMain(p);
+            setMain(getBlockByHash(p.getHashlow(), true));
         }
     }
 
@@ -738,45 +939,453 @@ public class BlockchainImpl implements Blockchain {
         log.debug("Unwind main to block,{}", block == null ? "null" : block.getHashLow().toHexString());
         if (xdagTopStatus.getTop() != null) {
             log.debug("now pretop : {}", xdagTopStatus.getPreTop() == null ? "null" : Bytes32.wrap(xdagTopStatus.getPreTop()).toHexString());
-            for (Block tmp = getBlockByHash(Bytes32.wrap(xdagTopStatus.getTop()), true); tmp != null
-                    && !blockEqual(block, tmp); tmp = getMaxDiffLink(tmp, true)) {
+            long start = System.nanoTime();
+            XAmount oursBalance = xdagStats.getBalance();
+            int unwound = 0;
+            for (ChainWindow.Node node = chainWindow.get(Bytes32.wrap(xdagTopStatus.getTop())); node != null
+                    && !(block != null && node.getHashlow().equals(block.getHashLow())); node = chainWindow.next(node)) {
+                // only main blocks need their links to be unapplied
+                Block tmp = getBlockByHash(node.getHashlow(), node.hasFlag(BI_MAIN));
                 updateBlockFlag(tmp, BI_MAIN_CHAIN, false);
                 // Update corresponding flag information
                 if ((tmp.getInfo().flags & BI_MAIN) != 0) {
                     unSetMain(tmp);
                     // Fix: Need to update block info in database like height 210729
                     blockStore.saveBlockInfo(tmp.getInfo());
+                    unwound++;
                 }
             }
+            if (unwound > 0) {
+                log.debug("Unwound {} main blocks in {} ms", unwound, (System.nanoTime() - start) / 1_000_000);
+                if (eventBus.hasSubscribers()) {
+                    eventBus.publish(new UnwindMessage(block == null ? null : block.getHashLow().copy(), unwound));
+                }
+                onBalance(oursBalance);
+            }
         }
     }
 
-    private boolean blockEqual(Block block1, Block block2) {
-        if (block1 == null) {
-            return block2 == null;
-        } else {
-            return block2.equals(block1);
+    /**
+     * Blocks loaded while one main block is applied or unapplied.
+     *
+     * <p>A block reached through several links is loaded once and every lookup returns the same
+     * instance, so flag, ref and amount changes made earlier in the walk are seen later without
+     * reading them back. Blocks are loaded as info first and get their raw data parsed into the same
+     * instance when the walk needs it. The links of a block are fetched with one batch read before
+     * the block is visited.
+     */
+    private class BlockCache {
+
+        private final Map<HashLow, Block> blocks = new HashMap<>();
+        private final Set<HashLow> raw = new HashSet<>();
+
+        Block get(Bytes32 hashlow, boolean isRaw) {
+            HashLow key = HashLow.of(hashlow);
+            Block block = blocks.get(key);
+            if (block == null) {
+                block = getBlockByHash(hashlow, isRaw);
+                if (block != null) {
+                    blocks.put(key, block);
+                    if (isRaw || extraBlockPool.contains(key)) {
+                        raw.add(key);
+                    }
+                }
+                return block;
+            }
+            if (isRaw && !raw.contains(key)) {
+                if (blockStore.loadRawBlocks(List.of(block)).isEmpty()) {
+                    return null;
+                }
+                raw.add(key);
+            }
+            return block;
+        }
+
+        /**
+         * Block already in the cache, without loading it
+         */
+        Block peek(Bytes32 hashlow) {
+            return blocks.get(HashLow.of(hashlow));
+        }
+
+        /**
+         * Batch read the blocks referenced by links, raw for those accepted by needRaw
+         */
+        void prefetch(List<Address> links, Predicate<Block> needRaw) {
+            List<HashLow> missing = new ArrayList<>();
+            for (Address link : links) {
+                if (link.isAddress) {
+                    continue;
+                }
+                HashLow key = HashLow.of(link.getAddress());
+                if (blocks.containsKey(key) || missing.contains(key)) {
+                    continue;
+                }
+                Block pooled = extraBlockPool.get(key);
+                if (pooled != null) {
+                    blocks.put(key, pooled);
+                    raw.add(key);
+                } else {
+                    missing.add(key);
+                }
+            }
+            if (!missing.isEmpty()) {
+                List<Bytes32> hashlows = new ArrayList<>(missing.size());
+                for (HashLow key : missing) {
+                    hashlows.add(key.toBytes32());
+                }
+                List<Block> infos = blockStore.getBlockInfosByHash(hashlows);
+                for (int i = 0; i < missing.size(); i++) {
+                    if (infos.get(i) != null) {
+                        blocks.put(missing.get(i), infos.get(i));
+                    }
+                }
+            }
+            List<Block> toLoad = new ArrayList<>();
+            for (Address link : links) {
+                if (link.isAddress) {
+                    continue;
+                }
+                HashLow key = HashLow.of(link.getAddress());
+                Block block = blocks.get(key);
+                if (block != null && !raw.contains(key) && !toLoad.contains(block) && needRaw.test(block)) {
+                    toLoad.add(block);
+                }
+            }
+            if (!toLoad.isEmpty()) {
+                for (Block block : blockStore.loadRawBlocks(toLoad)) {
+                    raw.add(block.getHashLowKey());
+                }
+            }
         }
     }
 
     /**
-     * Execute block and return gas fee
+     * A block of the apply walk and the position in its links
+     */
+    private static final class ApplyFrame {
+
+        private final boolean flag;
+        private final Block block;
+        private final List<Address> links;
+        private int next;
+        // frame being walked below this frame
+        private ApplyFrame child;
+        // returned by the block once its transfers are executed
+        private XAmount result;
+
+        ApplyFrame(boolean flag, Block block, List<Address> links) {
+            this.flag = flag;
+            this.block = block;
+            this.links = links;
+        }
+    }
+
+    /**
+     * A step of the apply order: the transfers of a frame, or the gas a frame collects from a link
+     */
+    private static final class ApplyStep {
+
+        private final ApplyFrame frame;
+        // collected link, null for transfers
+        private final Block ref;
+        // frame of the collected link, null when its result was known during the walk
+        private final ApplyFrame child;
+        private final XAmount ret;
+
+        private ApplyStep(ApplyFrame frame, Block ref, ApplyFrame child, XAmount ret) {
+            this.frame = frame;
+            this.ref = ref;
+            this.child = child;
+            this.ret = ret;
+        }
+
+        static ApplyStep transfers(ApplyFrame frame) {
+            return new ApplyStep(frame, null, null, null);
+        }
+
+        static ApplyStep collect(ApplyFrame frame, ApplyFrame child) {
+            return new ApplyStep(frame, child.block, child, null);
+        }
+
+        static ApplyStep collect(ApplyFrame frame, Block ref, XAmount ret) {
+            return new ApplyStep(frame, ref, null, ret);
+        }
+
+        boolean isTransfers() {
+            return ref == null;
+        }
+
+        XAmount collected() {
+            return child != null ? child.result : ret;
+        }
+    }
+
+    /**
+     * What the transfers of a block will do, decided from the state before them
+     */
+    private enum ApplyOutcome {
+        // execute every link
+        EXECUTE,
+        // not executed, nonces untouched
+        REJECT,
+        // nonce ahead of the executed one, the tx quantity goes back to it
+        NONCE_AHEAD,
+        // nonce already executed
+        NONCE_USED,
+        // not executed, the nonce of the input is consumed
+        CONSUME_NONCE,
+        // negative output, the nonce of an input is consumed if it is the next one
+        NEGATIVE_OUTPUT,
+        // block amount and inputs do not cover the outputs
+        NOT_ENOUGH
+    }
+
+    /**
+     * Result of checking a block. Comparable so that a parallel check can be verified against a
+     * sequential one of the same frame.
+     */
+    private static final class ApplyCheck {
+
+        private final ApplyOutcome outcome;
+        // input the outcome applies to
+        private final Address link;
+        private final UInt64 executedNonce;
+        // inputs whose executed nonce was read
+        private final List<Address> nonceReads;
+
+        ApplyCheck(ApplyOutcome outcome, Address link, UInt64 executedNonce, List<Address> nonceReads) {
+            this.outcome = outcome;
+            this.link = link;
+            this.executedNonce = executedNonce;
+            this.nonceReads = nonceReads;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ApplyCheck other)) {
+                return false;
+            }
+            return outcome == other.outcome && link == other.link
+                    && Objects.equals(executedNonce, other.executedNonce)
+                    && nonceReads.equals(other.nonceReads);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(outcome, executedNonce, nonceReads.size());
+        }
+
+        @Override
+        public String toString() {
+            return outcome + (executedNonce == null ? "" : " nonce " + executedNonce.toLong());
+        }
+    }
+
+    /**
+     * Execute block and return gas fee.
+     *
+     * <p>Links are applied before the block itself, depth first. The walk first fixes the order of
+     * the blocks, then their transfers are executed in that order and the gas returned by any block
+     * of the walk is credited to the main block.
+     *
+     * <p>With enough blocks and a parallel pool, the blocks below the main block are put into levels
+     * where no two blocks touch the same block or address. The blocks of a level are checked in
+     * parallel against the state left by the levels before and then executed one by one, which
+     * gives the same state as executing them in walk order.
      */
     private XAmount applyBlock(boolean flag, Block block) {
-        XAmount gas = XAmount.ZERO;
-        XAmount sumIn = XAmount.ZERO;
-        XAmount sumOut = XAmount.ZERO; // sumOut is used to pay gas fee for other blocks linking to this one, currently set to 0
+        BlockCache cache = new BlockCache();
+        List<ApplyStep> steps = new ArrayList<>();
+        XAmount ret = walkApply(flag, block, cache, steps);
+        if (ret != null) {
+            return ret;
+        }
+        // the main block is popped last
+        ApplyFrame main = steps.getLast().frame;
+        List<ApplyFrame> frames = new ArrayList<>();
+        for (ApplyStep step : steps) {
+            if (step.isTransfers() && step.frame != main) {
+                frames.add(step.frame);
+            }
+        }
+        List<List<Integer>> levels = null;
+        if (applyPool != null && frames.size() >= PARALLEL_APPLY_MIN_BLOCKS) {
+            levels = applyLevels(frames, main);
+        }
+        if (levels == null) {
+            return applySteps(steps, cache);
+        }
+
+        for (List<Integer> level : levels) {
+            List<ApplyFrame> group = new ArrayList<>(level.size());
+            for (int i : level) {
+                group.add(frames.get(i));
+            }
+            List<ApplyCheck> checks = checkParallel(group, cache);
+            for (int i = 0; i < group.size(); i++) {
+                ApplyFrame frame = group.get(i);
+                frame.result = executeApply(frame, verifyCheck(frame, checks.get(i), cache), cache);
+            }
+        }
+        // gas is credited to the main block in walk order once every result is known
+        XAmount sumGas = XAmount.ZERO;
+        for (ApplyStep step : steps) {
+            if (!step.isTransfers()) {
+                sumGas = collectGas(step.frame, step.ref, step.collected(), sumGas);
+            }
+        }
+        main.result = executeApply(main, checkApply(main, cache), cache);
+        return main.result;
+    }
+
+    /**
+     * Mark the blocks applied by a main block and record the order of their steps
+     *
+     * @return the result of the block if it has no links to walk, null otherwise
+     */
+    private XAmount walkApply(boolean flag, Block block, BlockCache cache, List<ApplyStep> steps) {
+        Deque<ApplyFrame> stack = new ArrayDeque<>();
+        XAmount ret = enterApply(flag, block, cache, stack);
+        if (ret != null) {
+            return ret;
+        }
+        while (!stack.isEmpty()) {
+            ApplyFrame frame = stack.peek();
+            if (frame.child != null) {
+                steps.add(ApplyStep.collect(frame, frame.child));
+                frame.child = null;
+            }
+            while (frame.next < frame.links.size()) {
+                Address link = frame.links.get(frame.next++);
+                if (link.isAddress) {
+                    continue;
+                }
+                // No need to get full data during pre-processing
+                Block ref = cache.get(link.getAddress(), false);
+                // If already processed
+                if ((ref.getInfo().flags & BI_MAIN_REF) != 0) {
+                    continue;
+                }
+                ref = cache.get(link.getAddress(), true);
+                XAmount childRet = enterApply(false, ref, cache, stack);
+                if (childRet == null) {
+                    frame.child = stack.peek();
+                    break;
+                }
+                steps.add(ApplyStep.collect(frame, ref, childRet));
+            }
+            if (frame.child != null) {
+                continue;
+            }
+            stack.pop();
+            steps.add(ApplyStep.transfers(frame));
+        }
+        return null;
+    }
+
+    /**
+     * Run the steps of a walk one by one
+     */
+    private XAmount applySteps(List<ApplyStep> steps, BlockCache cache) {
+        XAmount sumGas = XAmount.ZERO;
+        XAmount ret = XAmount.ZERO;
+        for (ApplyStep step : steps) {
+            if (step.isTransfers()) {
+                ApplyFrame frame = step.frame;
+                frame.result = executeApply(frame, checkApply(frame, cache), cache);
+                ret = frame.result;
+            } else {
+                sumGas = collectGas(step.frame, step.ref, step.collected(), sumGas);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Levels of frames that touch no common block or address, null if a frame touches the main
+     * block, whose amount changes with the gas collected during the walk
+     */
+    private List<List<Integer>> applyLevels(List<ApplyFrame> frames, ApplyFrame main) {
+        HashLow mainKey = main.block.getHashLowKey();
+        List<Set<Object>> keys = new ArrayList<>(frames.size());
+        for (ApplyFrame frame : frames) {
+            Set<Object> touched = new HashSet<>();
+            touched.add(frame.block.getHashLowKey());
+            for (Address link : frame.links) {
+                touched.add(link.isAddress ? link.getAddress().copy() : HashLow.of(link.getAddress()));
+            }
+            if (touched.contains(mainKey)) {
+                return null;
+            }
+            keys.add(touched);
+        }
+        return ConflictLevels.group(keys);
+    }
+
+    private List<ApplyCheck> checkParallel(List<ApplyFrame> group, BlockCache cache) {
+        if (group.size() == 1) {
+            return List.of(checkApply(group.getFirst(), cache));
+        }
+        List<Callable<ApplyCheck>> tasks = new ArrayList<>(group.size());
+        for (ApplyFrame frame : group) {
+            Callable<ApplyCheck> task = () -> checkApply(frame, cache);
+            // the checks read the state left by the transfers executed so far
+            tasks.add(writeSet == null ? task : writeSet.readFor(task));
+        }
+        List<ApplyCheck> checks = new ArrayList<>(group.size());
+        try {
+            for (Future<ApplyCheck> future : applyPool.invokeAll(tasks)) {
+                checks.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking transactions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return checks;
+    }
+
+    /**
+     * In verify mode, check the frame again on the current state and keep the sequential result
+     */
+    private ApplyCheck verifyCheck(ApplyFrame frame, ApplyCheck check, BlockCache cache) {
+        if (!applyVerify) {
+            return check;
+        }
+        applyVerified.incrementAndGet();
+        ApplyCheck sequential = checkApply(frame, cache);
+        if (!sequential.equals(check)) {
+            applyMismatches.incrementAndGet();
+            log.error("Parallel check of block {} gave {}, sequential gave {}",
+                    frame.block.getHashLow().toHexString(), check, sequential);
+            return sequential;
+        }
+        return check;
+    }
+
+    /**
+     * Mark block as processed and push it on the walk if it has links.
+     *
+     * @return the result of the block, or null if it was pushed
+     */
+    private XAmount enterApply(boolean flag, Block block, BlockCache cache, Deque<ApplyFrame> stack) {
         // Block already processed
         if ((block.getInfo().flags & BI_MAIN_REF) != 0) {
-            return XAmount.ZERO.subtract(XAmount.ONE);
+            return NOT_APPLIED;
         }
         // TX block created by wallet or pool will not set fee = minGas, set here
         if (!block.getInputs().isEmpty() && block.getFee().equals(XAmount.ZERO)) {
             block.getInfo().setFee(MIN_GAS);
         }
         // Mark as processed
-        MutableBytes32 blockHashLow = block.getHashLow();
-
         updateBlockFlag(block, BI_MAIN_REF, true);
 
         List<Address> links = block.getLinks();
@@ -784,31 +1393,38 @@ public class BlockchainImpl implements Blockchain {
             updateBlockFlag(block, BI_APPLIED, true);
             return XAmount.ZERO;
         }
+        cache.prefetch(links, ref -> (ref.getInfo().flags & BI_MAIN_REF) == 0);
+        stack.push(new ApplyFrame(flag, block, links));
+        return null;
+    }
 
-        for (Address link : links) {
-            if (!link.isAddress) {
-                // No need to get full data during pre-processing
-                Block ref = getBlockByHash(link.getAddress(), false);
-                XAmount ret;
-                // If already processed
-                if ((ref.getInfo().flags & BI_MAIN_REF) != 0) {
-                    ret = XAmount.ZERO.subtract(XAmount.ONE);
-                } else {
-                    ref = getBlockByHash(link.getAddress(), true);
-                    ret = applyBlock(false, ref);
-                }
-                if (ret.equals(XAmount.ZERO.subtract(XAmount.ONE))) {
-                    continue;
-                }
-                sumGas = sumGas.add(ret);
-                updateBlockRef(ref, new Address(block));
-                if (flag && sumGas != XAmount.ZERO) {// Check if block is mainBlock, if true: add fee!
-                    block.getInfo().setFee(block.getFee().add(sumGas));
-                    addAndAccept(block, sumGas);
-                    sumGas = XAmount.ZERO;
-                }
-            }
+    private XAmount collectGas(ApplyFrame frame, Block ref, XAmount ret, XAmount sumGas) {
+        if (ret.equals(NOT_APPLIED)) {
+            return sumGas;
         }
+        sumGas = sumGas.add(ret);
+        updateBlockRef(ref, new Address(frame.block));
+        if (frame.flag && !sumGas.isZero()) {// Check if block is mainBlock, if true: add fee!
+            frame.block.getInfo().setFee(frame.block.getFee().add(sumGas));
+            addAndAccept(frame.block, sumGas);
+            sumGas = XAmount.ZERO;
+        }
+        return sumGas;
+    }
+
+    /**
+     * Check whether the transfers of a block whose links are all applied can be executed.
+     *
+     * <p>Only reads: blocks from the cache of the walk and balances and nonces from the address
+     * store, so blocks touching different blocks and addresses can be checked at the same time.
+     */
+    private ApplyCheck checkApply(ApplyFrame frame, BlockCache cache) {
+        Block block = frame.block;
+        List<Address> links = frame.links;
+        List<Address> nonceReads = new ArrayList<>(1);
+        XAmount sumIn = XAmount.ZERO;
+        XAmount sumOut = XAmount.ZERO; // sumOut is used to pay gas fee for other blocks linking to this one, currently set to 0
+        MutableBytes32 blockHashLow = block.getHashLow();
 
         for (Address link : links) {
             MutableBytes32 linkAddress = link.getAddress();
@@ -819,33 +1435,33 @@ public class BlockchainImpl implements Blockchain {
                  * When input is an address, get balance from database for verification.
                  */
                 if (!link.isAddress) {
-                    Block ref = getBlockByHash(linkAddress, false);
+                    Block ref = cache.peek(linkAddress);
                     if (compareAmountTo(ref.getInfo().getAmount(), link.getAmount()) < 0) {
                         log.debug("This input ref doesn't have enough amount,hash:{},amount:{},need:{}",
                                 Hex.toHexString(ref.getInfo().getHashlow()), ref.getInfo().getAmount(),
                                 link.getAmount());
-                        return XAmount.ZERO;
+                        return new ApplyCheck(ApplyOutcome.REJECT, null, null, nonceReads);
                     }
                 } else {
                     log.debug("Type error");
-                    return XAmount.ZERO;
+                    return new ApplyCheck(ApplyOutcome.REJECT, null, null, nonceReads);
                 }
 
                 // Verify in advance that Address amount is not negative
                 if (compareAmountTo(sumIn.add(link.getAmount()), sumIn) < 0) {
                     log.debug("This input ref's amount less than 0");
-                    return XAmount.ZERO;
+                    return new ApplyCheck(ApplyOutcome.REJECT, null, null, nonceReads);
                 }
                 sumIn = sumIn.add(link.getAmount());
             } else if (link.getType() == XDAG_FIELD_INPUT) {
                 XAmount balance = addressStore.getBalanceByAddress(hash2byte(link.getAddress()));
-                UInt64 executedNonce = addressStore.getExecutedNonceNum(BytesUtils.byte32ToArray(link.getAddress()));
+                UInt64 executedNonce = addressStore.readExecutedNonceNum(BytesUtils.byte32ToArray(link.getAddress()));
+                nonceReads.add(link);
                 UInt64 blockNonce = block.getTxNonceField().getTransactionNonce();
 
                 if (blockNonce.compareTo(executedNonce.add(UInt64.ONE)) > 0) {
-                    addressStore.updateTxQuantity(BytesUtils.byte32ToArray(link.getAddress()), executedNonce);
                     log.debug("The current situation belongs to a nonce fault, and nonce is rolled back to the current number of executed nonce {}",executedNonce.toLong());
-                    return XAmount.ZERO.subtract(XAmount.ONE);
+                    return new ApplyCheck(ApplyOutcome.NONCE_AHEAD, link, executedNonce, nonceReads);
                 }
 
                 if(blockNonce.compareTo(executedNonce) <= 0) {
@@ -857,41 +1473,26 @@ public class BlockchainImpl implements Blockchain {
                         log.debug("The current network computing power fluctuates greatly, it is recommended to wait for a period of time before sending transactions");
                     }
 
-                    return XAmount.ZERO.subtract(XAmount.ONE);
+                    return new ApplyCheck(ApplyOutcome.NONCE_USED, link, executedNonce, nonceReads);
                 }
 
-                if (compareAmountTo(balance, link.amount) < 0) {
+                if (compareAmountTo(balance, link.getAmount()) < 0) {
                     log.debug("This input ref doesn't have enough amount,hash:{},amount:{},need:{}",
                             Hex.toHexString(hash2byte(link.getAddress())), balance,
                             link.getAmount());
-                    processNonceAfterTransactionExecution(link);
-                    return XAmount.ZERO;
+                    return new ApplyCheck(ApplyOutcome.CONSUME_NONCE, link, executedNonce, nonceReads);
                 }
                 // Verify in advance that Address amount is not negative
                 if (compareAmountTo(sumIn.add(link.getAmount()), sumIn) < 0) {
                     log.debug("This input ref's:{} amount less than 0", linkAddress.toHexString());
-                    processNonceAfterTransactionExecution(link);
-                    return XAmount.ZERO;
+                    return new ApplyCheck(ApplyOutcome.CONSUME_NONCE, link, executedNonce, nonceReads);
                 }
                 sumIn = sumIn.add(link.getAmount());
             } else {
                 // Verify in advance that Address amount is not negative
                 if (compareAmountTo(sumOut.add(link.getAmount()), sumOut) < 0) {
                     log.debug("This output ref's:{} amount less than 0", linkAddress.toHexString());
-                    for(Address checkINlink : links){
-                        if (checkINlink.getType() == XDAG_FIELD_INPUT){
-                            byte[] address = BytesUtils.byte32ToArray(checkINlink.getAddress());
-                            UInt64 currentExeNonce = addressStore.getExecutedNonceNum(address);
-                            UInt64 nonceInTx = block.getTxNonceField().getTransactionNonce();
-                            if (nonceInTx.compareTo(currentExeNonce.add(UInt64.ONE)) == 0) {
-                                log.debug("The amount given by account {} to the transferring party is negative, resulting in the failure of the {} - th transaction execution of this account",
-                                        hash2PubAddress(checkINlink.getAddress()),nonceInTx.intValue()
-                                );
-                                processNonceAfterTransactionExecution(checkINlink);
-                            }
-                        }
-                    }
-                    return XAmount.ZERO;
+                    return new ApplyCheck(ApplyOutcome.NEGATIVE_OUTPUT, null, null, nonceReads);
                 }
                 sumOut = sumOut.add(link.getAmount());
             }
@@ -900,14 +1501,67 @@ public class BlockchainImpl implements Blockchain {
                 compareAmountTo(block.getInfo().getAmount().add(sumIn), sumIn) < 0
         ) {
             log.debug("block:{} exec fail!", blockHashLow.toHexString());
-            if (block.getInputs() != null) processNonceAfterTransactionExecution(block.getInputs().get(0));
-            return XAmount.ZERO;
+            return new ApplyCheck(ApplyOutcome.NOT_ENOUGH, null, null, nonceReads);
+        }
+        return new ApplyCheck(ApplyOutcome.EXECUTE, null, null, nonceReads);
+    }
+
+    /**
+     * Execute the transfers of a block as decided by its check
+     */
+    private XAmount executeApply(ApplyFrame frame, ApplyCheck check, BlockCache cache) {
+        boolean flag = frame.flag;
+        Block block = frame.block;
+        List<Address> links = frame.links;
+        XAmount gas = XAmount.ZERO;
+
+        // Reading an executed nonce stores zero for a new address
+        for (Address link : check.nonceReads) {
+            addressStore.getExecutedNonceNum(BytesUtils.byte32ToArray(link.getAddress()));
+        }
+        switch (check.outcome) {
+            case REJECT -> {
+                return XAmount.ZERO;
+            }
+            case NONCE_AHEAD -> {
+                addressStore.updateTxQuantity(BytesUtils.byte32ToArray(check.link.getAddress()), check.executedNonce);
+                return NOT_APPLIED;
+            }
+            case NONCE_USED -> {
+                return NOT_APPLIED;
+            }
+            case CONSUME_NONCE -> {
+                processNonceAfterTransactionExecution(check.link);
+                return XAmount.ZERO;
+            }
+            case NEGATIVE_OUTPUT -> {
+                for(Address checkINlink : links){
+                    if (checkINlink.getType() == XDAG_FIELD_INPUT){
+                        byte[] address = BytesUtils.byte32ToArray(checkINlink.getAddress());
+                        UInt64 currentExeNonce = addressStore.getExecutedNonceNum(address);
+                        UInt64 nonceInTx = block.getTxNonceField().getTransactionNonce();
+                        if (nonceInTx.compareTo(currentExeNonce.add(UInt64.ONE)) == 0) {
+                            log.debug("The amount given by account {} to the transferring party is negative, resulting in the failure of the {} - th transaction execution of this account",
+                                    hash2PubAddress(checkINlink.getAddress()),nonceInTx.intValue()
+                            );
+                            processNonceAfterTransactionExecution(checkINlink);
+                        }
+                    }
+                }
+                return XAmount.ZERO;
+            }
+            case NOT_ENOUGH -> {
+                if (block.getInputs() != null) processNonceAfterTransactionExecution(block.getInputs().get(0));
+                return XAmount.ZERO;
+            }
+            default -> {
+            }
         }
 
         for (Address link : links) {
-            MutableBytes32 linkAddress = link.addressHash;
+            MutableBytes32 linkAddress = link.getAddress();
             if (!link.isAddress) {
-                Block ref = getBlockByHash(linkAddress, false);
+                Block ref = cache.get(linkAddress, false);
                 if (link.getType() == XDAG_FIELD_IN) {
                     subtractAndAccept(ref, link.getAmount());
                     XAmount allBalance = addressStore.getAllBalance();
@@ -934,9 +1588,51 @@ public class BlockchainImpl implements Blockchain {
     }
 
     // TODO: unapply block which in snapshot
+    /**
+     * Undo a main block and, depth first, every block it applied. Blocks are undone before the
+     * blocks they applied, walked with an explicit stack.
+     */
     public XAmount unApplyBlock(Block block) {
+        BlockCache cache = new BlockCache();
+        Deque<Pair<Block, Address>> stack = new ArrayDeque<>();
+        pushUnApplyLinks(block, unApplyOne(block, cache), stack);
+        while (!stack.isEmpty()) {
+            Pair<Block, Address> next = stack.pop();
+            Block parent = next.getLeft();
+            Block ref = cache.get(next.getRight().getAddress(), false);
+            // Even if mainBlock duplicate links the TX_block which other mainBlock handled, we can check if this TX ref is this mainBlock
+            if (isAppliedBy(ref, parent)) {
+                Block child = cache.get(ref.getHashLow(), true);
+                pushUnApplyLinks(child, unApplyOne(child, cache), stack);
+            }
+        }
+        return XAmount.ZERO;
+    }
+
+    private boolean isAppliedBy(Block ref, Block block) {
+        return ref.getInfo().getRef() != null
+                && equalBytes(ref.getInfo().getRef(), block.getHashLow().toArray())
+                && ((ref.getInfo().flags & BI_MAIN_REF) != 0);
+    }
+
+    private void pushUnApplyLinks(Block block, List<Address> links, Deque<Pair<Block, Address>> stack) {
+        // pushed backwards so that the links are undone in order
+        for (int i = links.size() - 1; i >= 0; i--) {
+            if (!links.get(i).isAddress) {
+                stack.push(Pair.of(block, links.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Undo the transfers of one block and clear its main ref.
+     *
+     * @return the links of the block, in the order they are undone
+     */
+    private List<Address> unApplyOne(Block block, BlockCache cache) {
         List<Address> links = block.getLinks();
         Collections.reverse(links); // must be reverse
+        cache.prefetch(links, ref -> isAppliedBy(ref, block));
         if ((block.getInfo().flags & BI_APPLIED) != 0) {
             // TX block created by wallet or pool will not set fee = minGas, set here
             if (!block.getInputs().isEmpty() && block.getFee().equals(XAmount.ZERO)) {
@@ -945,7 +1641,7 @@ public class BlockchainImpl implements Blockchain {
             XAmount sum = XAmount.ZERO;
             for (Address link : links) {
                 if (!link.isAddress) {
-                    Block ref = getBlockByHash(link.getAddress(), false);
+                    Block ref = cache.get(link.getAddress(), false);
                     if (link.getType() == XDAG_FIELD_IN) {
                         addAndAccept(ref, link.getAmount());
                         sum = sum.subtract(link.getAmount());
@@ -999,19 +1695,7 @@ public class BlockchainImpl implements Blockchain {
         }
         updateBlockFlag(block, BI_MAIN_REF, false);
         updateBlockRef(block, null);
-
-        for (Address link : links) {
-            if (!link.isAddress) {
-                Block ref = getBlockByHash(link.getAddress(), false);
-                // Even if mainBlock duplicate links the TX_block which other mainBlock handled, we can check if this TX ref is this mainBlock
-                if (ref.getInfo().getRef() != null
-                        && equalBytes(ref.getInfo().getRef(), block.getHashLow().toArray())
-                        && ((ref.getInfo().flags & BI_MAIN_REF) != 0)) {
-                    addAndAccept(block, unApplyBlock(getBlockByHash(ref.getHashLow(), true)));
-                }
-            }
-        }
-        return XAmount.ZERO;
+        return links;
     }
 
     /**
@@ -1020,30 +1704,54 @@ public class BlockchainImpl implements Blockchain {
     public void setMain(Block block) {
 
         synchronized (this) {
-            // Set reward
-            long mainNumber = xdagStats.nmain + 1;
-            log.debug("mainNumber = {},hash = {}", mainNumber, Hex.toHexString(block.getInfo().getHash()));
-            XAmount reward = getReward(mainNumber);
-            block.getInfo().setHeight(mainNumber);
-            updateBlockFlag(block, BI_MAIN, true);
-
-            // Accept reward
-            acceptAmount(block, reward);
-            xdagStats.nmain++;
-
-            // Recursively execute blocks referenced by main block and get fees
-            XAmount mainBlockFee = applyBlock(true, block); //the mainBlock may have tx, return the fee to itself.
-            if (!mainBlockFee.equals(XAmount.ZERO)) {// normal mainBlock will not go into this
-                acceptAmount(block, mainBlockFee); //add the fee
-                block.getInfo().setFee(mainBlockFee);
-            }
-            // Main block REF points to itself
-            // TODO: Add fee
-            updateBlockRef(block, new Address(block));
+            XAmount oursBalance = xdagStats.getBalance();
+            long nmain = xdagStats.nmain;
+            UndoRecord.BlockUndo info = UndoRecord.BlockUndo.of(block.getInfo());
+            // All store writes of this main block are committed together
+            beginWriteSet();
+            try {
+                stateDelta = UInt256.ZERO;
+                // Set reward
+                long mainNumber = xdagStats.nmain + 1;
+                log.debug("mainNumber = {},hash = {}", mainNumber, Hex.toHexString(block.getInfo().getHash()));
+                XAmount reward = getReward(mainNumber);
+                block.getInfo().setHeight(mainNumber);
+                updateBlockFlag(block, BI_MAIN, true);
+
+                // Accept reward
+                acceptAmount(block, reward);
+                xdagStats.nmain++;
+
+                // Recursively execute blocks referenced by main block and get fees
+                XAmount mainBlockFee = applyBlock(true, block); //the mainBlock may have tx, return the fee to itself.
+                if (!mainBlockFee.equals(XAmount.ZERO)) {// normal mainBlock will not go into this
+                    acceptAmount(block, mainBlockFee); //add the fee
+                    block.getInfo().setFee(mainBlockFee);
+                }
+                // Main block REF points to itself
+                // TODO: Add fee
+                updateBlockRef(block, new Address(block));
+                if ((block.getInfo().flags & BI_OURS) != 0) {
+                    indexMinedBlock(block, mainNumber);
+                }
+                saveUndoRecord(block, mainNumber, oursBalance);
+                saveStateHash(mainNumber);
+                saveStatus();
+                commitWriteSet();
+                if (eventBus.hasSubscribers()) {
+                    eventBus.publish(new MainBlockMessage(block.getHashLow().copy(), mainNumber));
+                }
+                onBalance(oursBalance);
+            } catch (RuntimeException e) {
+                rollbackWriteSet();
+                restoreMain(block, info, nmain, oursBalance);
+                throw e;
+            }
 
             if (randomx != null) {
                 randomx.randomXSetForkTime(block);
             }
+            workDiffCache.invalidateAll();
         }
 
     }
@@ -1058,21 +1766,158 @@ public class BlockchainImpl implements Blockchain {
 
             log.debug("UnSet main,{}, mainnumber = {}", block.getHash().toHexString(), xdagStats.nmain);
 
-            XAmount amount = block.getInfo().getAmount();// mainBlock's balance will have fee, subtract all balance.
-            block.getInfo().setFee(XAmount.ZERO);// set the mainBlock's zero.
-            updateBlockFlag(block, BI_MAIN, false);
+            long height = block.getInfo().getHeight();
+            UndoRecord record = loadUndoRecord(block, height);
+            XAmount oursBalance = xdagStats.getBalance();
+            long nmain = xdagStats.nmain;
+            UndoRecord.BlockUndo info = UndoRecord.BlockUndo.of(block.getInfo());
+            beginWriteSet();
+            try {
+                if (randomx != null) {
+                    randomx.randomXUnsetForkTime(block);
+                }
+                workDiffCache.invalidateAll();
+                if (record != null) {
+                    undoMain(block, record);
+                } else {
+                    XAmount amount = block.getInfo().getAmount();// mainBlock's balance will have fee, subtract all balance.
+                    block.getInfo().setFee(XAmount.ZERO);// set the mainBlock's zero.
+                    updateBlockFlag(block, BI_MAIN, false);
+
+                    // Remove reward and referenced block fees
+                    acceptAmount(block, XAmount.ZERO.subtract(amount));
+                    acceptAmount(block, unApplyBlock(block));
+                }
+                xdagStats.nmain--;
+
+                // Roll back the height mapping explicitly, the next main block at this height rewrites it
+                blockStore.removeBlockHeight(height);
+                blockStore.removeUndoRecord(height);
+                blockStore.removeMinedBlock(height);
+                blockStore.removeStateHash(height);
+                block.getInfo().setHeight(0);
+                saveStatus();
+                commitWriteSet();
+            } catch (RuntimeException e) {
+                rollbackWriteSet();
+                restoreMain(block, info, nmain, oursBalance);
+                throw e;
+            }
+        }
+    }
 
-            xdagStats.nmain--;
+    /**
+     * Put back what a failed setMain or unSetMain changed in memory, after its write set was
+     * dropped. Other blocks of the walk are only held by the walk and the window flags are reset
+     * with the write set.
+     */
+    private void restoreMain(Block block, UndoRecord.BlockUndo info, long nmain, XAmount oursBalance) {
+        info.applyTo(block.getInfo());
+        xdagStats.nmain = nmain;
+        xdagStats.setBalance(oursBalance);
+        stateDelta = UInt256.ZERO;
+    }
 
-            // Remove reward and referenced block fees
-            acceptAmount(block, XAmount.ZERO.subtract(amount));
-            acceptAmount(block, unApplyBlock(block));
+    /**
+     * Index one of our main blocks with the key that signed it, which pays it out later
+     */
+    private void indexMinedBlock(Block block, long height) {
+        Integer keyIndex = memOurBlocks.get(block.getHashLowKey());
+        if (keyIndex == null) {
+            Block raw = block.getOutsig() != null ? block : getBlockByHash(block.getHashLow(), true);
+            keyIndex = raw == null ? -1 : findOurKeyIndex(raw);
+        }
+        blockStore.saveMinedBlock(new MinedBlock(height, Bytes32.wrap(block.getHashLow().toArray()), keyIndex,
+                minedReward(block, height), false));
+    }
 
-            if (randomx != null) {
-                randomx.randomXUnsetForkTime(block);
+    // Reward and fees our main block at the height earned
+    private XAmount minedReward(Block block, long height) {
+        return getReward(height).add(block.getInfo().getFee());
+    }
+
+    /**
+     * Record what this main block changed in the open write set, so that unSetMain can put it back
+     * without walking the DAG again
+     */
+    private void saveUndoRecord(Block block, long height, XAmount oursBalance) {
+        if (writeSet == null) {
+            return;
+        }
+        UndoRecord record = UndoRecord.of(Bytes32.wrap(block.getHashLow().toArray()),
+                xdagStats.getBalance().subtract(oursBalance),
+                blockStore.getPendingBlockInfos(), addressStore.getPendingChanges());
+        if (record != null) {
+            blockStore.saveUndoRecord(height, record.toBytes());
+        }
+        if (height > UNDO_RECORD_DEPTH) {
+            blockStore.removeUndoRecord(height - UNDO_RECORD_DEPTH);
+        }
+    }
+
+    private UndoRecord loadUndoRecord(Block block, long height) {
+        // before-images are only valid for the newest main block
+        if (height == 0 || height != xdagStats.nmain) {
+            return null;
+        }
+        byte[] data = blockStore.getUndoRecord(height);
+        if (data == null) {
+            return null;
+        }
+        UndoRecord record = UndoRecord.fromBytes(data);
+        return record.getMainBlock().equals(block.getHashLow()) ? record : null;
+    }
+
+    private void undoMain(Block block, UndoRecord record) {
+        for (UndoRecord.BlockUndo undo : record.getBlocks()) {
+            Block target = undo.hashlow().equals(block.getHashLow()) ? block : blockStore.getBlockInfoByHash(undo.hashlow());
+            if (target == null) {
+                continue;
+            }
+            undo.applyTo(target.getInfo());
+            blockStore.saveBlockInfo(target.getInfo());
+            chainWindow.updateFlags(undo.hashlow(), target.getInfo().getFlags());
+        }
+        List<Pair<byte[], byte[]>> addresses = new ArrayList<>(record.getAddresses().size());
+        for (Pair<byte[], byte[]> address : record.getAddresses()) {
+            // records written before quantities were left out may still hold them
+            if (address.getKey()[0] != AddressStore.CURRENT_TRANSACTION_QUANTITY) {
+                addresses.add(address);
+            }
+        }
+        addressStore.restore(addresses);
+        // the quantity keeps what was submitted since, but never falls below the executed nonce
+        for (Pair<byte[], byte[]> address : addresses) {
+            if (address.getKey()[0] == AddressStore.EXECUTED_NONCE_NUM) {
+                byte[] key = Arrays.copyOfRange(address.getKey(), 1, address.getKey().length);
+                addressStore.updateTxQuantity(key, addressStore.getTxQuantity(key), addressStore.readExecutedNonceNum(key));
             }
-            block.getInfo().setHeight(0);
         }
+        xdagStats.setBalance(xdagStats.getBalance().subtract(record.getOursBalanceDelta()));
+        log.debug("Undo main block {} from {}", block.getHashLow().toHexString(), record);
+    }
+
+    private void beginWriteSet() {
+        if (writeSet != null) {
+            writeSet.begin();
+        }
+        chainWindow.mark();
+    }
+
+    private void commitWriteSet() {
+        if (writeSet != null) {
+            writeSet.commit();
+        }
+        chainWindow.unmark();
+    }
+
+    // A no-op for the write set once its commit has started, which already closed it
+    private void rollbackWriteSet() {
+        if (writeSet != null) {
+            writeSet.rollback();
+        }
+        // flags in the window are ahead of the store now
+        chainWindow.reset();
     }
 
     public void processNonceAfterTransactionExecution(Address link) {
@@ -1189,20 +2034,69 @@ public class BlockchainImpl implements Blockchain {
     }
 
     /**
-     * Get a certain number of orphan blocks from orphan pool for linking
+     * Get a certain number of orphan blocks from orphan pool for linking. Account transactions come
+     * first, the best paying ones in nonce order for each sender, then the oldest orphans the chain
+     * window does not know to be linked already.
      */
     public List<Address> getBlockFromOrphanPool(int num, long[] sendtime) {
-        return orphanBlockStore.getOrphan(num, sendtime);
+        List<Block> txs = pendingTxPool.selectForLink(num, sendtime[0]);
+        List<Address> orphans = orphanBlockStore.getOrphan(num, sendtime);
+        if (orphans != null) {
+            // the pool is read without the chain lock, blocks linked meanwhile are left out
+            orphans.removeIf(orphan -> isLinked(orphan.getAddress()));
+        }
+        if (txs.isEmpty()) {
+            return orphans;
+        }
+        List<Address> res = new ArrayList<>(num);
+        Set<HashLow> picked = new HashSet<>();
+        long latest = 0;
+        for (Block tx : txs) {
+            res.add(new Address(tx.getHashLow(), XDAG_FIELD_OUT, false));
+            picked.add(tx.getHashLowKey());
+            latest = Math.max(latest, tx.getTimestamp());
+        }
+        if (orphans != null) {
+            for (Address orphan : orphans) {
+                if (res.size() >= num) {
+                    break;
+                }
+                if (picked.add(HashLow.of(orphan.getAddress()))) {
+                    res.add(orphan);
+                }
+            }
+        }
+        // the linking block is later than everything it links
+        sendtime[1] = Math.min(Math.max(sendtime[1], latest + 1), sendtime[0]);
+        return res;
+    }
+
+    /**
+     * Whether the window knows a block to be referenced, by its flags or by a block of the window
+     * linking it that is not extra. The latter also holds for blocks older than the window.
+     */
+    private boolean isLinked(Bytes32 hashlow) {
+        ChainWindow.Node node = chainWindow.peek(hashlow);
+        if (node != null && node.hasFlag(BI_REF)) {
+            return true;
+        }
+        for (Bytes32 child : chainWindow.children(hashlow)) {
+            ChainWindow.Node linking = chainWindow.peek(child);
+            if (linking != null && !linking.hasFlag(BI_EXTRA)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public Bytes32 getPreTopMainBlockForLink(long sendTime) {
         long mainTime = XdagTime.getEpoch(sendTime);
-        Block topInfo;
+        ChainWindow.Node topInfo;
         if (xdagTopStatus.getTop() == null) {
             return null;
         }
 
-        topInfo = getBlockByHash(Bytes32.wrap(xdagTopStatus.getTop()), false);
+        topInfo = chainWindow.get(Bytes32.wrap(xdagTopStatus.getTop()));
         if (topInfo == null) {
             return null;
         }
@@ -1227,10 +2121,10 @@ public class BlockchainImpl implements Blockchain {
         }
 
         // Make sure the target's epoch is earlier than current top's epoch
-        Block block = getBlockByHash(xdagTopStatus.getTop() == null ? null :
-                Bytes32.wrap(xdagTopStatus.getTop()), false);
+        ChainWindow.Node block = chainWindow.get(xdagTopStatus.getTop() == null ? null :
+                Bytes32.wrap(xdagTopStatus.getTop()));
         if (block != null) {
-            if (XdagTime.getEpoch(target.getTimestamp()) >= XdagTime.getEpoch(block.getTimestamp())) {
+            if (XdagTime.getEpoch(target.getTimestamp()) >= block.getEpoch()) {
                 return;
             }
         }
@@ -1269,16 +2163,14 @@ public class BlockchainImpl implements Blockchain {
             return BigInteger.ONE;
         }
 
-        BigInteger blockDiff;
-        // Set initial block difficulty
-        if (randomx != null && randomx.isRandomxFork(XdagTime.getEpoch(block.getTimestamp()))
-                && XdagTime.isEndOfEpoch(block.getTimestamp())) {
-            blockDiff = getDiffByRandomXHash(block);
-        } else {
-            blockDiff = getDiffByRawHash(block.getHash());
-        }
-
-        return blockDiff;
+        return workDiffCache.get(block.getHash(), hash -> {
+            // Set initial block difficulty
+            if (randomx != null && randomx.isRandomxFork(XdagTime.getEpoch(block.getTimestamp()))
+                    && XdagTime.isEndOfEpoch(block.getTimestamp())) {
+                return getDiffByRandomXHash(block);
+            }
+            return getDiffByRawHash(hash);
+        });
     }
 
     /**
@@ -1297,8 +2189,6 @@ public class BlockchainImpl implements Blockchain {
         BigInteger maxDiff = cuDiff;
         Address maxDiffLink = null;
 
-        // Temporary block
-        Block tmpBlock;
         if (block.getLinks().isEmpty()) {
             return cuDiff;
         }
@@ -1310,14 +2200,14 @@ public class BlockchainImpl implements Blockchain {
              * Only Blocks have difficulty
              */
             if (!ref.isAddress) {
-                Block refBlock = getBlockByHash(ref.getAddress(), false);
+                ChainWindow.Node refBlock = chainWindow.get(ref.getAddress());
                 if (refBlock == null) {
                     break;
                 }
                 // If the referenced block's epoch is less than current block's round
-                if (XdagTime.getEpoch(refBlock.getTimestamp()) < XdagTime.getEpoch(block.getTimestamp())) {
+                if (refBlock.getEpoch() < XdagTime.getEpoch(block.getTimestamp())) {
                     // If difficulty is greater than current max difficulty
-                    BigInteger refDifficulty = refBlock.getInfo().getDifficulty();
+                    BigInteger refDifficulty = refBlock.getDifficulty();
                     if (refDifficulty == null) {
                         refDifficulty = BigInteger.ZERO;
                     }
@@ -1330,17 +2220,17 @@ public class BlockchainImpl implements Blockchain {
                     // Calculated diff
                     // 1. maxDiff+diff0 for different epochs
                     // 2. maxDiff for same epoch
-                    tmpBlock = refBlock; // tmpBlock is from link
-                    BigInteger curDiff = refBlock.getInfo().getDifficulty();
-                    while ((tmpBlock != null)
-                            && XdagTime.getEpoch(tmpBlock.getTimestamp()) == XdagTime.getEpoch(block.getTimestamp())) {
-                        tmpBlock = getMaxDiffLink(tmpBlock, false);
+                    ChainWindow.Node tmpBlock = refBlock; // tmpBlock is from link
+                    BigInteger curDiff = refBlock.getDifficulty();
+                    if (tmpBlock.getEpoch() == XdagTime.getEpoch(block.getTimestamp())) {
+                        // memoized walk along max difficulty links out of this epoch
+                        tmpBlock = chainWindow.epochExit(tmpBlock);
                     }
                     if (tmpBlock != null
-                            && (XdagTime.getEpoch(tmpBlock.getTimestamp()) < XdagTime.getEpoch(block.getTimestamp()))
-                            && tmpBlock.getInfo().getDifficulty().add(cuDiff).compareTo(curDiff) > 0
+                            && (tmpBlock.getEpoch() < XdagTime.getEpoch(block.getTimestamp()))
+                            && tmpBlock.getDifficulty().add(cuDiff).compareTo(curDiff) > 0
                     ) {
-                        curDiff = tmpBlock.getInfo().getDifficulty().add(cuDiff);
+                        curDiff = tmpBlock.getDifficulty().add(cuDiff);
                     }
                     if (curDiff == null) {
                         curDiff = BigInteger.ZERO;
@@ -1407,12 +2297,11 @@ public class BlockchainImpl implements Blockchain {
         if (hashlow == null) {
             return null;
         }
-        // Ensure that hashlow is hashlow
-        MutableBytes32 keyHashlow = MutableBytes32.create();
-        keyHashlow.set(8, Objects.requireNonNull(hashlow).slice(8, 24));
-
-        Block b = memOrphanPool.get(Bytes32.wrap(keyHashlow));
+        Block b = extraBlockPool.get(hashlow);
         if (b == null) {
+            // Ensure that hashlow is hashlow
+            MutableBytes32 keyHashlow = MutableBytes32.create();
+            keyHashlow.set(8, hashlow.slice(8, 24));
             b = blockStore.getBlockByHash(keyHashlow, isRaw);
         }
         return b;
@@ -1426,6 +2315,23 @@ public class BlockchainImpl implements Blockchain {
     }
 
     public void removeOrphan(Bytes32 hashlow, OrphanRemoveActions action) {
+        List<Block> referencedExtra = new ArrayList<>();
+        unlinkOrphan(hashlow, action, referencedExtra);
+        saveExtraBlocks(referencedExtra);
+    }
+
+    /**
+     * Same as {@link #removeOrphan}, extra blocks gaining a reference are added to referencedExtra
+     * and stay in the pool until {@link #saveExtraBlocks} writes them
+     */
+    private void unlinkOrphan(Bytes32 hashlow, OrphanRemoveActions action, List<Block> referencedExtra) {
+        // already referenced, or an extra block linking a block that is not extra, nothing to read.
+        // Window flags follow the stored ones and are put back with a failed write set, see rollbackWriteSet
+        ChainWindow.Node node = chainWindow.peek(hashlow);
+        if (node != null && (node.hasFlag(BI_REF)
+                || (action == OrphanRemoveActions.ORPHAN_REMOVE_EXTRA && !node.hasFlag(BI_EXTRA)))) {
+            return;
+        }
         Block b = getBlockByHash(hashlow, false);
         // TODO: snapshot
         if (b != null && b.getInfo() != null && b.getInfo().isSnapshot()) {
@@ -1436,18 +2342,19 @@ public class BlockchainImpl implements Blockchain {
             // If removeBlock is BI_EXTRA
             if ((b.getInfo().flags & BI_EXTRA) != 0) {
                 // Then removeBlockInfo is complete
-                // Remove from MemOrphanPool
-                Bytes key = b.getHashLow();
-                Block removeBlockRaw = memOrphanPool.get(key);
-                memOrphanPool.remove(key);
-                if (action != OrphanRemoveActions.ORPHAN_REMOVE_REUSE) {
-                    // Save block
-                    saveBlock(removeBlockRaw);
+                Block removeBlockRaw;
+                if (action == OrphanRemoveActions.ORPHAN_REMOVE_REUSE) {
+                    // the block is dropped, not saved
+                    removeBlockRaw = extraBlockPool.evict(b.getHashLow());
+                    chainWindow.remove(b.getHashLow());
+                } else {
+                    removeBlockRaw = extraBlockPool.get(b.getHashLow());
                     // Remove all blocks linked by EXTRA block
                     if (removeBlockRaw != null) {
+                        referencedExtra.add(removeBlockRaw);
                         List<Address> all = removeBlockRaw.getLinks();
                         for (Address addr : all) {
-                            removeOrphan(addr.getAddress(), OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
+                            unlinkOrphan(addr.getAddress(), OrphanRemoveActions.ORPHAN_REMOVE_NORMAL, referencedExtra);
                         }
                     }
                 }
@@ -1457,6 +2364,7 @@ public class BlockchainImpl implements Blockchain {
                 xdagStats.nextra--;
             } else {
                 orphanBlockStore.deleteByHash(b.getHashLow().toArray());
+                pendingTxPool.onLinked(b.getHashLowKey());
                 xdagStats.nnoref--;
             }
             // Update this block's flag
@@ -1476,6 +2384,8 @@ public class BlockchainImpl implements Blockchain {
         if (block.isSaved) {
             blockStore.saveBlockInfo(block.getInfo());
         }
+        // only once the store took the flags, a failed write set puts the window back on reset
+        chainWindow.updateFlags(block.getHashLow(), block.getInfo().flags);
     }
 
     public void updateBlockRef(Block block, Address ref) {
@@ -1495,20 +2405,41 @@ public class BlockchainImpl implements Blockchain {
         }
         block.isSaved = true;
         blockStore.saveBlock(block);
+        onBlockSaved(block);
+    }
+
+    /**
+     * Save extra blocks that gained a reference in one batch, then drop them from the pool
+     */
+    private void saveExtraBlocks(List<Block> blocks) {
+        if (blocks.isEmpty()) {
+            return;
+        }
+        for (Block block : blocks) {
+            block.isSaved = true;
+        }
+        blockStore.saveBlocks(blocks);
+        for (Block block : blocks) {
+            onBlockSaved(block);
+        }
+        extraBlockPool.removeAll(blocks);
+    }
+
+    private void onBlockSaved(Block block) {
         // If it's our account
-        if (memOurBlocks.containsKey(block.getHash())) {
+        if (memOurBlocks.containsKey(block.getHashLowKey())) {
 //            log.info("new account:{}", Hex.toHexString(block.getHash()));
             if (xdagStats.getOurLastBlockHash() == null) {
-                blockStore.saveXdagStatus(xdagStats);
+                statusDirty = true;
             }
-            addOurBlock(memOurBlocks.get(block.getHash()), block);
-            memOurBlocks.remove(block.getHash());
+            addOurBlock(memOurBlocks.get(block.getHashLowKey()), block);
+            memOurBlocks.remove(block.getHashLowKey());
         }
 
         if (block.isPretopCandidate()) {
             xdagTopStatus.setPreTop(block.getHashLow().toArray());
             xdagTopStatus.setPreTopDiff(block.getPretopCandidateDiff());
-            blockStore.saveXdagTopStatus(xdagTopStatus);
+            statusDirty = true;
         }
 
     }
@@ -1546,6 +2477,20 @@ public class BlockchainImpl implements Blockchain {
         return true;
     }
 
+    /**
+     * Stateless part of {@link #canUseInput(Block)}: recovers the signing keys and checks
+     * address inputs against them. Block inputs need their ref blocks and are left to tryToConnect.
+     */
+    private boolean canUseInputKeys(Block block) {
+        List<SECPPublicKey> keys = block.verifiedKeys();
+        for (Address in : block.getInputs()) {
+            if (in.isAddress && !verifyBlockSignature(in, keys)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private boolean verifyBlockSignature(Address in, List<SECPPublicKey> keys) {
         Bytes pubHash = in.getAddress().mutableCopy().slice(8, 20);
         for (SECPPublicKey key : keys) {
@@ -1565,7 +2510,7 @@ public class BlockchainImpl implements Blockchain {
             MutableBytes subdata = inBlock.getSubRawData(inBlock.getOutsigIndex() - 2);
 //            log.debug("verify encoded:{}", Hex.toHexString(subdata));
             SECPSignature sig = inBlock.getOutsig();
-            return verifySignature(subdata, sig, publicKeys, block.getInfo());
+            return verifySignature(inBlock.getHash(), inBlock.getOutsigIndex(), subdata, sig, publicKeys, block.getInfo());
         }
     }
 
@@ -1574,12 +2519,7 @@ public class BlockchainImpl implements Blockchain {
         BlockInfo blockInfo = blockStore.getBlockInfoByHash(in.getAddress()).getInfo();
         SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
         if (snapshotInfo.getType()) {
-            BigInteger xBn = Bytes.wrap(snapshotInfo.getData()).slice(1, 32).toUnsignedBigInteger();
-            boolean yBit = snapshotInfo.getData()[0] == 0x03;
-            ECPoint point = Sign.decompressKey(xBn, yBit);
-            // Parse uncompressed public key without prefix
-            byte[] encodePub = point.getEncoded(false);
-            SECPPublicKey targetPublicKey = SECPPublicKey.create(new BigInteger(1, java.util.Arrays.copyOfRange(encodePub, 1, encodePub.length)), Sign.CURVE_NAME);
+            SECPPublicKey targetPublicKey = PublicKeyCache.decompress(Bytes.wrap(snapshotInfo.getData()));
             for (SECPPublicKey publicKey : publicKeys) {
                 if (publicKey.equals(targetPublicKey)) {
                     return true;
@@ -1593,21 +2533,25 @@ public class BlockchainImpl implements Blockchain {
             block.parse();
             MutableBytes subdata = block.getSubRawData(block.getOutsigIndex() - 2);
             SECPSignature sig = block.getOutsig();
-            return verifySignature(subdata, Sign.toCanonical(sig), publicKeys, blockInfo);
+            return verifySignature(null, block.getOutsigIndex(), subdata, Sign.toCanonical(sig), publicKeys, blockInfo);
         }
 
 
     }
 
-    private boolean verifySignature(MutableBytes subdata, SECPSignature sig, List<SECPPublicKey> publicKeys, BlockInfo blockInfo) {
+    /**
+     * Find the first of publicKeys that signed the data, remembering it in the block info
+     *
+     * @param blockHash hash of the signed block, used as cache key, null for snapshot data
+     */
+    private boolean verifySignature(Bytes32 blockHash, int sigIndex, MutableBytes subdata, SECPSignature sig,
+                                    List<SECPPublicKey> publicKeys, BlockInfo blockInfo) {
+        SignatureVerifier verifier = SignatureVerifier.getInstance();
         for (SECPPublicKey publicKey : publicKeys) {
-            byte[] publicKeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-            Bytes digest = Bytes.wrap(subdata, Bytes.wrap(publicKeyBytes));
-//            log.debug("verify encoded:{}", Hex.toHexString(digest));
-            Bytes32 hash = Hash.hashTwice(digest);
-            if (Sign.SECP256K1.verify(hash, sig, publicKey)) {
+            Bytes encodedKey = SignatureVerifier.encode(publicKey);
+            if (verifier.verify(new SignatureVerifier.Request(blockHash, sigIndex, subdata, sig, publicKey, encodedKey))) {
                 SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
-                byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
+                byte[] pubkeyBytes = encodedKey.toArray();
                 if (snapshotInfo != null) {
                     snapshotInfo.setData(pubkeyBytes);
                     snapshotInfo.setType(true);
@@ -1622,30 +2566,67 @@ public class BlockchainImpl implements Blockchain {
     }
 
     public boolean checkMineAndAdd(Block block) {
-        List<KeyPair> ourkeys = wallet.getAccounts();
-        // Only one output signature
+        int keyIndex = findOurKeyIndex(block);
+        if (keyIndex < 0) {
+            return false;
+        }
+        addOurBlock(keyIndex, block);
+        return true;
+    }
+
+    /**
+     * Find the wallet key that made the output signature of a block.
+     * <p>
+     * The signed digest commits to the signer's compressed key, so the key cannot be recovered
+     * from the signature alone. Instead the candidates are the block's own key fields, its
+     * coinbase and our default key; each is looked up in the wallet by address and only our
+     * keys are verified. The cost does not depend on the number of wallet keys.
+     *
+     * @return the wallet index of the signing key, or -1 if the block isn't ours
+     */
+    private int findOurKeyIndex(Block block) {
         SECPSignature signature = block.getOutsig();
-        // Iterate through all keys
-        for (int i = 0; i < ourkeys.size(); i++) {
-            KeyPair ecKey = ourkeys.get(i);
-            // TODO: Optimize
-            byte[] publicKeyBytes = ecKey.getPublicKey().asEcPoint(Sign.CURVE).getEncoded(true);
-            Bytes digest = Bytes.wrap(block.getSubRawData(block.getOutsigIndex() - 2), Bytes.wrap(publicKeyBytes));
-            Bytes32 hash = Hash.hashTwice(Bytes.wrap(digest));
-            // Use hyperledger besu crypto native secp256k1
-            if (Sign.SECP256K1.verify(hash, signature, ecKey.getPublicKey())) {
-                log.debug("verify block success hash={}.", hash.toHexString());
-                addOurBlock(i, block);
-                return true;
+        if (signature == null) {
+            return -1;
+        }
+        Set<Bytes> candidates = new LinkedHashSet<>();
+        for (SECPPublicKey publicKey : block.getPubKeys()) {
+            candidates.add(Bytes.wrap(Keys.toBytesAddress(publicKey)));
+        }
+        if (block.getCoinBase() != null) {
+            candidates.add(block.getCoinBase().getAddress().slice(8, 20).copy());
+        }
+        KeyPair defKey = wallet.getDefKey();
+        if (defKey != null) {
+            candidates.add(Bytes.wrap(Keys.toBytesAddress(defKey)));
+        }
+
+        int outsigIndex = block.getOutsigIndex();
+        Bytes data = null;
+        SignatureVerifier verifier = SignatureVerifier.getInstance();
+        for (Bytes address : candidates) {
+            int keyIndex = wallet.getAccountIndex(address.toArrayUnsafe());
+            KeyPair ecKey = keyIndex < 0 ? null : wallet.getAccount(address.toArrayUnsafe());
+            if (ecKey == null) {
+                continue;
+            }
+            if (data == null) {
+                data = block.getSubRawData(outsigIndex - 2);
+            }
+            SignatureVerifier.Request request = new SignatureVerifier.Request(block.getHash(), outsigIndex, data,
+                    signature, ecKey.getPublicKey(), SignatureVerifier.encode(ecKey.getPublicKey()));
+            if (verifier.verify(request)) {
+                log.debug("verify block success hash={}.", block.getHash().toHexString());
+                return keyIndex;
             }
         }
-        return false;
+        return -1;
     }
 
     public void addOurBlock(int keyIndex, Block block) {
         xdagStats.setOurLastBlockHash(block.getHash().toArray());
         if (!block.isSaved()) {
-            memOurBlocks.put(block.getHash(), keyIndex);
+            memOurBlocks.put(block.getHashLowKey(), keyIndex);
         } else {
             blockStore.saveOurBlock(keyIndex, block.getInfo().getHashlow());
         }
@@ -1653,7 +2634,7 @@ public class BlockchainImpl implements Blockchain {
 
     public void removeOurBlock(Block block) {
         if (!block.isSaved) {
-            memOurBlocks.remove(block.getHash());
+            memOurBlocks.remove(block.getHashLowKey());
         } else {
             blockStore.removeOurBlock(block.getHashLow().toArray());
         }
@@ -1730,7 +2711,7 @@ public class BlockchainImpl implements Blockchain {
         try {
             checkNewMain();
             // xdagStats state will change after checkNewMain
-            blockStore.saveXdagStatus(xdagStats);
+            flushStatus();
         } catch (Throwable e) {
             log.error(e.getMessage(), e);
         }
@@ -1745,10 +2726,36 @@ public class BlockchainImpl implements Blockchain {
             }
             // Shutdown thread pool
             checkLoop.shutdownNow();
+            eventBus.close();
+            if (applyPool != null) {
+                applyPool.shutdownNow();
+            }
             checkLoop.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             log.error(e.getMessage(), e);
         }
+        if (checkLoop != null) {
+            flushStatus();
+            blockStore.setStatusOpen(false);
+        }
+    }
+
+    /**
+     * Write stats and top status if they changed since the last write. Imports only mark them
+     * changed, main blocks write them with the rest of their write set.
+     */
+    public void flushStatus() {
+        synchronized (this) {
+            if (statusDirty) {
+                saveStatus();
+            }
+        }
+    }
+
+    private void saveStatus() {
+        blockStore.saveXdagStatus(xdagStats);
+        blockStore.saveXdagTopStatus(xdagTopStatus);
+        statusDirty = false;
     }
 
     public XAmount getStartAmount(long nmain) {
@@ -1781,12 +2788,15 @@ public class BlockchainImpl implements Blockchain {
         if ((block.getInfo().flags & BI_OURS) != 0) {
             xdagStats.setBalance(amount.add(xdagStats.getBalance()));
         }
-        XAmount finalAmount = blockStore.getBlockInfoByHash(block.getHashLow()).getInfo().getAmount();
-        log.debug("Balance checker —— block:{} [old:{} add:{} fin:{}]",
-                block.getHashLow().toHexString(),
-                oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        XAmount finalAmount = block.getInfo().getAmount();
+        changeBlockState(block, oldAmount, finalAmount);
+        if (log.isDebugEnabled()) {
+            log.debug("Balance checker —— block:{} [old:{} add:{} fin:{}]",
+                    block.getHashLow().toHexString(),
+                    oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        }
     }
 
     private void subtractAndAccept(Block block, XAmount amount) {
@@ -1803,28 +2813,35 @@ public class BlockchainImpl implements Blockchain {
         if ((block.getInfo().flags & BI_OURS) != 0) {
             xdagStats.setBalance(xdagStats.getBalance().subtract(amount));
         }
-        XAmount finalAmount = blockStore.getBlockInfoByHash(block.getHashLow()).getInfo().getAmount();
-        log.debug("Balance checker —— block:{} [old:{} sub:{} fin:{}]",
-                block.getHashLow().toHexString(),
-                oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        XAmount finalAmount = block.getInfo().getAmount();
+        changeBlockState(block, oldAmount, finalAmount);
+        if (log.isDebugEnabled()) {
+            log.debug("Balance checker —— block:{} [old:{} sub:{} fin:{}]",
+                    block.getHashLow().toHexString(),
+                    oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        }
     }
 
     private void subtractAmount(byte[] addressHash, XAmount amount, Block block) {
         XAmount balance = addressStore.getBalanceByAddress(addressHash);
+        XAmount finalAmount = balance;
         try {
-            addressStore.updateBalance(addressHash, balance.subtract(amount));
+            finalAmount = balance.subtract(amount);
+            addressStore.updateBalance(addressHash, finalAmount);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             log.debug("balance {}  amount {}  addressHsh {}  block {}", balance, amount, toBase58(addressHash), block.getHashLow());
         }
-        XAmount finalAmount = addressStore.getBalanceByAddress(addressHash);
-        log.debug("Balance checker —— Address:{} [old:{} sub:{} fin:{}]",
-                WalletUtils.toBase58(addressHash),
-                balance.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        changeAddressState(addressHash, balance, finalAmount);
+        if (log.isDebugEnabled()) {
+            log.debug("Balance checker —— Address:{} [old:{} sub:{} fin:{}]",
+                    WalletUtils.toBase58(addressHash),
+                    balance.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        }
         if ((block.getInfo().flags & BI_OURS) != 0) {
             xdagStats.setBalance(xdagStats.getBalance().subtract(amount));
         }
@@ -1832,18 +2849,22 @@ public class BlockchainImpl implements Blockchain {
 
     private void addAmount(byte[] addressHash, XAmount amount, Block block) {
         XAmount balance = addressStore.getBalanceByAddress(addressHash);
+        XAmount finalAmount = balance;
         try {
-            addressStore.updateBalance(addressHash, balance.add(amount));
+            finalAmount = balance.add(amount);
+            addressStore.updateBalance(addressHash, finalAmount);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             log.debug("balance {}  amount {}  addressHsh {}  block {}", balance, amount, toBase58(addressHash), block.getHashLow());
         }
-        XAmount finalAmount = addressStore.getBalanceByAddress(addressHash);
-        log.warn("Balance checker —— Address:{} [old:{} add:{} fin:{}]",
-                WalletUtils.toBase58(addressHash),
-                balance.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        changeAddressState(addressHash, balance, finalAmount);
+        if (log.isDebugEnabled()) {
+            log.debug("Balance checker —— Address:{} [old:{} add:{} fin:{}]",
+                    WalletUtils.toBase58(addressHash),
+                    balance.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        }
         if ((block.getInfo().flags & BI_OURS) != 0) {
             xdagStats.setBalance(amount.add(xdagStats.getBalance()));
         }
@@ -1856,17 +2877,80 @@ public class BlockchainImpl implements Blockchain {
         if (block.isSaved) {
             blockStore.saveBlockInfo(block.getInfo());
         }
-        XAmount finalAmount = blockStore.getBlockByHash(block.getHashLow(), false).getInfo().getAmount();
-        log.warn("Balance checker —— Block:{} [old:{} acc:{} fin:{}]",
-                block.getHashLow().toHexString(),
-                oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        XAmount finalAmount = block.getInfo().getAmount();
+        changeBlockState(block, oldAmount, finalAmount);
+        if (log.isDebugEnabled()) {
+            log.debug("Balance checker —— Block:{} [old:{} acc:{} fin:{}]",
+                    block.getHashLow().toHexString(),
+                    oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        }
         if ((block.getInfo().flags & BI_OURS) != 0) {
             xdagStats.setBalance(amount.add(xdagStats.getBalance()));
         }
     }
 
+    private void changeBlockState(Block block, XAmount before, XAmount after) {
+        if (!before.equals(after)) {
+            stateDelta = StateHash.change(stateDelta, StateHash.ofBlock(block.getHashLow(), before),
+                    StateHash.ofBlock(block.getHashLow(), after));
+        }
+    }
+
+    private void changeAddressState(byte[] address, XAmount before, XAmount after) {
+        if (!before.equals(after)) {
+            stateDelta = StateHash.change(stateDelta, StateHash.ofAddress(address, before),
+                    StateHash.ofAddress(address, after));
+        }
+    }
+
+    /**
+     * Record the state hash after the main block at the height, moved from the one before it by
+     * the balances this main block changed. Without a record before it, e.g. before the hashes were
+     * seeded or after unwinding below the height they were seeded at, none is recorded until
+     * {@link #rebuildStateHash()} seeds them again.
+     */
+    private void saveStateHash(long height) {
+        Bytes32 previous = blockStore.getStateHash(height - 1);
+        if (previous != null) {
+            blockStore.saveStateHash(height, UInt256.fromBytes(previous).add(stateDelta));
+        }
+        stateDelta = UInt256.ZERO;
+    }
+
+    /**
+     * State hash of every block and address balance in the stores, including the open write set
+     */
+    private UInt256 scanStateHash() {
+        long start = System.nanoTime();
+        UInt256[] stateHash = {UInt256.ZERO};
+        blockStore.fetchBlockAmounts((hashlow, amount) ->
+                stateHash[0] = stateHash[0].add(StateHash.ofBlock(hashlow, amount)));
+        addressStore.fetchBalances((address, balance) ->
+                stateHash[0] = stateHash[0].add(StateHash.ofAddress(address, balance)));
+        log.info("State hash computed from all balances in {} ms", (System.nanoTime() - start) / 1_000_000);
+        return stateHash[0];
+    }
+
+    @Override
+    public synchronized Bytes32 rebuildStateHash() {
+        long height = xdagStats.nmain;
+        UInt256 stateHash = scanStateHash();
+        Bytes32 recorded = blockStore.getStateHash(height);
+        if (recorded != null && !UInt256.fromBytes(recorded).equals(stateHash)) {
+            log.warn("State hash at height {} was {}, rebuilt as {}", height, recorded.toHexString(),
+                    stateHash.toHexString());
+        }
+        blockStore.saveStateHash(height, stateHash);
+        return stateHash;
+    }
+
+    @Override
+    public Bytes32 getStateHash(long height) {
+        return blockStore.getStateHash(height);
+    }
+
     /**
      * Check if block already exists
      */
@@ -1875,7 +2959,7 @@ public class BlockchainImpl implements Blockchain {
     }
 
     public boolean isExistInMem(Bytes32 hashlow) {
-        return memOrphanPool.containsKey(hashlow);
+        return extraBlockPool.contains(hashlow);
     }
 
     /**
@@ -1909,29 +2993,91 @@ public class BlockchainImpl implements Blockchain {
         return listMainBlocksByHeight(count);
     }
 
-    // TODO: List main blocks generated by this pool. If pool only generated blocks early or never generated blocks, 
-    // need to traverse all block data which needs optimization
+    /**
+     * List main blocks generated by this pool, read from the mined block index
+     */
     @Override
     public List<Block> listMinedBlocks(int count) {
-        Block temp = getBlockByHash(Bytes32.wrap(xdagTopStatus.getTop()), false);
-        if (temp == null) {
-            temp = getBlockByHash(Bytes32.wrap(xdagTopStatus.getPreTop()), false);
-        }
+        List<MinedBlock> mined = getMinedBlocks(count);
         List<Block> res = Lists.newArrayList();
-        while (count > 0) {
-            if (temp == null) {
-                break;
+        for (MinedBlock minedBlock : mined) {
+            Block block = getBlockByHash(minedBlock.getHashlow(), false);
+            if (block != null) {
+                res.add((Block) block.clone());
             }
-            if ((temp.getInfo().flags & BI_MAIN) != 0 && (temp.getInfo().flags & BI_OURS) != 0) {
-                count--;
-                res.add((Block) temp.clone());
+        }
+        return res;
+    }
+
+    @Override
+    public List<MinedBlock> getMinedBlocks(int count) {
+        List<MinedBlock> res = blockStore.getMinedBlocks(count);
+        if (res.size() < count && blockStore.getMinedFloor() > 1) {
+            backfillMinedBlocks(count - res.size(), res);
+        }
+        return res;
+    }
+
+    @Override
+    public MinedBlock getMinedBlock(long height) {
+        return blockStore.getMinedBlock(height);
+    }
+
+    @Override
+    public void setMinedBlockPaid(long height) {
+        synchronized (this) {
+            MinedBlock minedBlock = blockStore.getMinedBlock(height);
+            if (minedBlock != null && !minedBlock.isPaid()) {
+                blockStore.saveMinedBlock(minedBlock.withPaid());
             }
-            if (temp.getInfo().getMaxDiffLink() == null) {
-                break;
+        }
+    }
+
+    /**
+     * Index our main blocks made before the index existed, walking down from its floor by height
+     * until count more are found or {@link #MINED_BACKFILL_HEIGHTS} heights were walked. Each height
+     * is walked once. The walk reads without holding the blockchain lock, and what it found is
+     * saved with the floor every {@link #MINED_FLOOR_INTERVAL} heights.
+     */
+    private void backfillMinedBlocks(int count, List<MinedBlock> res) {
+        synchronized (minedBackfillLock) {
+            long floor = blockStore.getMinedFloor();
+            long stop = Math.max(1, floor - MINED_BACKFILL_HEIGHTS);
+            List<Block> found = new ArrayList<>();
+            while (count > 0 && floor > stop) {
+                long height = floor - 1;
+                Block block = getBlockByHeight(height);
+                if (block != null && (block.getInfo().flags & BI_OURS) != 0) {
+                    found.add(block);
+                    count--;
+                }
+                floor = height;
+                if (count == 0 || floor == stop || floor % MINED_FLOOR_INTERVAL == 0) {
+                    saveBackfilled(found, floor, res);
+                    found.clear();
+                }
+            }
+        }
+    }
+
+    private void saveBackfilled(List<Block> found, long floor, List<MinedBlock> res) {
+        synchronized (this) {
+            for (Block block : found) {
+                long height = block.getInfo().getHeight();
+                // unwound since it was read
+                Block current = getBlockByHeight(height);
+                if (current == null || !current.getHashLow().equals(block.getHashLow())) {
+                    continue;
+                }
+                MinedBlock minedBlock = new MinedBlock(height, Bytes32.wrap(block.getHashLow().toArray()), -1,
+                        minedReward(block, height), false);
+                blockStore.saveMinedBlock(minedBlock);
+                res.add(minedBlock);
+            }
+            if (floor < blockStore.getMinedFloor()) {
+                blockStore.saveMinedFloor(floor);
             }
-            temp = getBlockByHash(Bytes32.wrap(temp.getInfo().getMaxDiffLink()), false);
         }
-        return res;
     }
 
     enum OrphanRemoveActions {
@@ -0,0 +1,363 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import io.xdag.utils.XdagTime;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+
+/**
+ * In-memory DAG of the recent chain, bucketed by epoch, used for fork choice, orphan handling and
+ * link selection on the live window without reading and parsing blocks from the store.
+ *
+ * <p>For every block of the last {@code epochs} epochs it keeps the timestamp, difficulty, max
+ * difficulty link, flags and block links, and remembers where its max difficulty path leaves its
+ * epoch. Links are kept in both directions, so the blocks of the window referencing a block are
+ * known as well. Blocks are added when imported or when first looked up, flag changes are pushed
+ * through {@link #updateFlags}, and blocks falling out of the window are dropped as newer epochs
+ * arrive. A lookup that misses asks the loader and keeps the result if it is recent enough, only
+ * blocks the window never saw, e.g. older ones or those imported before a restart, are read from
+ * the store.
+ */
+public class ChainWindow {
+
+    /**
+     * One block of the window
+     */
+    @Getter
+    public static final class Node {
+
+        private final Bytes32 hashlow;
+        @Getter(AccessLevel.NONE)
+        private final HashLow key;
+        private final long timestamp;
+        private final BigInteger difficulty;
+        private final Bytes32 maxDiffLink;
+        private volatile int flags;
+        // hashlows of the linked blocks, null if the node was made from block info only
+        private volatile List<Bytes32> links;
+        // first block outside the epoch along max difficulty links, see epochExit
+        @Getter(AccessLevel.NONE)
+        private Bytes32 epochExit;
+        @Getter(AccessLevel.NONE)
+        private boolean epochExitKnown;
+
+        Node(Block block, boolean withLinks) {
+            BlockInfo info = block.getInfo();
+            this.hashlow = toHashlow(block.getHashLow());
+            this.key = block.getHashLowKey();
+            this.timestamp = block.getTimestamp();
+            this.difficulty = info.getDifficulty();
+            this.maxDiffLink = info.getMaxDiffLink() == null ? null : toHashlow(Bytes32.wrap(info.getMaxDiffLink()));
+            this.flags = info.getFlags();
+            if (withLinks) {
+                List<Bytes32> refs = new ArrayList<>();
+                for (Address link : block.getLinks()) {
+                    if (!link.isAddress) {
+                        refs.add(toHashlow(link.getAddress()));
+                    }
+                }
+                this.links = List.copyOf(refs);
+            }
+        }
+
+        public long getEpoch() {
+            return XdagTime.getEpoch(timestamp);
+        }
+
+        public boolean hasFlag(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private final int epochs;
+    private final Function<Bytes32, Block> loader;
+    private final Map<HashLow, Node> nodes = new HashMap<>();
+    private final TreeMap<Long, List<HashLow>> byEpoch = new TreeMap<>();
+    // blocks of the window linking each block, whether or not the linked block is in the window
+    private final Map<HashLow, List<HashLow>> children = new HashMap<>();
+    private long newestEpoch;
+    // flags before their first change since mark, null when not marked
+    private Map<HashLow, Integer> marked;
+    @Getter
+    private long hits;
+    @Getter
+    private long misses;
+
+    /**
+     * @param epochs number of epochs kept behind the newest block
+     * @param loader reads a block info from the store, null if it does not exist
+     */
+    public ChainWindow(int epochs, Function<Bytes32, Block> loader) {
+        this.epochs = epochs;
+        this.loader = loader;
+    }
+
+    /**
+     * Add or refresh a block with its links, typically once its difficulty is known on import
+     */
+    public synchronized Node put(Block block) {
+        return put(block, true);
+    }
+
+    /**
+     * Refresh a block read as info only, keeping the links already known for it
+     */
+    public synchronized Node refresh(Block block) {
+        return put(block, false);
+    }
+
+    private Node put(Block block, boolean withLinks) {
+        Node node = new Node(block, withLinks);
+        if (node.getEpoch() > newestEpoch) {
+            newestEpoch = node.getEpoch();
+            evict();
+        }
+        if (inWindow(node)) {
+            Node old = nodes.put(node.key, node);
+            if (old == null) {
+                byEpoch.computeIfAbsent(node.getEpoch(), k -> new ArrayList<>()).add(node.key);
+            } else {
+                if (old.epochExitKnown && Objects.equals(old.maxDiffLink, node.maxDiffLink)) {
+                    // same path out of the epoch, keep the walk already done
+                    node.epochExit = old.epochExit;
+                    node.epochExitKnown = true;
+                }
+                if (old.links != null) {
+                    // links never change, their edges are in place already
+                    node.links = old.links;
+                    return node;
+                }
+            }
+            if (node.links != null) {
+                for (Bytes32 link : node.links) {
+                    children.computeIfAbsent(HashLow.of(link), k -> new ArrayList<>()).add(node.key);
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Look up a block, falling back to the loader on a miss.
+     *
+     * @return the node, or null if hashlow is null or the block does not exist
+     */
+    public synchronized Node get(Bytes32 hashlow) {
+        if (hashlow == null) {
+            return null;
+        }
+        HashLow key = HashLow.of(hashlow);
+        Node node = nodes.get(key);
+        if (node != null) {
+            hits++;
+            return node;
+        }
+        misses++;
+        Block block = loader.apply(key.toBytes32());
+        if (block == null) {
+            return null;
+        }
+        node = new Node(block, false);
+        if (inWindow(node)) {
+            nodes.put(key, node);
+            byEpoch.computeIfAbsent(node.getEpoch(), k -> new ArrayList<>()).add(key);
+        }
+        return node;
+    }
+
+    /**
+     * Look up a block of the window without falling back to the loader
+     *
+     * @return the node, or null if the block is not in the window
+     */
+    public synchronized Node peek(Bytes32 hashlow) {
+        return hashlow == null ? null : nodes.get(HashLow.of(hashlow));
+    }
+
+    /**
+     * Hashlows of the blocks in the window that link the block
+     */
+    public synchronized List<Bytes32> children(Bytes32 hashlow) {
+        List<HashLow> keys = children.get(HashLow.of(hashlow));
+        if (keys == null) {
+            return List.of();
+        }
+        List<Bytes32> res = new ArrayList<>(keys.size());
+        for (HashLow key : keys) {
+            res.add(key.toBytes32());
+        }
+        return res;
+    }
+
+    /**
+     * Follow the max difficulty link of a node
+     */
+    public Node next(Node node) {
+        return node == null ? null : get(node.maxDiffLink);
+    }
+
+    /**
+     * First block along the max difficulty links of node that lies outside its epoch, null if the
+     * links end before. The answer is remembered for every block walked, since blocks of one epoch
+     * on the same path share it.
+     */
+    public synchronized Node epochExit(Node node) {
+        List<Node> walked = new ArrayList<>();
+        Node exit;
+        Node cur = node;
+        while (true) {
+            if (cur.epochExitKnown) {
+                exit = get(cur.epochExit);
+                break;
+            }
+            walked.add(cur);
+            Node next = next(cur);
+            if (next == null || next.getEpoch() != node.getEpoch()) {
+                exit = next;
+                break;
+            }
+            cur = next;
+        }
+        for (Node n : walked) {
+            n.epochExit = exit == null ? null : exit.hashlow;
+            n.epochExitKnown = true;
+        }
+        return exit;
+    }
+
+    public synchronized void updateFlags(Bytes32 hashlow, int flags) {
+        Node node = nodes.get(HashLow.of(hashlow));
+        if (node != null) {
+            if (marked != null) {
+                marked.putIfAbsent(node.key, node.flags);
+            }
+            node.flags = flags;
+        }
+    }
+
+    /**
+     * Remember the flags changed from now on, so that {@link #reset()} can put them back
+     */
+    public synchronized void mark() {
+        marked = new HashMap<>();
+    }
+
+    /**
+     * Keep the flags changed since {@link #mark()}
+     */
+    public synchronized void unmark() {
+        marked = null;
+    }
+
+    /**
+     * Put back the flags changed since {@link #mark()}
+     */
+    public synchronized void reset() {
+        if (marked == null) {
+            return;
+        }
+        marked.forEach((key, flags) -> {
+            Node node = nodes.get(key);
+            if (node != null) {
+                node.flags = flags;
+            }
+        });
+        marked = null;
+    }
+
+    public synchronized void remove(Bytes32 hashlow) {
+        Node node = nodes.get(HashLow.of(hashlow));
+        if (node != null) {
+            unlink(node);
+            List<HashLow> keys = byEpoch.get(node.getEpoch());
+            keys.remove(node.key);
+            if (keys.isEmpty()) {
+                byEpoch.remove(node.getEpoch());
+            }
+        }
+    }
+
+    /**
+     * Forget every block, e.g. after the store was rolled back
+     */
+    public synchronized void clear() {
+        nodes.clear();
+        byEpoch.clear();
+        children.clear();
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    private boolean inWindow(Node node) {
+        return node.getEpoch() + epochs >= newestEpoch;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Long, List<HashLow>>> it = byEpoch.headMap(newestEpoch - epochs).entrySet().iterator();
+        while (it.hasNext()) {
+            for (HashLow key : it.next().getValue()) {
+                unlink(nodes.get(key));
+            }
+            it.remove();
+        }
+    }
+
+    // Drop a node and the edges of its links, except from the epoch index. Blocks of the window
+    // linking it keep their edges until they are dropped themselves
+    private void unlink(Node node) {
+        nodes.remove(node.key);
+        if (node.links != null) {
+            for (Bytes32 link : node.links) {
+                HashLow parent = HashLow.of(link);
+                List<HashLow> keys = children.get(parent);
+                if (keys != null) {
+                    keys.remove(node.key);
+                    if (keys.isEmpty()) {
+                        children.remove(parent);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Bytes32 toHashlow(Bytes32 hash) {
+        MutableBytes32 hashlow = MutableBytes32.create();
+        hashlow.set(8, hash.slice(8, 24));
+        return hashlow.copy();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits ordered work items into levels by the keys they touch.
+ *
+ * <p>Items of one level share no key, and an item lands on a later level than every earlier item
+ * it shares a key with. Running the levels one after another, the items of a level in any order,
+ * gives the same result as running all items in their original order.
+ */
+public final class ConflictLevels {
+
+    private ConflictLevels() {
+    }
+
+    /**
+     * Level of each item, starting at 0
+     *
+     * @param keys keys touched by each item, in item order
+     */
+    public static <K> int[] assign(List<? extends Collection<K>> keys) {
+        int[] levels = new int[keys.size()];
+        Map<K, Integer> last = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            int level = 0;
+            for (K key : keys.get(i)) {
+                Integer prev = last.get(key);
+                if (prev != null && prev >= level) {
+                    level = prev + 1;
+                }
+            }
+            for (K key : keys.get(i)) {
+                last.put(key, level);
+            }
+            levels[i] = level;
+        }
+        return levels;
+    }
+
+    /**
+     * Indexes of the items of each level, in item order within a level
+     *
+     * @param keys keys touched by each item, in item order
+     */
+    public static <K> List<List<Integer>> group(List<? extends Collection<K>> keys) {
+        int[] levels = assign(keys);
+        List<List<Integer>> groups = new ArrayList<>();
+        for (int i = 0; i < levels.length; i++) {
+            while (groups.size() <= levels[i]) {
+                groups.add(new ArrayList<>());
+            }
+            groups.get(levels[i]).add(i);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import io.xdag.utils.XdagTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Extra blocks that are connected but not referenced yet, kept in memory until a block links them
+ * or they are dropped to make room.
+ *
+ * <p>Blocks are indexed by hashlow and by epoch. Lookups read a {@link ConcurrentHashMap} without
+ * locking, so RPC and sync threads can query the pool while the import thread changes it. Writers
+ * are serialized and keep the epoch index in step, which makes eviction deterministic: the oldest
+ * epoch goes first, and inside an epoch the smallest hashlow.
+ */
+public class ExtraBlockPool {
+
+    private final long capacity;
+    private final Map<HashLow, Block> blocks = new ConcurrentHashMap<>();
+    // guarded by this
+    private final TreeMap<Long, NavigableSet<HashLow>> byEpoch = new TreeMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+
+    /**
+     * @param capacity number of blocks kept before {@link #overflow()} reports one to evict
+     */
+    public ExtraBlockPool(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Lock free lookup by hash or hashlow, null if the block is not in the pool
+     */
+    public Block get(Bytes32 hashlow) {
+        return get(HashLow.of(hashlow));
+    }
+
+    public Block get(HashLow key) {
+        Block block = blocks.get(key);
+        if (block == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return block;
+    }
+
+    public boolean contains(Bytes32 hashlow) {
+        return contains(HashLow.of(hashlow));
+    }
+
+    public boolean contains(HashLow key) {
+        return blocks.containsKey(key);
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+
+    public synchronized void put(Block block) {
+        HashLow key = block.getHashLowKey();
+        if (blocks.put(key, block) == null) {
+            byEpoch.computeIfAbsent(XdagTime.getEpoch(block.getTimestamp()), k -> new TreeSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Remove a block once it has been saved to the store
+     */
+    public synchronized Block remove(Bytes32 hashlow) {
+        Block block = blocks.remove(HashLow.of(hashlow));
+        if (block != null) {
+            unindex(block);
+        }
+        return block;
+    }
+
+    /**
+     * Remove a block that is dropped without being saved
+     */
+    public synchronized Block evict(Bytes32 hashlow) {
+        Block block = remove(hashlow);
+        if (block != null) {
+            evictions.increment();
+        }
+        return block;
+    }
+
+    /**
+     * Remove blocks that were saved together, see {@link io.xdag.db.BlockStore#saveBlocks(List)}
+     */
+    public synchronized void removeAll(Collection<Block> saved) {
+        for (Block block : saved) {
+            if (remove(block.getHashLow()) != null) {
+                persisted.increment();
+            }
+        }
+    }
+
+    /**
+     * Oldest block while the pool holds more than its capacity, null otherwise
+     */
+    public synchronized Block overflow() {
+        return blocks.size() > capacity ? oldest() : null;
+    }
+
+    /**
+     * Block of the oldest epoch with the smallest hashlow, null if the pool is empty
+     */
+    public synchronized Block oldest() {
+        if (byEpoch.isEmpty()) {
+            return null;
+        }
+        return blocks.get(byEpoch.firstEntry().getValue().first());
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getPersisted() {
+        return persisted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExtraBlockPool[size=%d, epochs=%d, hits=%d, misses=%d, evicted=%d, persisted=%d]",
+                size(), epochCount(), getHits(), getMisses(), getEvictions(), getPersisted());
+    }
+
+    private synchronized int epochCount() {
+        return byEpoch.size();
+    }
+
+    private void unindex(Block block) {
+        long epoch = XdagTime.getEpoch(block.getTimestamp());
+        NavigableSet<HashLow> keys = byEpoch.get(epoch);
+        if (keys != null) {
+            keys.remove(block.getHashLowKey());
+            if (keys.isEmpty()) {
+                byEpoch.remove(epoch);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+
+/**
+ * Immutable map key for a block: the low 192 bits of its hash held as three longs.
+ *
+ * <p>The first 8 bytes of the hash are ignored, so a full hash and its hashlow give the same key.
+ * Keys order like the big endian bytes of the hashlow.
+ */
+public final class HashLow implements Comparable<HashLow> {
+
+    private final long high;
+    private final long mid;
+    private final long low;
+    private final int hash;
+
+    private HashLow(long high, long mid, long low) {
+        this.high = high;
+        this.mid = mid;
+        this.low = low;
+        this.hash = Long.hashCode(high) * 961 + Long.hashCode(mid) * 31 + Long.hashCode(low);
+    }
+
+    /**
+     * Key of a 32-byte hash or hashlow
+     */
+    public static HashLow of(Bytes hash) {
+        return new HashLow(hash.getLong(8), hash.getLong(16), hash.getLong(24));
+    }
+
+    /**
+     * Key of a 32-byte hash or hashlow, read in place
+     */
+    public static HashLow of(byte[] hash) {
+        return new HashLow(readLong(hash, 8), readLong(hash, 16), readLong(hash, 24));
+    }
+
+    /**
+     * The hashlow, first 8 bytes zero
+     */
+    public Bytes32 toBytes32() {
+        MutableBytes32 bytes = MutableBytes32.create();
+        bytes.setLong(8, high);
+        bytes.setLong(16, mid);
+        bytes.setLong(24, low);
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HashLow other)) {
+            return false;
+        }
+        return high == other.high && mid == other.mid && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public int compareTo(HashLow o) {
+        int c = Long.compareUnsigned(high, o.high);
+        if (c == 0) {
+            c = Long.compareUnsigned(mid, o.mid);
+        }
+        if (c == 0) {
+            c = Long.compareUnsigned(low, o.low);
+        }
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return toBytes32().toHexString();
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
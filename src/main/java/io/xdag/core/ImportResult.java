@@ -39,6 +39,7 @@ import lombok.Setter;
  * IMPORTED_EXTRA - Block imported as extra
  * IMPORTED_NOT_BEST - Block imported but not in main chain
  * IMPORTED_BEST - Block imported into main chain
+ * PENDING - Account transaction held in the pending pool until the nonces before it are imported
  */
 public enum ImportResult {
     ERROR,
@@ -49,7 +50,9 @@ public enum ImportResult {
 
     IMPORTED_EXTRA,
     IMPORTED_NOT_BEST,
-    IMPORTED_BEST;
+    IMPORTED_BEST,
+
+    PENDING;
 
     // Truncated hash of the block
     private MutableBytes32 hashLow;
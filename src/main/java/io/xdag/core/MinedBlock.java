@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import io.xdag.utils.SimpleDecoder;
+import io.xdag.utils.SimpleEncoder;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * One of our main blocks, as kept in the mined block index of the block store under its height.
+ *
+ * <p>The index is written with the main block itself and removed when it stops being main, so
+ * listing our latest main blocks or finding the key that pays one out reads a few entries instead
+ * of walking the chain.
+ */
+@Getter
+public class MinedBlock {
+
+    private final long height;
+    private final Bytes32 hashlow;
+    // wallet index of the key that signed the block, -1 if unknown
+    private final int keyIndex;
+    // amount of the block once it became main, reward and fees
+    private final XAmount reward;
+    private final boolean paid;
+
+    public MinedBlock(long height, Bytes32 hashlow, int keyIndex, XAmount reward, boolean paid) {
+        this.height = height;
+        this.hashlow = hashlow;
+        this.keyIndex = keyIndex;
+        this.reward = reward;
+        this.paid = paid;
+    }
+
+    public MinedBlock withPaid() {
+        return new MinedBlock(height, hashlow, keyIndex, reward, true);
+    }
+
+    public byte[] toBytes() {
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeBytes(hashlow.toArray());
+        enc.writeInt(keyIndex);
+        enc.writeLong(reward.toDecimal(0, XUnit.NANO_XDAG).longValueExact());
+        enc.writeBoolean(paid);
+        return enc.toBytes();
+    }
+
+    public static MinedBlock fromBytes(long height, byte[] bytes) {
+        SimpleDecoder dec = new SimpleDecoder(bytes);
+        Bytes32 hashlow = Bytes32.wrap(dec.readBytes());
+        int keyIndex = dec.readInt();
+        XAmount reward = XAmount.of(dec.readLong());
+        boolean paid = dec.readBoolean();
+        return new MinedBlock(height, hashlow, keyIndex, reward, paid);
+    }
+
+    @Override
+    public String toString() {
+        return "MinedBlock{height=" + height + ", hashlow=" + hashlow.toHexString() + ", keyIndex=" + keyIndex
+                + ", paid=" + paid + "}";
+    }
+}
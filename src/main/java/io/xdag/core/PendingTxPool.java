@@ -0,0 +1,334 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.config.Constants.MIN_GAS;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
+
+import io.xdag.utils.BytesUtils;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * Account transactions that wait for their nonce, and those imported but not linked yet.
+ *
+ * <p>A transaction whose nonce is past the next one of its sender is queued under (sender, nonce)
+ * instead of failing, and handed back by {@link #pollReady} once the nonces before it are imported,
+ * so a sender can submit a run of nonces at once. A queued transaction is replaced only by one
+ * paying {@link #REPLACE_FEE_BUMP_PERCENT} percent more. When the pool is full the cheapest last
+ * transaction of a sender makes room for a better paying one.
+ *
+ * <p>Imported transactions are kept until a block links them, and {@link #selectForLink} offers the
+ * best paying first while keeping the nonce order of each sender.
+ */
+public class PendingTxPool {
+
+    public enum Admission {
+        // next nonce of the sender, to be imported now
+        READY,
+        // held until the nonces before it are imported
+        QUEUED,
+        // took the place of a queued transaction with the same nonce
+        REPLACED,
+        // same nonce as a queued transaction without paying enough more
+        UNDERPRICED,
+        // nonce already imported
+        STALE,
+        // nonce too far past the next one of the sender
+        NONCE_TOO_FAR,
+        // pool full of transactions paying at least as much
+        FULL,
+        // already in the pool
+        KNOWN
+    }
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+    public static final int DEFAULT_MAX_PER_SENDER = 64;
+    public static final int REPLACE_FEE_BUMP_PERCENT = 10;
+
+    private static final Comparator<Entry> BY_PRIORITY = Comparator
+            .comparingLong((Entry e) -> -e.fee)
+            .thenComparingLong(e -> e.seq);
+
+    private final int maxSize;
+    private final int maxPerSender;
+
+    // guarded by this
+    private final Map<Bytes, TreeMap<Long, Entry>> queued = new HashMap<>();
+    private final Map<HashLow, Entry> queuedByHash = new HashMap<>();
+    // imported and not linked, oldest first
+    private final Map<HashLow, Entry> imported = new LinkedHashMap<>();
+    private long seq;
+
+    private final LongAdder replaced = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder promoted = new LongAdder();
+
+    /**
+     * @param maxSize      transactions kept queued, and imported ones kept for linking
+     * @param maxPerSender how far past the next nonce of a sender a transaction may be queued
+     */
+    public PendingTxPool(int maxSize, int maxPerSender) {
+        this.maxSize = maxSize;
+        this.maxPerSender = maxPerSender;
+    }
+
+    /**
+     * Sender of an account transaction, null for any other block
+     */
+    public static Bytes senderOf(Block block) {
+        if (block.getTxNonceField() == null) {
+            return null;
+        }
+        for (Address input : block.getInputs()) {
+            if (input.getType() == XDAG_FIELD_INPUT) {
+                return Bytes.wrap(BytesUtils.byte32ToArray(input.getAddress()));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Nonce of an account transaction
+     */
+    public static long nonceOf(Block block) {
+        return block.getTxNonceField().getTransactionNonce().toLong();
+    }
+
+    /**
+     * Admit an account transaction of a sender whose next nonce is nextNonce. Only queued and
+     * replacing transactions are kept, a ready one is left to the caller to import.
+     */
+    public synchronized Admission add(BlockWrapper wrapper, long nextNonce) {
+        Entry entry = entry(wrapper.getBlock(), wrapper);
+        if (queuedByHash.containsKey(entry.key) || imported.containsKey(entry.key)) {
+            return Admission.KNOWN;
+        }
+        if (entry.nonce < nextNonce) {
+            return Admission.STALE;
+        }
+        TreeMap<Long, Entry> senderQueue = queued.get(entry.sender);
+        Entry old = senderQueue == null ? null : senderQueue.get(entry.nonce);
+        if (entry.nonce == nextNonce) {
+            // imported now, whatever was queued for this nonce is not needed anymore
+            if (old != null) {
+                unqueue(old);
+            }
+            return Admission.READY;
+        }
+        if (entry.nonce - nextNonce >= maxPerSender) {
+            return Admission.NONCE_TOO_FAR;
+        }
+        if (old != null) {
+            if (entry.fee <= old.fee || entry.fee < old.fee + old.fee * REPLACE_FEE_BUMP_PERCENT / 100) {
+                return Admission.UNDERPRICED;
+            }
+            unqueue(old);
+            queue(entry);
+            replaced.increment();
+            return Admission.REPLACED;
+        }
+        if (queuedByHash.size() >= maxSize) {
+            Entry victim = cheapestTail();
+            if (victim == null || victim.fee >= entry.fee) {
+                return Admission.FULL;
+            }
+            unqueue(victim);
+            evicted.increment();
+        }
+        queue(entry);
+        return Admission.QUEUED;
+    }
+
+    /**
+     * Remove and return the queued transaction of the sender with nonce nextNonce, dropping those
+     * below it. Null if there is none.
+     */
+    public synchronized BlockWrapper pollReady(Bytes sender, long nextNonce) {
+        TreeMap<Long, Entry> senderQueue = queued.get(sender);
+        if (senderQueue == null) {
+            return null;
+        }
+        while (!senderQueue.isEmpty() && senderQueue.firstKey() < nextNonce) {
+            unqueue(senderQueue.firstEntry().getValue());
+        }
+        Entry entry = senderQueue.get(nextNonce);
+        if (entry == null) {
+            return null;
+        }
+        unqueue(entry);
+        promoted.increment();
+        return entry.wrapper;
+    }
+
+    /**
+     * Keep an imported account transaction until a block links it
+     */
+    public synchronized void onImported(Block block) {
+        Entry entry = entry(block, null);
+        imported.put(entry.key, entry);
+        if (imported.size() > maxSize) {
+            Iterator<Entry> oldest = imported.values().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Forget a transaction once a block links it
+     */
+    public synchronized void onLinked(HashLow key) {
+        imported.remove(key);
+    }
+
+    /**
+     * Up to num imported transactions not newer than sendTime to link, the best paying first, with
+     * the same boundary as the orphans. A transaction comes after the earlier nonces of its sender.
+     */
+    public synchronized List<Block> selectForLink(int num, long sendTime) {
+        List<Block> selected = new ArrayList<>();
+        if (num <= 0 || imported.isEmpty()) {
+            return selected;
+        }
+        Map<Bytes, TreeMap<Long, Entry>> bySender = new HashMap<>();
+        for (Entry entry : imported.values()) {
+            bySender.computeIfAbsent(entry.sender, k -> new TreeMap<>()).put(entry.nonce, entry);
+        }
+        PriorityQueue<Entry> heads = new PriorityQueue<>(BY_PRIORITY);
+        for (TreeMap<Long, Entry> senderTxs : bySender.values()) {
+            Entry head = senderTxs.firstEntry().getValue();
+            if (head.block.getTimestamp() <= sendTime) {
+                heads.add(head);
+            }
+        }
+        while (selected.size() < num && !heads.isEmpty()) {
+            Entry head = heads.poll();
+            selected.add(head.block);
+            Map.Entry<Long, Entry> next = bySender.get(head.sender).higherEntry(head.nonce);
+            if (next != null && next.getValue().block.getTimestamp() <= sendTime) {
+                heads.add(next.getValue());
+            }
+        }
+        return selected;
+    }
+
+    public synchronized int queuedSize() {
+        return queuedByHash.size();
+    }
+
+    public synchronized int importedSize() {
+        return imported.size();
+    }
+
+    public long getReplaced() {
+        return replaced.sum();
+    }
+
+    public long getEvicted() {
+        return evicted.sum();
+    }
+
+    public long getPromoted() {
+        return promoted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PendingTxPool[queued=%d, senders=%d, imported=%d, replaced=%d, evicted=%d, promoted=%d]",
+                queuedSize(), senderCount(), importedSize(), getReplaced(), getEvicted(), getPromoted());
+    }
+
+    private synchronized int senderCount() {
+        return queued.size();
+    }
+
+    private Entry entry(Block block, BlockWrapper wrapper) {
+        Bytes sender = senderOf(block);
+        if (sender == null) {
+            throw new IllegalArgumentException("Not an account transaction: " + block.getHashLow().toHexString());
+        }
+        XAmount fee = block.getFee().isZero() ? MIN_GAS : block.getFee();
+        return new Entry(block, wrapper, sender, nonceOf(block), fee.toXAmount().toLong(), seq++);
+    }
+
+    private void queue(Entry entry) {
+        queued.computeIfAbsent(entry.sender, k -> new TreeMap<>()).put(entry.nonce, entry);
+        queuedByHash.put(entry.key, entry);
+    }
+
+    private void unqueue(Entry entry) {
+        TreeMap<Long, Entry> senderQueue = queued.get(entry.sender);
+        senderQueue.remove(entry.nonce);
+        if (senderQueue.isEmpty()) {
+            queued.remove(entry.sender);
+        }
+        queuedByHash.remove(entry.key);
+    }
+
+    /**
+     * Lowest paying last transaction of a sender, the newest on a tie
+     */
+    private Entry cheapestTail() {
+        Entry cheapest = null;
+        for (TreeMap<Long, Entry> senderQueue : queued.values()) {
+            Entry tail = senderQueue.lastEntry().getValue();
+            if (cheapest == null || tail.fee < cheapest.fee || (tail.fee == cheapest.fee && tail.seq > cheapest.seq)) {
+                cheapest = tail;
+            }
+        }
+        return cheapest;
+    }
+
+    private static final class Entry {
+
+        private final Block block;
+        // null once imported
+        private final BlockWrapper wrapper;
+        private final HashLow key;
+        private final Bytes sender;
+        private final long nonce;
+        // in nano XDAG
+        private final long fee;
+        private final long seq;
+
+        Entry(Block block, BlockWrapper wrapper, Bytes sender, long nonce, long fee, long seq) {
+            this.block = block;
+            this.wrapper = wrapper;
+            this.key = block.getHashLowKey();
+            this.sender = sender;
+            this.nonce = nonce;
+            this.fee = fee;
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import io.xdag.crypto.Hash;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt256;
+
+/**
+ * Commutative hash of the balances of all blocks and addresses.
+ *
+ * <p>Every non-zero balance contributes the hash of its owner and amount, and the state hash is
+ * their sum modulo 2^256. The order of changes does not matter and a balance change moves the sum
+ * by the difference of two hashes, so it is kept up to date in O(1) per change. Two nodes with the
+ * same state hash at a height agree on every balance with overwhelming probability.
+ */
+public final class StateHash {
+
+    private static final byte BLOCK = 0;
+    private static final byte ADDRESS = 1;
+
+    private StateHash() {
+    }
+
+    /**
+     * Share of a block balance
+     */
+    public static UInt256 ofBlock(Bytes32 hashlow, XAmount amount) {
+        return of(BLOCK, hashlow, amount);
+    }
+
+    /**
+     * Share of an address balance
+     */
+    public static UInt256 ofAddress(byte[] address, XAmount amount) {
+        return of(ADDRESS, Bytes.wrap(address), amount);
+    }
+
+    /**
+     * Move a state hash for one balance going from before to after
+     */
+    public static UInt256 change(UInt256 state, UInt256 before, UInt256 after) {
+        return state.subtract(before).add(after);
+    }
+
+    private static UInt256 of(byte type, Bytes owner, XAmount amount) {
+        long nano = amount.toXAmount().toLong();
+        if (nano == 0) {
+            // owners without balance leave the state hash alone
+            return UInt256.ZERO;
+        }
+        return UInt256.fromBytes(Hash.sha256(Bytes.concatenate(Bytes.of(type), owner, Bytes.ofUnsignedLong(nano))));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import io.xdag.utils.SimpleDecoder;
+import io.xdag.utils.SimpleEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Undo data of one main block, written in the same batch as the main block itself.
+ *
+ * <p>For every block info the main block changed it keeps the committed amount, ref, fee and height
+ * and the flag bits that changed; other flag bits may change later and are left alone. Balances and
+ * executed nonces of addresses are kept as their committed values, since only main blocks write them
+ * and they are undone newest first. Transaction quantities are left out: transactions submitted
+ * from other threads raise them outside the write set, so they are derived again from the executed
+ * nonce on undo. Undoing a main block then replays this record instead of walking its DAG.
+ */
+@Getter
+public class UndoRecord {
+
+    /**
+     * Committed state of one block info
+     */
+    public record BlockUndo(Bytes32 hashlow, int flagMask, int flags, XAmount amount, byte[] ref, XAmount fee,
+                            long height) {
+
+        /**
+         * Every field of the info as it is now
+         */
+        static BlockUndo of(BlockInfo info) {
+            return new BlockUndo(Bytes32.wrap(info.getHashlow()), ~0, info.getFlags(), info.getAmount(),
+                    info.getRef() == null ? null : info.getRef().clone(), info.getFee(), info.getHeight());
+        }
+
+        static BlockUndo of(BlockInfo before, BlockInfo after) {
+            return new BlockUndo(Bytes32.wrap(before.getHashlow()), before.getFlags() ^ after.getFlags(),
+                    before.getFlags(), before.getAmount(), before.getRef(), before.getFee(), before.getHeight());
+        }
+
+        /**
+         * Put the committed state back into the current info of the block
+         */
+        public void applyTo(BlockInfo info) {
+            info.setFlags((info.getFlags() & ~flagMask) | (flags & flagMask));
+            info.setAmount(amount);
+            info.setRef(ref == null ? null : ref.clone());
+            info.setFee(fee);
+            info.setHeight(height);
+        }
+    }
+
+    private final Bytes32 mainBlock;
+    // change of the balance of our blocks and addresses in XdagStats
+    private final XAmount oursBalanceDelta;
+    private final List<BlockUndo> blocks;
+    private final List<Pair<byte[], byte[]>> addresses;
+
+    public UndoRecord(Bytes32 mainBlock, XAmount oursBalanceDelta, List<BlockUndo> blocks,
+            List<Pair<byte[], byte[]>> addresses) {
+        this.mainBlock = mainBlock;
+        this.oursBalanceDelta = oursBalanceDelta;
+        this.blocks = blocks;
+        this.addresses = addresses;
+    }
+
+    /**
+     * Build a record from the pending changes of the open write set.
+     *
+     * @return the record, or null if a block info was created rather than changed
+     */
+    public static UndoRecord of(Bytes32 mainBlock, XAmount oursBalanceDelta, List<Pair<BlockInfo, BlockInfo>> infos,
+            List<Pair<byte[], byte[]>> addresses) {
+        List<BlockUndo> blocks = new ArrayList<>(infos.size());
+        for (Pair<BlockInfo, BlockInfo> info : infos) {
+            if (info.getLeft() == null || info.getRight() == null) {
+                return null;
+            }
+            blocks.add(BlockUndo.of(info.getLeft(), info.getRight()));
+        }
+        return new UndoRecord(mainBlock, oursBalanceDelta, blocks, addresses);
+    }
+
+    public byte[] toBytes() {
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeBytes(mainBlock.toArray());
+        enc.writeLong(toNano(oursBalanceDelta));
+        enc.writeInt(blocks.size());
+        for (BlockUndo block : blocks) {
+            enc.writeBytes(block.hashlow().toArray());
+            enc.writeInt(block.flagMask());
+            enc.writeInt(block.flags());
+            enc.writeLong(toNano(block.amount()));
+            enc.writeBoolean(block.ref() != null);
+            if (block.ref() != null) {
+                enc.writeBytes(block.ref());
+            }
+            enc.writeLong(toNano(block.fee()));
+            enc.writeLong(block.height());
+        }
+        enc.writeInt(addresses.size());
+        for (Pair<byte[], byte[]> address : addresses) {
+            enc.writeBytes(address.getKey());
+            enc.writeBoolean(address.getValue() != null);
+            if (address.getValue() != null) {
+                enc.writeBytes(address.getValue());
+            }
+        }
+        return enc.toBytes();
+    }
+
+    public static UndoRecord fromBytes(byte[] bytes) {
+        SimpleDecoder dec = new SimpleDecoder(bytes);
+        Bytes32 mainBlock = Bytes32.wrap(dec.readBytes());
+        XAmount oursBalanceDelta = XAmount.of(dec.readLong());
+        int size = dec.readInt();
+        List<BlockUndo> blocks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Bytes32 hashlow = Bytes32.wrap(dec.readBytes());
+            int flagMask = dec.readInt();
+            int flags = dec.readInt();
+            XAmount amount = XAmount.of(dec.readLong());
+            byte[] ref = dec.readBoolean() ? dec.readBytes() : null;
+            XAmount fee = XAmount.of(dec.readLong());
+            long height = dec.readLong();
+            blocks.add(new BlockUndo(hashlow, flagMask, flags, amount, ref, fee, height));
+        }
+        size = dec.readInt();
+        List<Pair<byte[], byte[]>> addresses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] key = dec.readBytes();
+            byte[] value = dec.readBoolean() ? dec.readBytes() : null;
+            addresses.add(Pair.of(key, value));
+        }
+        return new UndoRecord(mainBlock, oursBalanceDelta, blocks, addresses);
+    }
+
+    private static long toNano(XAmount amount) {
+        return amount.toDecimal(0, XUnit.NANO_XDAG).longValueExact();
+    }
+
+    @Override
+    public String toString() {
+        return "UndoRecord{mainBlock=" + mainBlock.toHexString() + ", blocks=" + blocks.size()
+                + ", addresses=" + addresses.size() + "}";
+    }
+}
@@ -26,12 +26,18 @@ package io.xdag.core;
 
 import static io.xdag.core.XdagField.FieldType.fromByte;
 
+import io.xdag.crypto.Hash;
 import java.nio.ByteOrder;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
-import org.apache.tuweni.bytes.MutableBytes32;
-
-import lombok.Getter;
 
+/**
+ * The 512 bytes of a block.
+ *
+ * <p>A block read from the network or the store keeps its single buffer: fields are views into it,
+ * created on first access, and the sum and hash are computed once. The buffer is not modified after
+ * construction, so one instance can be parsed by several {@link Block}s on different threads.
+ */
 public class XdagBlock {
 
     public static final int XDAG_BLOCK_FIELDS = 16;
@@ -41,13 +47,10 @@ public class XdagBlock {
      * Block data with signature
      */
     private MutableBytes data;
-    /**
-     * -- GETTER --
-     * Get block sums
-     */
-    @Getter
-    private long sum;
-    private XdagField[] fields;
+    private volatile long sum;
+    private volatile boolean summed;
+    private volatile XdagField[] fields;
+    private volatile Bytes32 hash;
 
     public XdagBlock() {
         fields = new XdagField[XDAG_BLOCK_FIELDS];
@@ -63,19 +66,6 @@ public class XdagBlock {
 
     public XdagBlock(MutableBytes data) {
         this.data = data;
-        if (data != null && data.size() == 512) {
-            fields = new XdagField[XDAG_BLOCK_FIELDS];
-            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
-                MutableBytes32 fieldBytes = MutableBytes32.create();
-                fieldBytes.set(0, data.slice(i * 32, 32));
-                fields[i] = new XdagField(fieldBytes);
-                fields[i].setType(fromByte(getMsgCode(i)));
-            }
-            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
-                sum += fields[i].getSum();
-                fields[i].setType(fromByte(getMsgCode(i)));
-            }
-        }
     }
 
     public byte getMsgCode(int n) {
@@ -84,11 +74,20 @@ public class XdagBlock {
     }
 
     public XdagField[] getFields() {
-        if (this.fields == null) {
+        XdagField[] result = this.fields;
+        if (result == null && data != null && data.size() == XDAG_BLOCK_SIZE) {
+            result = new XdagField[XDAG_BLOCK_FIELDS];
+            long type = data.getLong(8, ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
+                result[i] = new XdagField(data.mutableSlice(i * 32, 32));
+                result[i].setType(fromByte((byte) (type >> (i << 2) & 0xf)));
+            }
+            this.fields = result;
+        }
+        if (result == null) {
             throw new Error("no fields");
-        } else {
-            return this.fields;
         }
+        return result;
     }
 
     public XdagField getField(int number) {
@@ -96,14 +95,51 @@ public class XdagBlock {
         return fields[number];
     }
 
+    /**
+     * Get block sums
+     */
+    public long getSum() {
+        if (!summed) {
+            if (data == null) {
+                // sums the fields while building the buffer
+                getData();
+            } else {
+                long total = 0;
+                if (data.size() == XDAG_BLOCK_SIZE) {
+                    for (int i = 0; i < XDAG_BLOCK_SIZE / 8; i++) {
+                        total += data.getLong(i * 8, ByteOrder.LITTLE_ENDIAN);
+                    }
+                }
+                sum = total;
+                summed = true;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Double SHA-256 of the data, not reversed
+     */
+    public Bytes32 getHash() {
+        Bytes32 result = hash;
+        if (result == null) {
+            result = Hash.hashTwice(getData());
+            hash = result;
+        }
+        return result;
+    }
+
     public MutableBytes getData() {
         if (this.data == null) {
-            this.data = MutableBytes.create(512);
+            MutableBytes bytes = MutableBytes.create(XDAG_BLOCK_SIZE);
+            long total = 0;
             for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
-                sum += fields[i].getSum();
-                int index = i * 32;
-                this.data.set(index, fields[i].getData().reverse());
+                total += fields[i].getSum();
+                bytes.set(i * 32, fields[i].getData().reverse());
             }
+            sum = total;
+            summed = true;
+            this.data = bytes;
         }
         return data;
     }
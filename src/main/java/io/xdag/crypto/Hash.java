@@ -24,6 +24,7 @@
 
 package io.xdag.crypto;
 
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import org.apache.tuweni.bytes.Bytes;
@@ -34,9 +35,14 @@ import org.bouncycastle.crypto.params.KeyParameter;
 
 /**
  * Cryptographic hash functions.
+ *
+ * <p>SHA-256 goes through one JCA digest per thread, which lets the JDK use its SHA intrinsics and
+ * avoids a provider lookup per hash.
  */
 public class Hash {
 
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(Hash::newDigest);
+
     /**
      * Get a new SHA-256 MessageDigest.
      *
@@ -57,7 +63,9 @@ public class Hash {
      * @return the SHA-256 hash of the given input
      */
     public static Bytes32 sha256(Bytes input) {
-        return org.hyperledger.besu.crypto.Hash.sha256(input);
+        MessageDigest digest = localDigest();
+        input.update(digest);
+        return Bytes32.wrap(digest.digest());
     }
 
     /**
@@ -67,7 +75,27 @@ public class Hash {
      * @return the double SHA-256 hash of the given input
      */
     public static Bytes32 hashTwice(Bytes input) {
-        return sha256(sha256(input));
+        MessageDigest digest = localDigest();
+        input.update(digest);
+        return Bytes32.wrap(finishTwice(digest));
+    }
+
+    /**
+     * Complete a double SHA-256 whose input was written to digest, which is left reset.
+     *
+     * @param digest a SHA-256 digest holding the input
+     * @return the double SHA-256 hash
+     */
+    public static byte[] finishTwice(MessageDigest digest) {
+        byte[] hash = new byte[32];
+        try {
+            digest.digest(hash, 0, 32);
+            digest.update(hash);
+            digest.digest(hash, 0, 32);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);  // Can't happen, the buffer fits.
+        }
+        return hash;
     }
 
     /**
@@ -77,9 +105,21 @@ public class Hash {
      * @return the double SHA-256 hash of the given input
      */
     public static byte[] hashTwice(byte[] input) {
-        MessageDigest digest = newDigest();
+        MessageDigest digest = localDigest();
         digest.update(input);
-        return digest.digest(digest.digest());
+        return finishTwice(digest);
+    }
+
+    /**
+     * The SHA-256 digest of the calling thread, reset. It must not escape the thread or be held
+     * across calls to other methods of this class.
+     *
+     * @return the reset digest of this thread
+     */
+    public static MessageDigest localDigest() {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        return digest;
     }
 
     /**
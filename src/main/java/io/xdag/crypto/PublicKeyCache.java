@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.crypto;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.tuweni.bytes.Bytes;
+import org.bouncycastle.math.ec.ECPoint;
+import org.hyperledger.besu.crypto.SECPPublicKey;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Bounded cache between compressed public keys and decoded {@link SECPPublicKey}s.
+ * <p>
+ * Decompressing a key costs a modular square root and encoding one costs a point
+ * normalization. Pool and exchange keys show up in a large share of all blocks, so
+ * both directions are cached.
+ */
+public final class PublicKeyCache {
+
+    public static final int CACHE_SIZE = 1 << 16;
+
+    private static final Cache<Bytes, SECPPublicKey> decoded = Caffeine.newBuilder().maximumSize(CACHE_SIZE).build();
+    private static final Cache<SECPPublicKey, Bytes> encoded = Caffeine.newBuilder().maximumSize(CACHE_SIZE).build();
+
+    private PublicKeyCache() {
+    }
+
+    /**
+     * Decode a 33-byte compressed public key (prefix 0x02 or 0x03 followed by x)
+     */
+    public static SECPPublicKey decompress(Bytes compressed) {
+        SECPPublicKey publicKey = decoded.getIfPresent(compressed);
+        if (publicKey == null) {
+            Bytes key = compressed.copy();
+            boolean yBit = key.get(0) == 0x03;
+            publicKey = decode(key.slice(1).toUnsignedBigInteger(), yBit);
+            decoded.put(key, publicKey);
+            encoded.put(publicKey, key);
+        }
+        return publicKey;
+    }
+
+    /**
+     * Decode a public key stored as its x coordinate and the parity of y, as in a block field
+     */
+    public static SECPPublicKey decompress(Bytes x, boolean yBit) {
+        return decompress(Bytes.wrap(Bytes.of(yBit ? 0x03 : 0x02), x));
+    }
+
+    /**
+     * Compressed 33-byte encoding of a public key
+     */
+    public static Bytes compress(SECPPublicKey publicKey) {
+        Bytes key = encoded.getIfPresent(publicKey);
+        if (key == null) {
+            key = Bytes.wrap(publicKey.asEcPoint(Sign.CURVE).getEncoded(true));
+            encoded.put(publicKey, key);
+        }
+        return key;
+    }
+
+    private static SECPPublicKey decode(BigInteger x, boolean yBit) {
+        ECPoint point = Sign.decompressKey(x, yBit);
+        // Uncompressed public key without prefix
+        byte[] encodePub = point.getEncoded(false);
+        return SECPPublicKey.create(new BigInteger(1, Arrays.copyOfRange(encodePub, 1, encodePub.length)), Sign.CURVE_NAME);
+    }
+
+    static void invalidateAll() {
+        decoded.invalidateAll();
+        encoded.invalidateAll();
+    }
+
+    static long size() {
+        return decoded.estimatedSize();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.crypto;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.SECPPublicKey;
+import org.hyperledger.besu.crypto.SECPSignature;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Block signature verification service.
+ * <p>
+ * A block signature is checked by double hashing the signed part of the block followed by
+ * the compressed public key and verifying the result with secp256k1. Results are cached by
+ * (block hash, compressed key, signature field index) so a block received from several
+ * peers, replayed after NO_PARENT or rebuilt before import is only verified once. Batches
+ * with enough cache misses are spread over a dedicated pool.
+ */
+@Slf4j
+public class SignatureVerifier {
+
+    public static final int CACHE_SIZE = 1 << 17;
+    // Batches with fewer misses are verified on the calling thread
+    public static final int PARALLEL_THRESHOLD = 4;
+
+    private static final SignatureVerifier INSTANCE = new SignatureVerifier(
+            Runtime.getRuntime().availableProcessors(), CACHE_SIZE);
+
+    private final Cache<CacheKey, Boolean> results;
+    private final ExecutorService executor;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SignatureVerifier(int threads, long cacheSize) {
+        this.results = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new BasicThreadFactory.Builder()
+                .namingPattern("SignatureVerifier-thread-%d")
+                .daemon(true)
+                .build());
+    }
+
+    public static SignatureVerifier getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Compressed encoding of a public key, as it is appended to the signed data
+     */
+    public static Bytes encode(SECPPublicKey publicKey) {
+        return PublicKeyCache.compress(publicKey);
+    }
+
+    /**
+     * Verify a single signature, see {@link #verify(List)}
+     */
+    public boolean verify(Request request) {
+        CacheKey key = request.cacheKey();
+        if (key != null) {
+            Boolean cached = results.getIfPresent(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        boolean ok = request.check();
+        if (key != null) {
+            results.put(key, ok);
+        }
+        return ok;
+    }
+
+    /**
+     * Verify a batch of signatures.
+     *
+     * @return one result per request, in request order
+     */
+    public boolean[] verify(List<Request> requests) {
+        boolean[] res = new boolean[requests.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            CacheKey key = requests.get(i).cacheKey();
+            Boolean cached = key == null ? null : results.getIfPresent(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                res[i] = cached;
+            } else {
+                pending.add(i);
+            }
+        }
+        if (pending.size() < PARALLEL_THRESHOLD) {
+            for (int i : pending) {
+                res[i] = verify(requests.get(i));
+            }
+            return res;
+        }
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(pending.size());
+        for (int i : pending) {
+            Request request = requests.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> verify(request), executor));
+        }
+        try {
+            for (int j = 0; j < pending.size(); j++) {
+                res[pending.get(j)] = futures.get(j).join();
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+        return res;
+    }
+
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    public void invalidateAll() {
+        results.invalidateAll();
+    }
+
+    /**
+     * One signature check.
+     *
+     * @param blockHash  hash of the block carrying the signature, null disables caching
+     * @param sigIndex   field index of the signature in that block
+     * @param data       signed part of the block
+     * @param signature  signature to check
+     * @param publicKey  candidate public key
+     * @param encodedKey compressed encoding of {@code publicKey}, see {@link #encode(SECPPublicKey)}
+     */
+    public record Request(Bytes32 blockHash, int sigIndex, Bytes data, SECPSignature signature,
+                          SECPPublicKey publicKey, Bytes encodedKey) {
+
+        CacheKey cacheKey() {
+            return blockHash == null ? null : new CacheKey(blockHash, encodedKey, sigIndex);
+        }
+
+        boolean check() {
+            Bytes32 hash = Hash.hashTwice(Bytes.wrap(data, encodedKey));
+            return Sign.SECP256K1.verify(hash, signature, publicKey);
+        }
+    }
+
+    private record CacheKey(Bytes32 blockHash, Bytes encodedKey, int sigIndex) {
+    }
+}
@@ -24,6 +24,9 @@
 package io.xdag.db;
 
 import io.xdag.core.XdagLifecycle;
+import java.util.List;
+import java.util.function.BiConsumer;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.units.bigints.UInt64;
 
 import io.xdag.core.XAmount;
@@ -70,5 +73,28 @@ public interface AddressStore extends XdagLifecycle {
 
     UInt64 getExecutedNonceNum(byte[] address);
 
+    /**
+     * Executed nonce of an address like {@link #getExecutedNonceNum(byte[])}, without storing zero for
+     * an address that has none. Safe to call from several threads while nothing writes.
+     */
+    UInt64 readExecutedNonceNum(byte[] address);
+
     void updateExcutedNonceNum(byte[] address,boolean addOrSubstract);
+
+    /**
+     * Keys changed by the open write set with their committed values, null if they did not exist.
+     * Empty if there is none. Transaction quantities are left out, submitted transactions raise them
+     * from other threads outside the write set.
+     */
+    List<Pair<byte[], byte[]>> getPendingChanges();
+
+    /**
+     * Write back values returned by {@link #getPendingChanges()}, deleting keys that did not exist.
+     */
+    void restore(List<Pair<byte[], byte[]>> values);
+
+    /**
+     * Every address with its balance
+     */
+    void fetchBalances(BiConsumer<byte[], XAmount> consumer);
 }
@@ -31,6 +31,8 @@ import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public interface BlockStore extends XdagLifecycle {
@@ -45,6 +47,12 @@ public interface BlockStore extends XdagLifecycle {
     byte BLOCK_HEIGHT = (byte) 0x80;
     byte SNAPSHOT_PRESEED = (byte) 0x90;
     byte TX_HISTORY = (byte) 0xa0;
+    byte UNDO_RECORD = (byte) 0xb0;
+    byte MINED_BLOCK = (byte) 0xc0;
+    byte SETTING_MINED_FLOOR = (byte) 0xc1;
+    byte SETTING_STATUS_OPEN = (byte) 0xc2;
+    byte SETTING_WRITE_SET_JOURNAL = (byte) 0xc3;
+    byte STATE_HASH = (byte) 0xd0;
     String SUM_FILE_NAME = "sums.dat";
 
     void reset();
@@ -53,12 +61,37 @@ public interface BlockStore extends XdagLifecycle {
 
     void saveXdagTopStatus(XdagTopStatus status);
 
+    /**
+     * Set while the node runs and cleared once its stats are flushed on stop, still set at start
+     * when the last run crashed
+     */
+    boolean isStatusOpen();
+
+    void setStatusOpen(boolean open);
+
+    /**
+     * Every saved block info, in key order
+     */
+    void fetchBlockInfos(Consumer<BlockInfo> consumer);
+
+    /**
+     * Hashlow and amount of every saved block info
+     */
+    void fetchBlockAmounts(BiConsumer<Bytes32, XAmount> consumer);
+
     XdagTopStatus getXdagTopStatus();
 
     void saveBlock(Block block);
 
+    /**
+     * Batch form of {@link #saveBlock(Block)}, raw blocks and time index entries are written as one batch each.
+     */
+    void saveBlocks(List<Block> blocks);
+
     void saveBlockInfo(BlockInfo blockInfo);
 
+    void removeBlockHeight(long height);
+
     void saveOurBlock(int index, byte[] hashlow);
 
     void saveTxHistoryToRocksdb(TxHistory txHistory,int id);
@@ -83,6 +116,18 @@ public interface BlockStore extends XdagLifecycle {
 
     Block getRawBlockByHash(Bytes32 hashlow);
 
+    /**
+     * Batch form of {@link #getBlockInfoByHash(Bytes32)}, one entry per hashlow, null if not found.
+     */
+    List<Block> getBlockInfosByHash(List<Bytes32> hashlows);
+
+    /**
+     * Reads the raw data of info-only blocks in one batch and parses it into the same instances.
+     *
+     * @return the blocks whose raw data was found
+     */
+    List<Block> loadRawBlocks(List<Block> blocks);
+
     Bytes getOurBlock(int index);
 
     int getKeyIndexByHash(Bytes32 hashlow);
@@ -91,6 +136,49 @@ public interface BlockStore extends XdagLifecycle {
 
     void fetchOurBlocks(Function<Pair<Integer, Block>, Boolean> function);
 
+    /**
+     * Block infos changed by the open write set, as pairs of the committed and the pending info.
+     * Empty if there is none.
+     */
+    List<Pair<BlockInfo, BlockInfo>> getPendingBlockInfos();
+
+    void saveUndoRecord(long height, byte[] record);
+
+    byte[] getUndoRecord(long height);
+
+    void removeUndoRecord(long height);
+
+    /**
+     * Index one of our main blocks under its height
+     */
+    void saveMinedBlock(MinedBlock minedBlock);
+
+    MinedBlock getMinedBlock(long height);
+
+    void removeMinedBlock(long height);
+
+    /**
+     * Up to count of our indexed main blocks, the highest first
+     */
+    List<MinedBlock> getMinedBlocks(int count);
+
+    /**
+     * Lowest height the mined block index covers, -1 if the index was never started. Main blocks
+     * below it were made before the index existed.
+     */
+    long getMinedFloor();
+
+    void saveMinedFloor(long height);
+
+    /**
+     * State hash of all balances after the main block at the height
+     */
+    void saveStateHash(long height, Bytes32 stateHash);
+
+    Bytes32 getStateHash(long height);
+
+    void removeStateHash(long height);
+
     // Snapshot Boot
     boolean isSnapshotBoot();
 
@@ -26,7 +26,14 @@ package io.xdag.db.rocksdb;
 import io.xdag.core.XAmount;
 import io.xdag.db.AddressStore;
 import io.xdag.utils.BytesUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.units.bigints.UInt64;
 
@@ -178,6 +185,12 @@ public class AddressStoreImpl implements AddressStore {
         }
     }
 
+    @Override
+    public UInt64 readExecutedNonceNum(byte[] address) {
+        byte[] processedTxNonce = addressSource.get(BytesUtils.merge(EXECUTED_NONCE_NUM, address));
+        return processedTxNonce == null ? UInt64.ZERO : UInt64.fromBytes(Bytes.wrap(processedTxNonce));
+    }
+
     @Override
     public void updateExcutedNonceNum(byte[] address, boolean addOrSubstract) {
         byte[] key = BytesUtils.merge(EXECUTED_NONCE_NUM, address);
@@ -194,4 +207,34 @@ public class AddressStoreImpl implements AddressStore {
         }
         addressSource.put(key,now.toBytes().toArray());
     }
+
+    public List<Pair<byte[], byte[]>> getPendingChanges() {
+        List<Pair<byte[], byte[]>> res = new ArrayList<>();
+        if (addressSource instanceof WriteSetKVSource source && source.getWriteSet().isActive()) {
+            for (byte[] key : source.getChanges().keySet()) {
+                if (key[0] != CURRENT_TRANSACTION_QUANTITY) {
+                    res.add(Pair.of(key.clone(), source.getSource().get(key)));
+                }
+            }
+        }
+        return res;
+    }
+
+    public void restore(List<Pair<byte[], byte[]>> values) {
+        Map<byte[], byte[]> updates = new HashMap<>();
+        for (Pair<byte[], byte[]> value : values) {
+            updates.put(value.getKey(), value.getValue());
+        }
+        addressSource.writeBatch(updates);
+    }
+
+    public void fetchBalances(BiConsumer<byte[], XAmount> consumer) {
+        addressSource.fetchPrefix(new byte[]{ADDRESS}, pair -> {
+            if (pair.getKey().length == ADDRESS_SIZE + 1) {
+                consumer.accept(Arrays.copyOfRange(pair.getKey(), 1, ADDRESS_SIZE + 1),
+                        XAmount.ofXAmount(UInt64.fromBytes(Bytes.wrap(pair.getValue())).toLong()));
+            }
+            return Boolean.FALSE;
+        });
+    }
 }
@@ -26,6 +26,8 @@ package io.xdag.db.rocksdb;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
@@ -51,21 +53,33 @@ import org.objenesis.strategy.StdInstantiatorStrategy;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
+import static io.xdag.config.Constants.BI_MAIN;
 import static io.xdag.utils.BytesUtils.equalBytes;
 
 @Slf4j
 public class BlockStoreImpl implements BlockStore {
 
     private final Kryo kryo;
+    /**
+     * Reused over {@link KeyBuilder} buffers, guarded by the kryo lock like the kryo instance.
+     */
+    private final ByteBufferInput bufferInput = new ByteBufferInput();
+    private final ByteBufferOutput bufferOutput = new ByteBufferOutput();
 
     /**
      * <prefix-hash,value> eg:<diff-hash,blockDiff>
@@ -80,16 +94,30 @@ public class BlockStoreImpl implements BlockStore {
      */
     private final KVSource<byte[], byte[]> blockSource;
     private final KVSource<byte[], byte[]> txHistorySource;
+    /**
+     * <height,hashlow> of main blocks, optional
+     */
+    private final HeightKVSource heightSource;
 
     public BlockStoreImpl(
             KVSource<byte[], byte[]> index,
             KVSource<byte[], byte[]> time,
             KVSource<byte[], byte[]> block,
             KVSource<byte[], byte[]> txHistory) {
+        this(index, time, block, txHistory, null);
+    }
+
+    public BlockStoreImpl(
+            KVSource<byte[], byte[]> index,
+            KVSource<byte[], byte[]> time,
+            KVSource<byte[], byte[]> block,
+            KVSource<byte[], byte[]> txHistory,
+            HeightKVSource height) {
         this.indexSource = index;
         this.timeSource = time;
         this.blockSource = block;
         this.txHistorySource = txHistory;
+        this.heightSource = height;
         this.kryo = new Kryo();
         kryoRegister();
     }
@@ -122,6 +150,34 @@ public class BlockStoreImpl implements BlockStore {
         }
     }
 
+    /**
+     * Serializes into the remaining space of {@code buffer} and flips it, returns false if it does not fit.
+     */
+    private boolean serialize(final Object obj, ByteBuffer buffer) {
+        synchronized (kryo) {
+            try {
+                bufferOutput.setBuffer(buffer, buffer.remaining());
+                kryo.writeObject(bufferOutput, obj);
+                bufferOutput.flush();
+                buffer.limit(bufferOutput.position()).position(0);
+                return true;
+            } catch (final IllegalArgumentException | KryoException exception) {
+                return false;
+            }
+        }
+    }
+
+    private Object deserialize(ByteBuffer buffer, Class<?> type) throws DeserializationException {
+        synchronized (kryo) {
+            try {
+                bufferInput.setBuffer(buffer);
+                return kryo.readObject(bufferInput, type);
+            } catch (final IllegalArgumentException | KryoException | NullPointerException exception) {
+                throw new DeserializationException(exception.getMessage(), exception);
+            }
+        }
+    }
+
     private Object deserialize(final byte[] bytes, Class<?> type) throws DeserializationException {
         synchronized (kryo) {
             try {
@@ -140,6 +196,19 @@ public class BlockStoreImpl implements BlockStore {
         timeSource.init();
         blockSource.init();
         txHistorySource.init();
+        if (heightSource != null) {
+            heightSource.init();
+            if (heightSource.getMaxHeight() == 0) {
+                // first start with the height index, fill it from the height keys of index source
+                indexSource.fetchPrefix(new byte[]{BLOCK_HEIGHT}, pair -> {
+                    long height = BytesUtils.bytesToLong(pair.getKey(), 1, false);
+                    if (height > 0 && pair.getValue().length == 32) {
+                        heightSource.put(height, pair.getValue());
+                    }
+                    return Boolean.FALSE;
+                });
+            }
+        }
     }
 
     @Override
@@ -148,6 +217,9 @@ public class BlockStoreImpl implements BlockStore {
         timeSource.close();
         blockSource.close();
         txHistorySource.close();
+        if (heightSource != null) {
+            heightSource.close();
+        }
     }
 
     @Override
@@ -160,6 +232,9 @@ public class BlockStoreImpl implements BlockStore {
         timeSource.reset();
         blockSource.reset();
         txHistorySource.reset();
+        if (heightSource != null) {
+            heightSource.reset();
+        }
     }
 
     public void saveXdagStatus(XdagStats status) {
@@ -257,6 +332,42 @@ public class BlockStoreImpl implements BlockStore {
         indexSource.put(new byte[]{SETTING_TOP_STATUS}, value);
     }
 
+    public boolean isStatusOpen() {
+        return indexSource.get(new byte[]{SETTING_STATUS_OPEN}) != null;
+    }
+
+    public void setStatusOpen(boolean open) {
+        if (open) {
+            indexSource.put(new byte[]{SETTING_STATUS_OPEN}, new byte[]{1});
+        } else {
+            indexSource.delete(new byte[]{SETTING_STATUS_OPEN});
+        }
+    }
+
+    public void fetchBlockInfos(Consumer<BlockInfo> consumer) {
+        indexSource.fetchPrefix(new byte[]{HASH_BLOCK_INFO}, pair -> {
+            if (pair.getKey().length == 33) {
+                BlockInfo info = toBlockInfo(pair.getValue());
+                if (info != null) {
+                    consumer.accept(info);
+                }
+            }
+            return Boolean.FALSE;
+        });
+    }
+
+    public void fetchBlockAmounts(BiConsumer<Bytes32, XAmount> consumer) {
+        indexSource.fetchPrefix(new byte[]{HASH_BLOCK_INFO}, pair -> {
+            if (pair.getKey().length == 33) {
+                BlockInfo info = toBlockInfo(pair.getValue());
+                if (info != null) {
+                    consumer.accept(Bytes32.wrap(pair.getKey(), 1), info.getAmount());
+                }
+            }
+            return Boolean.FALSE;
+        });
+    }
+
     // pretop状态
     public XdagTopStatus getXdagTopStatus() {
         XdagTopStatus status = null;
@@ -276,12 +387,29 @@ public class BlockStoreImpl implements BlockStore {
     public void saveBlock(Block block) {
         long time = block.getTimestamp();
         // Fix: time中只拿key的后缀（hashlow）就够了，值可以不存
-        timeSource.put(BlockUtils.getTimeKey(time, block.getHashLow()), new byte[]{0});
-        blockSource.put(block.getHashLow().toArray(), block.getXdagBlock().getData().toArray());
+        KeyBuilder keys = KeyBuilder.local();
+        timeSource.put(keys.time(time, block.getHashLow()), keys.value(Bytes.of(0)));
+        blockSource.put(keys.hashlow(block.getHashLow()), keys.value(block.getXdagBlock().getData()));
         saveBlockSums(block);
         saveBlockInfo(block.getInfo());
     }
 
+    @Override
+    public void saveBlocks(List<Block> blocks) {
+        Map<byte[], byte[]> times = new LinkedHashMap<>();
+        Map<byte[], byte[]> raws = new LinkedHashMap<>();
+        for (Block block : blocks) {
+            times.put(BlockUtils.getTimeKey(block.getTimestamp(), block.getHashLow()), new byte[]{0});
+            raws.put(block.getHashLow().toArray(), block.getXdagBlock().getData().toArray());
+        }
+        timeSource.writeBatch(times);
+        blockSource.writeBatch(raws);
+        for (Block block : blocks) {
+            saveBlockSums(block);
+            saveBlockInfo(block.getInfo());
+        }
+    }
+
     public void saveOurBlock(int index, byte[] hashlow) {
         indexSource.put(BlockUtils.getOurKey(index, hashlow), new byte[]{0});
     }
@@ -465,32 +593,79 @@ public class BlockStoreImpl implements BlockStore {
     }
 
     public void saveBlockInfo(BlockInfo blockInfo) {
-        byte[] value = null;
-        try {
-            value = serialize(blockInfo);
-        } catch (SerializationException e) {
-            log.error(e.getMessage(), e);
+        KeyBuilder keys = KeyBuilder.local();
+        ByteBuffer buffer = keys.value();
+        if (serialize(blockInfo, buffer)) {
+            indexSource.put(keys.prefixed(HASH_BLOCK_INFO, Bytes32.wrap(blockInfo.getHashlow())), buffer);
+        } else {
+            byte[] value = null;
+            try {
+                value = serialize(blockInfo);
+            } catch (SerializationException e) {
+                log.error(e.getMessage(), e);
+            }
+            indexSource.put(BytesUtils.merge(HASH_BLOCK_INFO, blockInfo.getHashlow()), value);
+        }
+        // 如果区块是主块的话顺便保存对应的高度信息, 回滚时由 removeBlockHeight 删除
+        if (blockInfo.getHeight() > 0 && (blockInfo.getFlags() & BI_MAIN) != 0) {
+            indexSource.put(BlockUtils.getHeight(blockInfo.getHeight()), blockInfo.getHashlow());
+            if (heightSource != null) {
+                long height = blockInfo.getHeight();
+                byte[] hashlow = blockInfo.getHashlow();
+                updateHeightIndex(() -> heightSource.put(height, hashlow));
+            }
+        }
+    }
+
+    public void removeBlockHeight(long height) {
+        indexSource.delete(BlockUtils.getHeight(height));
+        if (heightSource != null) {
+            updateHeightIndex(() -> heightSource.delete(height));
+        }
+    }
+
+    /**
+     * The mapped height index is outside the write set, its updates wait for the index to commit
+     */
+    private void updateHeightIndex(Runnable action) {
+        if (indexSource instanceof WriteSetKVSource writeSetSource) {
+            writeSetSource.getWriteSet().afterCommit(action);
+        } else {
+            action.run();
         }
-        indexSource.put(BytesUtils.merge(HASH_BLOCK_INFO, blockInfo.getHashlow()), value);
-        // 如果区块是主块的话顺便保存对应的高度信息
-        // TODO: paulochen 如果回滚了，对应高度的键值对该怎么更新(直接让其height=0的区块覆盖)
-//        if (blockInfo.getHeight() > 0) {
-        indexSource.put(BlockUtils.getHeight(blockInfo.getHeight()), blockInfo.getHashlow());
-//        } else {
-//            indexSource.get()
-//        }
+    }
+
+    private boolean isWriteSetActive() {
+        return indexSource instanceof WriteSetKVSource writeSetSource && writeSetSource.getWriteSet().isActive();
     }
 
     public boolean hasBlock(Bytes32 hashlow) {
-        return blockSource.get(hashlow.toArray()) != null;
+        KeyBuilder keys = KeyBuilder.local();
+        // empty value buffer, only the existence is wanted
+        return blockSource.get(keys.hashlow(hashlow), keys.value().limit(0)) != KVSource.NOT_FOUND;
     }
 
     public boolean hasBlockInfo(Bytes32 hashlow) {
-        return indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray())) != null;
+        KeyBuilder keys = KeyBuilder.local();
+        return indexSource.get(keys.prefixed(HASH_BLOCK_INFO, hashlow), keys.value().limit(0)) != KVSource.NOT_FOUND;
     }
 
     public List<Block> getBlocksUsedTime(long startTime, long endTime) {
         List<Block> res = Lists.newArrayList();
+        if (blockSource instanceof SegmentKVSource segmentSource) {
+            // segment files are laid out by time, scan them instead of the time index
+            segmentSource.fetchRange(startTime, endTime, pair -> {
+                Block block = getBlockInfoByHash(Bytes32.wrap(pair.getKey()));
+                if (block != null) {
+                    block.setXdagBlock(new XdagBlock(pair.getValue()));
+                    block.setParsed(false);
+                    block.parse();
+                    res.add(block);
+                }
+                return Boolean.FALSE;
+            });
+            return res;
+        }
         long time = startTime;
         while (time < endTime) {
             List<Block> blocks = getBlocksByTime(time);
@@ -520,7 +695,9 @@ public class BlockStoreImpl implements BlockStore {
 
     // ADD: 通过高度获取区块
     public Block getBlockByHeight(long height) {
-        byte[] hashlow = indexSource.get(BlockUtils.getHeight(height));
+        // while a write set is open the index holds the newer heights
+        byte[] hashlow = heightSource != null && !isWriteSetActive() ? heightSource.get(height)
+                : indexSource.get(BlockUtils.getHeight(height));
         if (hashlow == null) {
             return null;
         }
@@ -541,21 +718,35 @@ public class BlockStoreImpl implements BlockStore {
         }
 //        log.debug("Data:{}",Hex.toHexString(blockSource.get(hashlow)));
         // 没有源数据
-        if (blockSource.get(hashlow.toArray()) == null) {
+        byte[] raw = blockSource.get(hashlow.toArray());
+        if (raw == null) {
 //            log.error("No block origin data");
             return null;
         }
-        block.setXdagBlock(new XdagBlock(blockSource.get(hashlow.toArray())));
+        block.setXdagBlock(new XdagBlock(raw));
         block.setParsed(false);
         block.parse();
         return block;
     }
 
     public Block getBlockInfoByHash(Bytes32 hashlow) {
-        if (!hasBlockInfo(hashlow)) {
+        KeyBuilder keys = KeyBuilder.local();
+        ByteBuffer buffer = keys.value();
+        int size = indexSource.get(keys.prefixed(HASH_BLOCK_INFO, hashlow), buffer);
+        if (size == KVSource.NOT_FOUND) {
             return null;
         }
         BlockInfo blockInfo = null;
+        if (size <= buffer.capacity()) {
+            try {
+                blockInfo = (BlockInfo) deserialize(buffer, BlockInfo.class);
+            } catch (DeserializationException e) {
+                log.error("hash low:{}", hashlow.toHexString());
+                log.error(e.getMessage(), e);
+            }
+            return new Block(blockInfo);
+        }
+        // larger than the reusable buffer, e.g. with snapshot data
         byte[] value = indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray()));
         if (value == null) {
             return null;
@@ -571,6 +762,138 @@ public class BlockStoreImpl implements BlockStore {
         return new Block(blockInfo);
     }
 
+    public List<Block> getBlockInfosByHash(List<Bytes32> hashlows) {
+        List<byte[]> keys = new ArrayList<>(hashlows.size());
+        for (Bytes32 hashlow : hashlows) {
+            keys.add(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray()));
+        }
+        List<byte[]> values = indexSource.multiGet(keys);
+        List<Block> res = new ArrayList<>(hashlows.size());
+        for (int i = 0; i < values.size(); i++) {
+            byte[] value = values.get(i);
+            if (value == null) {
+                res.add(null);
+                continue;
+            }
+            BlockInfo blockInfo = null;
+            try {
+                blockInfo = (BlockInfo) deserialize(value, BlockInfo.class);
+            } catch (DeserializationException e) {
+                log.error("hash low:{}", hashlows.get(i).toHexString());
+                log.error(e.getMessage(), e);
+            }
+            res.add(new Block(blockInfo));
+        }
+        return res;
+    }
+
+    public List<Block> loadRawBlocks(List<Block> blocks) {
+        List<byte[]> keys = new ArrayList<>(blocks.size());
+        for (Block block : blocks) {
+            keys.add(block.getHashLow().toArray());
+        }
+        List<byte[]> raws = blockSource.multiGet(keys);
+        List<Block> res = new ArrayList<>(blocks.size());
+        for (int i = 0; i < raws.size(); i++) {
+            byte[] raw = raws.get(i);
+            if (raw == null) {
+                continue;
+            }
+            Block block = blocks.get(i);
+            block.setXdagBlock(new XdagBlock(raw));
+            block.setParsed(false);
+            block.parse();
+            res.add(block);
+        }
+        return res;
+    }
+
+    public List<Pair<BlockInfo, BlockInfo>> getPendingBlockInfos() {
+        List<Pair<BlockInfo, BlockInfo>> res = new ArrayList<>();
+        if (!(indexSource instanceof WriteSetKVSource source) || !source.getWriteSet().isActive()) {
+            return res;
+        }
+        for (Map.Entry<byte[], byte[]> entry : source.getChanges().entrySet()) {
+            if (entry.getKey().length != 33 || entry.getKey()[0] != HASH_BLOCK_INFO) {
+                continue;
+            }
+            res.add(Pair.of(toBlockInfo(source.getSource().get(entry.getKey())), toBlockInfo(entry.getValue())));
+        }
+        return res;
+    }
+
+    private BlockInfo toBlockInfo(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return (BlockInfo) deserialize(value, BlockInfo.class);
+        } catch (DeserializationException e) {
+            log.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    public void saveUndoRecord(long height, byte[] record) {
+        indexSource.put(BytesUtils.merge(UNDO_RECORD, BytesUtils.longToBytes(height, false)), record);
+    }
+
+    public byte[] getUndoRecord(long height) {
+        return indexSource.get(BytesUtils.merge(UNDO_RECORD, BytesUtils.longToBytes(height, false)));
+    }
+
+    public void removeUndoRecord(long height) {
+        indexSource.delete(BytesUtils.merge(UNDO_RECORD, BytesUtils.longToBytes(height, false)));
+    }
+
+    public void saveMinedBlock(MinedBlock minedBlock) {
+        indexSource.put(BlockUtils.getMinedKey(minedBlock.getHeight()), minedBlock.toBytes());
+    }
+
+    public MinedBlock getMinedBlock(long height) {
+        byte[] value = indexSource.get(BlockUtils.getMinedKey(height));
+        return value == null ? null : MinedBlock.fromBytes(height, value);
+    }
+
+    public void removeMinedBlock(long height) {
+        indexSource.delete(BlockUtils.getMinedKey(height));
+    }
+
+    public List<MinedBlock> getMinedBlocks(int count) {
+        List<MinedBlock> res = new ArrayList<>();
+        if (count <= 0) {
+            return res;
+        }
+        indexSource.fetchPrefixReverse(new byte[]{MINED_BLOCK}, pair -> {
+            long height = BytesUtils.bytesToLong(pair.getKey(), 1, false);
+            res.add(MinedBlock.fromBytes(height, pair.getValue()));
+            return res.size() >= count;
+        });
+        return res;
+    }
+
+    public long getMinedFloor() {
+        byte[] value = indexSource.get(new byte[]{SETTING_MINED_FLOOR});
+        return value == null ? -1 : BytesUtils.bytesToLong(value, 0, false);
+    }
+
+    public void saveMinedFloor(long height) {
+        indexSource.put(new byte[]{SETTING_MINED_FLOOR}, BytesUtils.longToBytes(height, false));
+    }
+
+    public void saveStateHash(long height, Bytes32 stateHash) {
+        indexSource.put(BytesUtils.merge(STATE_HASH, BytesUtils.longToBytes(height, false)), stateHash.toArray());
+    }
+
+    public Bytes32 getStateHash(long height) {
+        byte[] value = indexSource.get(BytesUtils.merge(STATE_HASH, BytesUtils.longToBytes(height, false)));
+        return value == null ? null : Bytes32.wrap(value);
+    }
+
+    public void removeStateHash(long height) {
+        indexSource.delete(BytesUtils.merge(STATE_HASH, BytesUtils.longToBytes(height, false)));
+    }
+
     public boolean isSnapshotBoot() {
         byte[] data = indexSource.get(new byte[]{SNAPSHOT_BOOT});
         if (data == null) {
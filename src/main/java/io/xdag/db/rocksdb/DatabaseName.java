@@ -50,5 +50,15 @@ public enum DatabaseName {
 
     ADDRESS,
 
-    TXHISTORY
+    TXHISTORY,
+
+    /**
+     * Append-only segment files of block raw data.
+     */
+    SEGMENT,
+
+    /**
+     * Memory-mapped main block height index.
+     */
+    HEIGHT
 }
@@ -0,0 +1,351 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.google.common.collect.Lists;
+import io.xdag.config.Config;
+import io.xdag.utils.BytesUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Dense memory-mapped array of main block hashlows indexed by height.
+ *
+ * <p>Height {@code h} lives at offset {@code h * 32} of a single file, so a lookup is one read
+ * from a mapped buffer. An all-zero slot means the height is not set. Keys of the
+ * {@link KVSource} view are 8 bytes big endian heights, which keeps prefix scans in height order.
+ */
+@Slf4j
+@Setter
+@Getter
+public class HeightKVSource implements KVSource<byte[], byte[]> {
+
+    static final int HASHLOW_SIZE = 32;
+    static final int HEIGHTS_PER_CHUNK = 1 << 16;
+
+    private static final long CHUNK_SIZE = (long) HASHLOW_SIZE * HEIGHTS_PER_CHUNK;
+    private static final String FILE_NAME = "height.idx";
+    private static final byte[] EMPTY = new byte[HASHLOW_SIZE];
+
+    private final ReadWriteLock resetDbLock = new ReentrantReadWriteLock();
+    private final List<MappedByteBuffer> chunks = Lists.newArrayList();
+    private Config config;
+    private String name;
+    private FileChannel channel;
+    /**
+     * Highest height that is set, 0 if none.
+     */
+    private long maxHeight;
+    private boolean alive;
+
+    public HeightKVSource(String name) {
+        this.name = name;
+        log.debug("New HeightKVSource: {}", name);
+    }
+
+    @Override
+    public void init() {
+        resetDbLock.writeLock().lock();
+        try {
+            log.debug("~> HeightKVSource.init(): {}", name);
+            if (isAlive()) {
+                return;
+            }
+            if (name == null) {
+                throw new NullPointerException("no name set to the db");
+            }
+            Files.createDirectories(getPath());
+            channel = FileChannel.open(getPath().resolve(FILE_NAME), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long chunkCount = (channel.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            while (chunks.size() < chunkCount) {
+                map();
+            }
+            maxHeight = findMaxHeight((long) chunks.size() * HEIGHTS_PER_CHUNK - 1);
+            alive = true;
+            log.debug("<~ HeightKVSource.init(): {}, max height {}", name, maxHeight);
+        } catch (IOException e) {
+            log.error("Failed to initialize height index '{}'", name, e);
+            throw new RuntimeException("Failed to initialize database", e);
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the hashlow of the main block at {@code height}, or null if the height is not set.
+     */
+    public byte[] get(long height) {
+        resetDbLock.readLock().lock();
+        try {
+            if (height <= 0 || height > maxHeight) {
+                return null;
+            }
+            byte[] hashlow = new byte[HASHLOW_SIZE];
+            chunks.get(chunk(height)).get(offset(height), hashlow);
+            return BytesUtils.equalBytes(hashlow, EMPTY) ? null : hashlow;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    public void put(long height, byte[] hashlow) {
+        if (height <= 0) {
+            throw new IllegalArgumentException("height must be positive, got " + height);
+        }
+        if (hashlow == null || hashlow.length != HASHLOW_SIZE) {
+            throw new IllegalArgumentException("height index only accepts 32 bytes hashlow");
+        }
+        resetDbLock.writeLock().lock();
+        try {
+            while (chunk(height) >= chunks.size()) {
+                map();
+            }
+            chunks.get(chunk(height)).put(offset(height), hashlow);
+            maxHeight = Math.max(maxHeight, height);
+        } catch (IOException e) {
+            log.error("Failed to put height {} into '{}'", height, name, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    public void delete(long height) {
+        resetDbLock.writeLock().lock();
+        try {
+            if (height <= 0 || height > maxHeight) {
+                return;
+            }
+            chunks.get(chunk(height)).put(offset(height), EMPTY);
+            if (height == maxHeight) {
+                maxHeight = findMaxHeight(height - 1);
+            }
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(byte[] key, byte[] val) {
+        if (val == null) {
+            delete(key);
+            return;
+        }
+        put(height(key), val);
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return get(height(key));
+    }
+
+    @Override
+    public int get(ByteBuffer key, ByteBuffer value) {
+        if (key.remaining() != 8) {
+            throw new IllegalArgumentException("height index keys must be 8 bytes height");
+        }
+        long height = key.getLong(key.position());
+        key.position(key.limit());
+        byte[] hashlow = get(height);
+        if (hashlow == null) {
+            return NOT_FOUND;
+        }
+        int length = Math.min(HASHLOW_SIZE, value.remaining());
+        value.put(value.position(), hashlow, 0, length);
+        value.limit(value.position() + length);
+        return HASHLOW_SIZE;
+    }
+
+    @Override
+    public void put(ByteBuffer key, ByteBuffer value) {
+        if (key.remaining() != 8 || value.remaining() != HASHLOW_SIZE) {
+            throw new IllegalArgumentException("height index only accepts 8 bytes height and 32 bytes hashlow");
+        }
+        long height = key.getLong(key.position());
+        byte[] hashlow = new byte[HASHLOW_SIZE];
+        value.get(hashlow);
+        key.position(key.limit());
+        put(height, hashlow);
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        delete(height(key));
+    }
+
+    @Override
+    public Set<byte[]> keys() throws RuntimeException {
+        Set<byte[]> result = new HashSet<>();
+        fetchPrefix(new byte[0], pair -> {
+            result.add(pair.getKey());
+            return Boolean.FALSE;
+        });
+        return result;
+    }
+
+    @Override
+    public List<byte[]> prefixKeyLookup(byte[] key) {
+        List<byte[]> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair.getKey());
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public List<byte[]> prefixValueLookup(byte[] key) {
+        List<byte[]> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair.getValue());
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key) {
+        List<Pair<byte[], byte[]>> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair);
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    /**
+     * Visits the set heights in ascending order whose 8 bytes key starts with {@code key}.
+     */
+    @Override
+    public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        resetDbLock.readLock().lock();
+        try {
+            for (long height = 1; height <= maxHeight; height++) {
+                byte[] k = BytesUtils.longToBytes(height, false);
+                if (!BytesUtils.keyStartsWith(k, key)) {
+                    continue;
+                }
+                byte[] hashlow = new byte[HASHLOW_SIZE];
+                chunks.get(chunk(height)).get(offset(height), hashlow);
+                if (BytesUtils.equalBytes(hashlow, EMPTY)) {
+                    continue;
+                }
+                if (func.apply(Pair.of(k, hashlow))) {
+                    return;
+                }
+            }
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        resetDbLock.writeLock().lock();
+        try {
+            if (!isAlive()) {
+                return;
+            }
+            log.debug("Close height index: {}", name);
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+            chunks.clear();
+            channel.close();
+            channel = null;
+            maxHeight = 0;
+            alive = false;
+        } catch (IOException e) {
+            log.error("Error closing height index '{}'", name, e);
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        close();
+        try {
+            FileUtils.deleteDirectory(new File(getPath().toString()));
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        init();
+    }
+
+    private Path getPath() {
+        return Paths.get(config.getNodeSpec().getStoreDir(), name);
+    }
+
+    private long findMaxHeight(long from) {
+        byte[] hashlow = new byte[HASHLOW_SIZE];
+        for (long height = from; height > 0; height--) {
+            chunks.get(chunk(height)).get(offset(height), hashlow);
+            if (!BytesUtils.equalBytes(hashlow, EMPTY)) {
+                return height;
+            }
+        }
+        return 0;
+    }
+
+    private void map() throws IOException {
+        // mapping past the end of file extends it
+        chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * CHUNK_SIZE, CHUNK_SIZE));
+    }
+
+    private static int chunk(long height) {
+        return (int) (height / HEIGHTS_PER_CHUNK);
+    }
+
+    private static int offset(long height) {
+        return (int) (height % HEIGHTS_PER_CHUNK) * HASHLOW_SIZE;
+    }
+
+    private static long height(byte[] key) {
+        if (key == null || key.length != 8) {
+            throw new IllegalArgumentException("height index keys must be 8 bytes height");
+        }
+        return BytesUtils.bytesToLong(key, 0, false);
+    }
+}
@@ -24,13 +24,21 @@
 
 package io.xdag.db.rocksdb;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 import org.apache.commons.lang3.tuple.Pair;
 
 public interface KVSource<K, V> {
 
+    /**
+     * Returned by {@link #get(ByteBuffer, ByteBuffer)} when the key does not exist.
+     */
+    int NOT_FOUND = -1;
+
     String getName();
 
     void setName(String name);
@@ -55,8 +63,66 @@ public interface KVSource<K, V> {
 
     void fetchPrefix(byte[] key, Function<Pair<K, V>, Boolean> func);
 
+    /**
+     * Visits the keys starting with {@code key} from the last one backwards until {@code func}
+     * returns true.
+     */
+    default void fetchPrefixReverse(byte[] key, Function<Pair<K, V>, Boolean> func) {
+        List<Pair<K, V>> pairs = new ArrayList<>();
+        fetchPrefix(key, pair -> {
+            pairs.add(pair);
+            return Boolean.FALSE;
+        });
+        for (int i = pairs.size() - 1; i >= 0; i--) {
+            if (func.apply(pairs.get(i))) {
+                return;
+            }
+        }
+    }
+
     List<V> prefixValueLookup(byte[] key);
 
     List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key);
 
+    /**
+     * Reads the value of the remaining bytes of {@code key} into {@code value}, following the RocksDB
+     * ByteBuffer contract: the key position is moved to its limit, the value position is kept and its
+     * limit is set after the copied bytes. Returns the full size of the value, which is larger than the
+     * copied bytes if {@code value} was too small, or {@link #NOT_FOUND}. Both buffers must be direct or
+     * both must be heap buffers.
+     */
+    int get(ByteBuffer key, ByteBuffer value);
+
+    /**
+     * Writes the remaining bytes of {@code value} under the remaining bytes of {@code key}, moving the
+     * position of both buffers to their limit. Both buffers must be direct or both must be heap buffers.
+     */
+    void put(ByteBuffer key, ByteBuffer value);
+
+    /**
+     * Reads several keys at once. The result has one entry per key, in the same order, null for keys
+     * that do not exist. Sources that support it look the keys up in one batch.
+     */
+    default List<V> multiGet(List<K> keys) {
+        List<V> values = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
+    /**
+     * Applies all updates, a null value deletes its key. Sources that support it write the updates as
+     * one atomic batch.
+     */
+    default void writeBatch(Map<K, V> updates) {
+        for (Map.Entry<K, V> entry : updates.entrySet()) {
+            if (entry.getValue() == null) {
+                delete(entry.getKey());
+            } else {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
 }
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static io.xdag.db.BlockStore.BLOCK_HEIGHT;
+import static io.xdag.db.BlockStore.TIME_HASH_INFO;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Per-thread direct buffers for the fixed key layouts of {@link io.xdag.db.BlockStore}, so hot lookups
+ * can go through {@link KVSource#get(ByteBuffer, ByteBuffer)} without allocating keys or values.
+ *
+ * <p>The returned buffers are reused by the next call on the same thread and must not be kept.
+ * Layouts match {@link io.xdag.utils.BlockUtils}.
+ */
+public final class KeyBuilder {
+
+    public static final int MAX_KEY_SIZE = 1 + 8 + 32;
+    public static final int VALUE_SIZE = 1024;
+
+    private static final ThreadLocal<KeyBuilder> LOCAL = ThreadLocal.withInitial(KeyBuilder::new);
+
+    private final ByteBuffer key = ByteBuffer.allocateDirect(MAX_KEY_SIZE);
+    private final ByteBuffer value = ByteBuffer.allocateDirect(VALUE_SIZE);
+
+    private KeyBuilder() {
+    }
+
+    public static KeyBuilder local() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Raw block key: {@code hashlow}.
+     */
+    public ByteBuffer hashlow(Bytes32 hashlow) {
+        key.clear();
+        key.put(hashlow.toArrayUnsafe());
+        return key.flip();
+    }
+
+    /**
+     * {@code prefix + hashlow}, e.g. {@link io.xdag.db.BlockStore#HASH_BLOCK_INFO}.
+     */
+    public ByteBuffer prefixed(byte prefix, Bytes32 hashlow) {
+        key.clear();
+        key.put(prefix);
+        key.put(hashlow.toArrayUnsafe());
+        return key.flip();
+    }
+
+    /**
+     * Same as {@link io.xdag.utils.BlockUtils#getTimeKey(long, Bytes32)}.
+     */
+    public ByteBuffer time(long timestamp, Bytes32 hashlow) {
+        key.clear();
+        key.put(TIME_HASH_INFO).putLong(timestamp >> 16);
+        if (hashlow != null) {
+            key.put(hashlow.toArrayUnsafe());
+        }
+        return key.flip();
+    }
+
+    /**
+     * Same as {@link io.xdag.utils.BlockUtils#getHeight(long)}.
+     */
+    public ByteBuffer height(long height) {
+        key.clear();
+        key.put(BLOCK_HEIGHT).putLong(height);
+        return key.flip();
+    }
+
+    /**
+     * Empty value buffer of {@link #VALUE_SIZE} bytes to read into or serialize into.
+     */
+    public ByteBuffer value() {
+        return value.clear().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Value buffer holding {@code bytes}, which must fit in {@link #VALUE_SIZE}.
+     */
+    public ByteBuffer value(Bytes bytes) {
+        value();
+        value.put(bytes.toArrayUnsafe());
+        return value.flip();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.google.common.collect.Lists;
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * {@link KVSource} kept in a concurrent sorted map, for tests, benchmarks and ephemeral nodes.
+ *
+ * <p>Keys are ordered like RocksDB's default comparator (unsigned lexicographic), so prefix scans see
+ * the same order. Keys and values are copied on the way in and out, callers can not alias the stored
+ * arrays. Data survives {@link #close()} and {@link #init()} of the same instance, {@link #reset()}
+ * clears it.
+ */
+@Slf4j
+@Setter
+@Getter
+public class MemoryKVSource implements KVSource<byte[], byte[]> {
+
+    private final ConcurrentSkipListMap<byte[], byte[]> db = new ConcurrentSkipListMap<>(Arrays::compareUnsigned);
+    private String name;
+    private boolean alive;
+
+    public MemoryKVSource(String name) {
+        this.name = name;
+        log.debug("New MemoryKVSource: {}", name);
+    }
+
+    @Override
+    public void init() {
+        alive = true;
+    }
+
+    @Override
+    public void close() {
+        alive = false;
+    }
+
+    @Override
+    public void reset() {
+        db.clear();
+        alive = true;
+    }
+
+    @Override
+    public void put(byte[] key, byte[] val) {
+        if (val == null) {
+            delete(key);
+            return;
+        }
+        db.put(key.clone(), val.clone());
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        byte[] val = db.get(key);
+        return val == null ? null : val.clone();
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        db.remove(key);
+    }
+
+    @Override
+    public int get(ByteBuffer key, ByteBuffer value) {
+        byte[] k = new byte[key.remaining()];
+        key.get(k);
+        byte[] val = db.get(k);
+        if (val == null) {
+            return NOT_FOUND;
+        }
+        int length = Math.min(val.length, value.remaining());
+        value.put(value.position(), val, 0, length);
+        value.limit(value.position() + length);
+        return val.length;
+    }
+
+    @Override
+    public void put(ByteBuffer key, ByteBuffer value) {
+        byte[] k = new byte[key.remaining()];
+        byte[] v = new byte[value.remaining()];
+        key.get(k);
+        value.get(v);
+        db.put(k, v);
+    }
+
+    @Override
+    public Set<byte[]> keys() throws RuntimeException {
+        Set<byte[]> result = new HashSet<>();
+        for (byte[] key : db.keySet()) {
+            result.add(key.clone());
+        }
+        return result;
+    }
+
+    @Override
+    public List<byte[]> prefixKeyLookup(byte[] key) {
+        List<byte[]> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair.getKey());
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public List<byte[]> prefixValueLookup(byte[] key) {
+        List<byte[]> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair.getValue());
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key) {
+        List<Pair<byte[], byte[]>> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair);
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        for (Map.Entry<byte[], byte[]> entry : db.tailMap(key, true).entrySet()) {
+            if (!BytesUtils.keyStartsWith(entry.getKey(), key)) {
+                return;
+            }
+            if (func.apply(Pair.of(entry.getKey().clone(), entry.getValue().clone()))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void fetchPrefixReverse(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        byte[] end = BytesUtils.prefixEnd(key);
+        Map<byte[], byte[]> range = end == null ? db.tailMap(key, true).descendingMap()
+                : db.subMap(key, true, end, false).descendingMap();
+        for (Map.Entry<byte[], byte[]> entry : range.entrySet()) {
+            if (func.apply(Pair.of(entry.getKey().clone(), entry.getValue().clone()))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Visits the keys in {@code [from, to)} in order until {@code func} returns true, a null
+     * {@code to} means up to the last key.
+     */
+    public void fetchRange(byte[] from, byte[] to, Function<Pair<byte[], byte[]>, Boolean> func) {
+        Map<byte[], byte[]> range = to == null ? db.tailMap(from, true) : db.subMap(from, true, to, false);
+        for (Map.Entry<byte[], byte[]> entry : range.entrySet()) {
+            if (func.apply(Pair.of(entry.getKey().clone(), entry.getValue().clone()))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies all puts, a null value deletes the key. Other threads may observe the batch partially applied.
+     */
+    public void putAll(Map<byte[], byte[]> batch) {
+        for (Map.Entry<byte[], byte[]> entry : batch.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns a copy of the current content under the same name, later writes to either side are not shared.
+     */
+    public MemoryKVSource snapshot() {
+        MemoryKVSource snapshot = new MemoryKVSource(name);
+        snapshot.db.putAll(db);
+        snapshot.alive = alive;
+        return snapshot;
+    }
+}
@@ -25,6 +25,7 @@
 package io.xdag.db.rocksdb;
 
 import io.xdag.config.Config;
+import java.nio.file.Paths;
 import java.util.EnumMap;
 import org.apache.commons.lang3.StringUtils;
 
@@ -42,6 +43,16 @@ public class RocksdbFactory implements DatabaseFactory {
     public KVSource<byte[], byte[]> getDB(DatabaseName name) {
         return databases.computeIfAbsent(
                 name, k -> {
+                    if (name == DatabaseName.SEGMENT) {
+                        SegmentKVSource segmentSource = new SegmentKVSource(name.toString());
+                        segmentSource.setConfig(config);
+                        return segmentSource;
+                    }
+                    if (name == DatabaseName.HEIGHT) {
+                        HeightKVSource heightSource = new HeightKVSource(name.toString());
+                        heightSource.setConfig(config);
+                        return heightSource;
+                    }
                     RocksdbKVSource dataSource;
                     // time data source must set fixed prefix length
                     if (StringUtils.equals(DatabaseName.TIME.toString(), name.toString())) {
@@ -50,6 +61,10 @@ public class RocksdbFactory implements DatabaseFactory {
                         dataSource = new RocksdbKVSource(name.toString());
                     }
                     dataSource.setConfig(config);
+                    if (config.getNodeSpec().isStoreReplicaEnabled()) {
+                        dataSource.setSecondaryPath(
+                                Paths.get(config.getNodeSpec().getStoreReplicaDir(), name.toString()).toString());
+                    }
                     return dataSource;
                 });
     }
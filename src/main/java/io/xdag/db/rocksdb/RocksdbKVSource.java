@@ -29,11 +29,15 @@ import io.xdag.config.Config;
 import io.xdag.utils.BytesUtils;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -57,6 +61,8 @@ import org.rocksdb.RestoreOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
 @Slf4j
 @Setter
@@ -78,8 +84,14 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
     private String name;
     private RocksDB db;
     private ReadOptions readOpts;
+    private WriteOptions writeOpts;
     private boolean alive;
     private int prefixSeekLength;
+    /**
+     * When set, the db is opened as a read-only secondary instance of the primary at the store dir,
+     * keeping its own info logs under this path.
+     */
+    private String secondaryPath;
 
     public RocksdbKVSource(String name) {
         this.name = name;
@@ -115,7 +127,8 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 options.setCompressionType(CompressionType.LZ4_COMPRESSION);
                 options.setBottommostCompressionType(CompressionType.LZ4_COMPRESSION);
                 options.setLevelCompactionDynamicLevelBytes(true);
-                options.setMaxOpenFiles(config.getNodeSpec().getStoreMaxOpenFiles());
+                // secondary instances must keep all files open to follow the primary
+                options.setMaxOpenFiles(secondaryPath == null ? config.getNodeSpec().getStoreMaxOpenFiles() : -1);
                 options.setIncreaseParallelism(config.getNodeSpec().getStoreMaxThreads());
 
                 // key prefix for state node lookups
@@ -133,6 +146,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 // read options
                 readOpts = new ReadOptions();
                 readOpts = readOpts.setPrefixSameAsStart(true).setVerifyChecksums(false);
+                writeOpts = new WriteOptions();
 
                 try {
                     log.debug("Opening database");
@@ -141,7 +155,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                         Files.createDirectories(dbPath.getParent());
                     }
 
-                    if (config.getNodeSpec().isStoreFromBackup() && backupPath().toFile().canWrite()) {
+                    if (secondaryPath == null && config.getNodeSpec().isStoreFromBackup() && backupPath().toFile().canWrite()) {
                         log.debug("Restoring database from backup: '{}'", name);
                         try (BackupEngineOptions backupOptions = new BackupEngineOptions(backupPath().toString());
                                 RestoreOptions restoreOptions = new RestoreOptions(false);
@@ -158,7 +172,13 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                     }
                     log.debug("Initializing new or existing database: '{}'", name);
                     try {
-                        db = RocksDB.open(options, dbPath.toString());
+                        if (secondaryPath == null) {
+                            db = RocksDB.open(options, dbPath.toString());
+                        } else {
+                            log.debug("Opening secondary instance of '{}' at '{}'", name, secondaryPath);
+                            Files.createDirectories(Paths.get(secondaryPath));
+                            db = RocksDB.openAsSecondary(options, dbPath.toString(), secondaryPath);
+                        }
                     } catch (RocksDBException e) {
                         log.error(e.getMessage(), e);
                         throw new RuntimeException("Failed to initialize database", e);
@@ -202,6 +222,23 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    /**
+     * Replays the primary's new MANIFEST and WAL entries into a secondary instance.
+     */
+    public void tryCatchUpWithPrimary() {
+        resetDbLock.readLock().lock();
+        try {
+            if (isAlive()) {
+                db.tryCatchUpWithPrimary();
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to catch up db '{}' with primary", name, e);
+            hintOnTooManyOpenFiles(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void put(byte[] key, byte[] val) {
         resetDbLock.readLock().lock();
@@ -254,6 +291,55 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        resetDbLock.readLock().lock();
+        try {
+            List<byte[]> ret = db.multiGetAsList(readOpts, keys);
+            if (log.isTraceEnabled()) {
+                log.trace("<~ RocksdbKVSource.multiGet(): {}, {} keys", name, keys.size());
+            }
+            return ret;
+        } catch (RocksDBException e) {
+            log.error("Failed to multi get from db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int get(ByteBuffer key, ByteBuffer value) {
+        resetDbLock.readLock().lock();
+        try {
+            return db.get(readOpts, key, value);
+        } catch (RocksDBException e) {
+            log.error("Failed to get from db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(ByteBuffer key, ByteBuffer value) {
+        resetDbLock.readLock().lock();
+        try {
+            db.put(writeOpts, key, value);
+        } catch (RocksDBException e) {
+            log.error("Failed to put into db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void delete(byte[] key) {
         resetDbLock.readLock().lock();
@@ -273,6 +359,30 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    @Override
+    public void writeBatch(Map<byte[], byte[]> updates) {
+        resetDbLock.readLock().lock();
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Map.Entry<byte[], byte[]> entry : updates.entrySet()) {
+                if (entry.getValue() == null) {
+                    batch.delete(entry.getKey());
+                } else {
+                    batch.put(entry.getKey(), entry.getValue());
+                }
+            }
+            db.write(writeOpts, batch);
+            if (log.isTraceEnabled()) {
+                log.trace("<~ RocksdbKVSource.writeBatch(): {}, {} updates", name, updates.size());
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to write batch into db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public Set<byte[]> keys() throws RuntimeException {
         resetDbLock.readLock().lock();
@@ -352,6 +462,38 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    @Override
+    public void fetchPrefixReverse(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        byte[] end = BytesUtils.prefixEnd(key);
+        resetDbLock.readLock().lock();
+        try (RocksIterator it = db.newIterator(readOpts)) {
+            if (end == null) {
+                it.seekToLast();
+            } else {
+                // lands on the last key before end, or on end itself
+                it.seekForPrev(end);
+                if (it.isValid() && Arrays.equals(it.key(), end)) {
+                    it.prev();
+                }
+            }
+            for (; it.isValid(); it.prev()) {
+                if (BytesUtils.keyStartsWith(it.key(), key)) {
+                    if (func.apply(Pair.of(it.key(), it.value()))) {
+                        return;
+                    }
+                } else {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to seek backwards by prefix in db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public void close() {
         resetDbLock.writeLock().lock();
@@ -363,6 +505,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             log.debug("Close db: {}", name);
             db.close();
             readOpts.close();
+            writeOpts.close();
 
             alive = false;
 
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from hashlow to a packed (segment, record) location.
+ *
+ * <p>Each slot uses four longs: the three significant words of the hashlow (bytes 8..32) and
+ * the location plus one, so that zero marks an empty slot. Removed slots are marked with
+ * {@link #DELETED} and skipped by lookups until the next resize.
+ */
+final class SegmentIndex {
+
+    private static final int STRIDE = 4;
+    private static final long EMPTY = 0L;
+    private static final long DELETED = -1L;
+    private static final int MIN_CAPACITY = 1 << 10;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private int used;
+
+    SegmentIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    SegmentIndex(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 0.6 < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the location stored for the key, or -1 when absent.
+     */
+    long get(long k0, long k1, long k2) {
+        int slot = slot(k0, k1, k2);
+        while (true) {
+            int base = slot * STRIDE;
+            long value = table[base + 3];
+            if (value == EMPTY) {
+                return -1;
+            }
+            if (value != DELETED && table[base] == k0 && table[base + 1] == k1 && table[base + 2] == k2) {
+                return value - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void put(long k0, long k1, long k2, long location) {
+        if ((used + 1) > (mask + 1) * 0.6) {
+            resize(size + 1 > (mask + 1) * 0.3 ? (mask + 1) << 1 : mask + 1);
+        }
+        int slot = slot(k0, k1, k2);
+        int free = -1;
+        while (true) {
+            int base = slot * STRIDE;
+            long value = table[base + 3];
+            if (value == EMPTY) {
+                break;
+            }
+            if (value == DELETED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (table[base] == k0 && table[base + 1] == k1 && table[base + 2] == k2) {
+                table[base + 3] = location + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (free < 0) {
+            free = slot;
+            used++;
+        }
+        int base = free * STRIDE;
+        table[base] = k0;
+        table[base + 1] = k1;
+        table[base + 2] = k2;
+        table[base + 3] = location + 1;
+        size++;
+    }
+
+    boolean remove(long k0, long k1, long k2) {
+        int slot = slot(k0, k1, k2);
+        while (true) {
+            int base = slot * STRIDE;
+            long value = table[base + 3];
+            if (value == EMPTY) {
+                return false;
+            }
+            if (value != DELETED && table[base] == k0 && table[base + 1] == k1 && table[base + 2] == k2) {
+                table[base + 3] = DELETED;
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (int base = 0; base < table.length; base += STRIDE) {
+            long value = table[base + 3];
+            if (value != EMPTY && value != DELETED) {
+                consumer.accept(table[base], table[base + 1], table[base + 2], value - 1);
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+        used = 0;
+    }
+
+    private int slot(long k0, long k1, long k2) {
+        long h = (k0 * 0x9E3779B97F4A7C15L) ^ (k1 * 0xC2B2AE3D27D4EB4FL) ^ k2;
+        h ^= h >>> 29;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity * STRIDE];
+        mask = capacity - 1;
+        size = 0;
+        used = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] old = table;
+        allocate(capacity);
+        for (int base = 0; base < old.length; base += STRIDE) {
+            long value = old[base + 3];
+            if (value != EMPTY && value != DELETED) {
+                put(old[base], old[base + 1], old[base + 2], value - 1);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long k0, long k1, long k2, long location);
+    }
+}
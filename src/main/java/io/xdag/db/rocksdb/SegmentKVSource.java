@@ -0,0 +1,619 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.google.common.collect.Lists;
+import io.xdag.config.Config;
+import io.xdag.core.XdagBlock;
+import io.xdag.db.BlockStore;
+import io.xdag.utils.BytesUtils;
+import io.xdag.utils.XdagTime;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Append-only store for raw 512-byte block bodies keyed by hashlow.
+ *
+ * <p>Bodies are appended to segment files, one segment per {@code 2^SEGMENT_EPOCH_BITS} epochs,
+ * and read back through memory-mapped chunks. Every record keeps its hashlow in front of the body
+ * so that a segment can be scanned on its own. Locations are kept in a {@link SegmentIndex}
+ * which is rebuilt on {@link #init()} from an append-only index log.
+ *
+ * <p>Records are never rewritten. Overwriting a key appends a new record and deleting a key only
+ * appends a tombstone to the index log, the space is not reclaimed.
+ */
+@Slf4j
+@Setter
+@Getter
+public class SegmentKVSource implements KVSource<byte[], byte[]> {
+
+    public static final int SEGMENT_EPOCH_BITS = 10;
+
+    static final int KEY_SIZE = 32;
+    static final int RECORD_SIZE = KEY_SIZE + XdagBlock.XDAG_BLOCK_SIZE;
+    static final int RECORDS_PER_CHUNK = 1 << 16;
+
+    private static final int INDEX_ENTRY_SIZE = 32;
+    private static final int TOMBSTONE = -1;
+    private static final String INDEX_FILE = "index.log";
+    private static final String IMPORT_FILE = "import.pending";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * Same locking scheme as {@link RocksdbKVSource}: reads share the lock, while appends,
+     * init, close and reset take it exclusively because they mutate the index.
+     */
+    private final ReadWriteLock resetDbLock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final SegmentIndex index = new SegmentIndex();
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+    private Config config;
+    private String name;
+    private FileChannel indexChannel;
+    private boolean alive;
+
+    public SegmentKVSource(String name) {
+        this.name = name;
+        log.debug("New SegmentKVSource: {}", name);
+    }
+
+    @Override
+    public void init() {
+        resetDbLock.writeLock().lock();
+        try {
+            log.debug("~> SegmentKVSource.init(): {}", name);
+            if (isAlive()) {
+                return;
+            }
+            if (name == null) {
+                throw new NullPointerException("no name set to the db");
+            }
+            Path dir = getPath();
+            Files.createDirectories(dir);
+
+            Map<Integer, Integer> counts = loadIndex(dir.resolve(INDEX_FILE));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    int id = Integer.parseInt(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(id, new Segment(file, counts.getOrDefault(id, 0)));
+                }
+            }
+            alive = true;
+            log.debug("<~ SegmentKVSource.init(): {}, {} blocks in {} segments", name, index.size(), segments.size());
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to initialize segment store '{}'", name, e);
+            closeQuietly();
+            throw new RuntimeException("Failed to initialize database", e);
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replays the index log into memory and returns the number of records per segment.
+     * A torn entry at the end of the log is cut off.
+     */
+    private Map<Integer, Integer> loadIndex(Path file) throws IOException {
+        indexChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long entries = indexChannel.size() / INDEX_ENTRY_SIZE;
+        if (indexChannel.size() % INDEX_ENTRY_SIZE != 0) {
+            log.warn("Truncate torn entry of segment index '{}'", name);
+            indexChannel.truncate(entries * INDEX_ENTRY_SIZE);
+        }
+        Map<Integer, Integer> counts = new HashMap<>();
+        ByteBuffer buf = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 4096);
+        long position = 0;
+        while (position < entries * INDEX_ENTRY_SIZE) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), entries * INDEX_ENTRY_SIZE - position));
+            while (buf.hasRemaining()) {
+                position += indexChannel.read(buf, position);
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                long k0 = buf.getLong();
+                long k1 = buf.getLong();
+                long k2 = buf.getLong();
+                int segment = buf.getInt();
+                int record = buf.getInt();
+                if (record == TOMBSTONE) {
+                    index.remove(k0, k1, k2);
+                } else {
+                    index.put(k0, k1, k2, location(segment, record));
+                    counts.merge(segment, record + 1, Math::max);
+                }
+            }
+        }
+        indexChannel.position(entries * INDEX_ENTRY_SIZE);
+        return counts;
+    }
+
+    @Override
+    public void put(byte[] key, byte[] val) {
+        if (val == null) {
+            delete(key);
+            return;
+        }
+        checkKey(key);
+        if (val.length != XdagBlock.XDAG_BLOCK_SIZE) {
+            throw new IllegalArgumentException("segment store only accepts " + XdagBlock.XDAG_BLOCK_SIZE
+                    + " bytes values, got " + val.length);
+        }
+        resetDbLock.writeLock().lock();
+        try {
+            long k0 = word(key, 8), k1 = word(key, 16), k2 = word(key, 24);
+            long existing = index.get(k0, k1, k2);
+            if (existing >= 0 && Arrays.equals(read(existing), val)) {
+                return;
+            }
+            long epoch = XdagTime.getEpoch(BytesUtils.bytesToLong(val, 16, true));
+            int segmentId = (int) (epoch >>> SEGMENT_EPOCH_BITS);
+            Segment segment = segments.get(segmentId);
+            if (segment == null) {
+                segment = new Segment(getPath().resolve(String.format("%010d%s", segmentId, SEGMENT_SUFFIX)), 0);
+                segments.put(segmentId, segment);
+            }
+            int record = segment.append(key, val);
+            appendIndex(k0, k1, k2, segmentId, record);
+            index.put(k0, k1, k2, location(segmentId, record));
+        } catch (IOException e) {
+            log.error("Failed to put into segment store '{}'", name, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        checkKey(key);
+        resetDbLock.readLock().lock();
+        try {
+            long location = index.get(word(key, 8), word(key, 16), word(key, 24));
+            return location < 0 ? null : read(location);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int get(ByteBuffer key, ByteBuffer value) {
+        if (key.remaining() != KEY_SIZE || key.getLong(key.position()) != 0) {
+            throw new IllegalArgumentException("segment store keys must be 32 bytes hashlow");
+        }
+        long k0 = key.getLong(key.position() + 8);
+        long k1 = key.getLong(key.position() + 16);
+        long k2 = key.getLong(key.position() + 24);
+        key.position(key.limit());
+        resetDbLock.readLock().lock();
+        try {
+            long location = index.get(k0, k1, k2);
+            if (location < 0) {
+                return NOT_FOUND;
+            }
+            int length = Math.min(XdagBlock.XDAG_BLOCK_SIZE, value.remaining());
+            segments.get((int) (location >>> 32)).body((int) location, value, length);
+            return XdagBlock.XDAG_BLOCK_SIZE;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void put(ByteBuffer key, ByteBuffer value) {
+        byte[] k = new byte[key.remaining()];
+        byte[] v = new byte[value.remaining()];
+        key.get(k);
+        value.get(v);
+        put(k, v);
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        checkKey(key);
+        resetDbLock.writeLock().lock();
+        try {
+            long k0 = word(key, 8), k1 = word(key, 16), k2 = word(key, 24);
+            if (index.remove(k0, k1, k2)) {
+                appendIndex(k0, k1, k2, 0, TOMBSTONE);
+            }
+        } catch (IOException e) {
+            log.error("Failed to delete from segment store '{}'", name, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<byte[]> keys() throws RuntimeException {
+        resetDbLock.readLock().lock();
+        try {
+            Set<byte[]> result = new HashSet<>(index.size());
+            index.forEach((k0, k1, k2, location) -> result.add(key(k0, k1, k2)));
+            return result;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<byte[]> prefixKeyLookup(byte[] key) {
+        List<byte[]> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair.getKey());
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public List<byte[]> prefixValueLookup(byte[] key) {
+        List<byte[]> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair.getValue());
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key) {
+        List<Pair<byte[], byte[]>> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair);
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    /**
+     * Prefix scans are served from the in-memory index in key order. Raw blocks are not looked
+     * up by prefix on the hot path, so this is kept simple rather than fast.
+     */
+    @Override
+    public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        resetDbLock.readLock().lock();
+        try {
+            TreeMap<byte[], Long> matched = new TreeMap<>(Arrays::compareUnsigned);
+            index.forEach((k0, k1, k2, location) -> {
+                byte[] k = key(k0, k1, k2);
+                if (BytesUtils.keyStartsWith(k, key)) {
+                    matched.put(k, location);
+                }
+            });
+            for (Map.Entry<byte[], Long> entry : matched.entrySet()) {
+                if (func.apply(Pair.of(entry.getKey(), read(entry.getValue())))) {
+                    return;
+                }
+            }
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        resetDbLock.readLock().lock();
+        try {
+            return index.size() == 0;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether an {@link #importFrom} was started and did not finish
+     */
+    public boolean isImportPending() {
+        return Files.exists(getPath().resolve(IMPORT_FILE));
+    }
+
+    /**
+     * Copy the raw bodies of a data directory that kept them in a key-value database, once when it
+     * switches to segment files. Blocks are taken epoch by epoch from the time index and by timestamp
+     * within an epoch, so parents stay ahead of their children as {@link #fetchRange} expects. An
+     * interrupted import is marked pending and can simply be run again.
+     *
+     * @param time time index of the block store, keys are prefix, epoch and hashlow
+     * @param raw raw bodies keyed by hashlow
+     * @return number of bodies copied
+     */
+    public long importFrom(KVSource<byte[], byte[]> time, KVSource<byte[], byte[]> raw) throws IOException {
+        Path pending = getPath().resolve(IMPORT_FILE);
+        if (!Files.exists(pending)) {
+            Files.createFile(pending);
+        }
+        long[] copied = {0};
+        byte[][] epoch = {null};
+        List<Pair<byte[], byte[]>> blocks = new ArrayList<>();
+        time.fetchPrefix(new byte[]{BlockStore.TIME_HASH_INFO}, pair -> {
+            byte[] key = pair.getKey();
+            if (key.length != 1 + 8 + KEY_SIZE) {
+                return Boolean.FALSE;
+            }
+            byte[] keyEpoch = Arrays.copyOfRange(key, 1, 1 + 8);
+            if (epoch[0] != null && !Arrays.equals(epoch[0], keyEpoch)) {
+                copied[0] += importEpoch(blocks);
+            }
+            epoch[0] = keyEpoch;
+            byte[] hashlow = Arrays.copyOfRange(key, 1 + 8, key.length);
+            byte[] body = raw.get(hashlow);
+            if (body != null && body.length == XdagBlock.XDAG_BLOCK_SIZE) {
+                blocks.add(Pair.of(hashlow, body));
+            }
+            return Boolean.FALSE;
+        });
+        copied[0] += importEpoch(blocks);
+        resetDbLock.writeLock().lock();
+        try {
+            indexChannel.force(false);
+            for (Segment segment : segments.values()) {
+                segment.force();
+            }
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+        Files.delete(pending);
+        return copied[0];
+    }
+
+    private int importEpoch(List<Pair<byte[], byte[]>> blocks) {
+        blocks.sort(Comparator.comparingLong(block -> BytesUtils.bytesToLong(block.getValue(), 16, true)));
+        for (Pair<byte[], byte[]> block : blocks) {
+            put(block.getKey(), block.getValue());
+        }
+        int size = blocks.size();
+        blocks.clear();
+        return size;
+    }
+
+    /**
+     * Visits the live blocks whose timestamp is in {@code [startTime, endTime)}, segment by segment
+     * and in append order within a segment, until {@code func} returns true. Since a block is only
+     * stored after the blocks it links to, append order keeps parents ahead of children.
+     */
+    public void fetchRange(long startTime, long endTime, Function<Pair<byte[], byte[]>, Boolean> func) {
+        if (endTime <= startTime) {
+            return;
+        }
+        int first = (int) (XdagTime.getEpoch(startTime) >>> SEGMENT_EPOCH_BITS);
+        int last = (int) (XdagTime.getEpoch(endTime - 1) >>> SEGMENT_EPOCH_BITS);
+        resetDbLock.readLock().lock();
+        try {
+            for (Map.Entry<Integer, Segment> entry : segments.subMap(first, true, last, true).entrySet()) {
+                Segment segment = entry.getValue();
+                for (int record = 0; record < segment.count; record++) {
+                    long time = segment.timestamp(record);
+                    if (time < startTime || time >= endTime) {
+                        continue;
+                    }
+                    byte[] key = segment.key(record);
+                    long location = location(entry.getKey(), record);
+                    if (index.get(word(key, 8), word(key, 16), word(key, 24)) != location) {
+                        // overwritten or deleted
+                        continue;
+                    }
+                    if (func.apply(Pair.of(key, segment.body(record)))) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        resetDbLock.writeLock().lock();
+        try {
+            if (!isAlive()) {
+                return;
+            }
+            log.debug("Close segment store: {}", name);
+            closeQuietly();
+        } finally {
+            resetDbLock.writeLock().unlock();
+        }
+    }
+
+    private void closeQuietly() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        index.clear();
+        if (indexChannel != null) {
+            try {
+                indexChannel.force(false);
+                indexChannel.close();
+            } catch (IOException e) {
+                log.error("Error closing segment index '{}'", name, e);
+            }
+            indexChannel = null;
+        }
+        alive = false;
+    }
+
+    @Override
+    public void reset() {
+        close();
+        try {
+            FileUtils.deleteDirectory(new File(getPath().toString()));
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        init();
+    }
+
+    private Path getPath() {
+        return Paths.get(config.getNodeSpec().getStoreDir(), name);
+    }
+
+    private void appendIndex(long k0, long k1, long k2, int segment, int record) throws IOException {
+        indexEntry.clear();
+        indexEntry.putLong(k0).putLong(k1).putLong(k2).putInt(segment).putInt(record);
+        indexEntry.flip();
+        while (indexEntry.hasRemaining()) {
+            indexChannel.write(indexEntry);
+        }
+    }
+
+    private byte[] read(long location) {
+        return segments.get((int) (location >>> 32)).body((int) location);
+    }
+
+    private static long location(int segment, int record) {
+        return ((long) segment << 32) | (record & 0xffffffffL);
+    }
+
+    private static void checkKey(byte[] key) {
+        if (key == null || key.length != KEY_SIZE || word(key, 0) != 0) {
+            throw new IllegalArgumentException("segment store keys must be 32 bytes hashlow");
+        }
+    }
+
+    private static long word(byte[] key, int offset) {
+        return BytesUtils.bytesToLong(key, offset, false);
+    }
+
+    private static byte[] key(long k0, long k1, long k2) {
+        return ByteBuffer.allocate(KEY_SIZE).putLong(8, k0).putLong(16, k1).putLong(24, k2).array();
+    }
+
+    /**
+     * One segment file, mapped in chunks of {@link #RECORDS_PER_CHUNK} records so that a record
+     * never straddles two mappings.
+     */
+    private static final class Segment {
+
+        private static final long CHUNK_SIZE = (long) RECORD_SIZE * RECORDS_PER_CHUNK;
+
+        private final FileChannel channel;
+        private final List<MappedByteBuffer> chunks = Lists.newArrayList();
+        private int count;
+
+        Segment(Path path, int count) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.count = count;
+            long chunkCount = (channel.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            while (chunks.size() < chunkCount) {
+                map();
+            }
+        }
+
+        int append(byte[] key, byte[] val) throws IOException {
+            int record = count;
+            if ((record / RECORDS_PER_CHUNK) >= chunks.size()) {
+                map();
+            }
+            ByteBuffer chunk = chunk(record);
+            int offset = offset(record);
+            chunk.put(offset, key);
+            chunk.put(offset + KEY_SIZE, val);
+            count++;
+            return record;
+        }
+
+        byte[] key(int record) {
+            byte[] key = new byte[KEY_SIZE];
+            chunk(record).get(offset(record), key);
+            return key;
+        }
+
+        byte[] body(int record) {
+            byte[] body = new byte[XdagBlock.XDAG_BLOCK_SIZE];
+            chunk(record).get(offset(record) + KEY_SIZE, body);
+            return body;
+        }
+
+        void body(int record, ByteBuffer dst, int length) {
+            dst.put(dst.position(), chunk(record), offset(record) + KEY_SIZE, length);
+            dst.limit(dst.position() + length);
+        }
+
+        long timestamp(int record) {
+            // header field: transport(8) + type(8) + time(8) + fee(8), little endian
+            return Long.reverseBytes(chunk(record).getLong(offset(record) + KEY_SIZE + 16));
+        }
+
+        private ByteBuffer chunk(int record) {
+            return chunks.get(record / RECORDS_PER_CHUNK);
+        }
+
+        private static int offset(int record) {
+            return (record % RECORDS_PER_CHUNK) * RECORD_SIZE;
+        }
+
+        private void map() throws IOException {
+            // mapping past the end of file extends it
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * CHUNK_SIZE, CHUNK_SIZE));
+        }
+
+        void force() {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+        }
+
+        void close() {
+            try {
+                force();
+                channel.close();
+            } catch (IOException e) {
+                log.error("Error closing segment", e);
+            }
+            chunks.clear();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.utils.SimpleDecoder;
+import io.xdag.utils.SimpleEncoder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Execution overlay shared by a group of {@link WriteSetKVSource}s.
+ * <p>
+ * Between {@link #begin()} and {@link #commit()} every write made by the owning thread to one of
+ * the sources is kept in memory, and reads by that thread see those writes. Other threads keep
+ * reading the committed state. On commit each source writes its changes as one batch, so applying
+ * a main block either reaches the database completely or not at all. Calls nest; only the
+ * outermost commit writes.
+ * <p>
+ * Sources are separate databases, so their batches can't be written atomically together. With a
+ * journal set, the changes of the other sources are also written into the journal source, in the
+ * same batch as its own changes, and removed once every batch is written. From the journal write
+ * on the commit counts as done: a later batch that fails is written again from the journal right
+ * away, and if that fails too no further write set can begin until {@link #recover()} finishes it
+ * on the next start.
+ */
+@Slf4j
+public class WriteSet {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<WriteSetKVSource> sources = new CopyOnWriteArrayList<>();
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private volatile Thread owner;
+    // Threads reading the overlay for the owner, see readFor
+    private final Set<Thread> readers = ConcurrentHashMap.newKeySet();
+    private int depth;
+    private boolean rollbackOnly;
+    private WriteSetKVSource journal;
+    private byte[] journalKey;
+    // a journaled commit could not be finished, see flush
+    private volatile boolean unfinished;
+
+    /**
+     * Re-read every committed key and compare it with the overlay, for offline checking
+     */
+    @Getter
+    @Setter
+    private volatile boolean verify;
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    void register(WriteSetKVSource source) {
+        sources.add(source);
+    }
+
+    /**
+     * Journal commits touching several sources in source under key, see {@link #recover()}
+     */
+    public void setJournal(WriteSetKVSource source, byte[] key) {
+        this.journal = source;
+        this.journalKey = key.clone();
+    }
+
+    /**
+     * Finish a commit that was cut short after the journal source was written, by writing the
+     * journaled changes of the other sources.
+     *
+     * @return number of sources written
+     */
+    public int recover() {
+        if (journal == null) {
+            return 0;
+        }
+        byte[] data = journal.getSource().get(journalKey);
+        if (data == null) {
+            return 0;
+        }
+        SimpleDecoder dec = new SimpleDecoder(data);
+        int count = dec.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = dec.readString();
+            int size = dec.readInt();
+            Map<byte[], byte[]> changes = new TreeMap<>(Arrays::compareUnsigned);
+            for (int j = 0; j < size; j++) {
+                byte[] key = dec.readBytes();
+                changes.put(key, dec.readBoolean() ? dec.readBytes() : null);
+            }
+            WriteSetKVSource source = sourceOf(name);
+            if (source == null) {
+                throw new IllegalStateException("Write set journal names an unknown source " + name);
+            }
+            source.getSource().writeBatch(changes);
+        }
+        journal.getSource().delete(journalKey);
+        log.info("Finished an interrupted write set commit, {} sources written", count);
+        return count;
+    }
+
+    /**
+     * Whether the calling thread has an open write set
+     */
+    public boolean isActive() {
+        return owner == Thread.currentThread();
+    }
+
+    /**
+     * Whether reads of the calling thread see the open write set: it owns it or reads for the owner
+     */
+    public boolean isVisible() {
+        return isActive() || (!readers.isEmpty() && readers.contains(Thread.currentThread()));
+    }
+
+    /**
+     * Wrap a task so that, run on another thread, its reads see the write set open on the calling
+     * thread. The task must not write, and the owner must not write until the task is done.
+     */
+    public <T> Callable<T> readFor(Callable<T> task) {
+        if (!isActive()) {
+            return task;
+        }
+        return () -> {
+            Thread thread = Thread.currentThread();
+            boolean added = readers.add(thread);
+            try {
+                return task.call();
+            } finally {
+                if (added) {
+                    readers.remove(thread);
+                }
+            }
+        };
+    }
+
+    public void begin() {
+        if (unfinished) {
+            throw new IllegalStateException("A write set commit is unfinished, restart to replay its journal");
+        }
+        lock.lock();
+        if (depth++ == 0) {
+            owner = Thread.currentThread();
+        }
+    }
+
+    public void commit() {
+        checkOwner();
+        try {
+            if (--depth > 0) {
+                return;
+            }
+            if (rollbackOnly) {
+                log.debug("Write set marked for rollback, discarding it");
+                discard();
+                return;
+            }
+            List<Runnable> actions = new ArrayList<>(afterCommit);
+            try {
+                flush();
+                if (verify) {
+                    for (WriteSetKVSource source : sources) {
+                        mismatches.addAndGet(source.verify());
+                    }
+                }
+                commits.incrementAndGet();
+            } finally {
+                discard();
+            }
+            actions.forEach(Runnable::run);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop the open write set. Does nothing once the outermost commit has started, since that
+     * commit already closed the write set, whether it wrote everything or failed.
+     */
+    public void rollback() {
+        if (!lock.isHeldByCurrentThread()) {
+            return;
+        }
+        checkOwner();
+        try {
+            if (--depth > 0) {
+                rollbackOnly = true;
+                return;
+            }
+            discard();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run an action once the open write set is committed, or right away if there is none.
+     * Used for stores that live outside the overlay, and dropped on rollback.
+     */
+    public void afterCommit(Runnable action) {
+        if (isActive()) {
+            afterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public long getMismatches() {
+        return mismatches.get();
+    }
+
+    private void flush() {
+        List<WriteSetKVSource> others = new ArrayList<>();
+        for (WriteSetKVSource source : sources) {
+            if (source.size() > 0) {
+                others.add(source);
+            }
+        }
+        if (journal == null || others.size() < 2) {
+            for (WriteSetKVSource source : others) {
+                source.flush();
+            }
+            return;
+        }
+        others.remove(journal);
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeInt(others.size());
+        for (WriteSetKVSource source : others) {
+            enc.writeString(source.getName());
+            enc.writeInt(source.size());
+            for (Map.Entry<byte[], byte[]> entry : source.getChanges().entrySet()) {
+                enc.writeBytes(entry.getKey());
+                enc.writeBoolean(entry.getValue() != null);
+                if (entry.getValue() != null) {
+                    enc.writeBytes(entry.getValue());
+                }
+            }
+        }
+        journal.putChange(journalKey, enc.toBytes());
+        journal.flush();
+        journal.removeChange(journalKey);
+        try {
+            for (WriteSetKVSource source : others) {
+                source.flush();
+            }
+        } catch (RuntimeException e) {
+            log.error("Write set commit cut short after its journal was written, finishing it", e);
+            try {
+                recover();
+            } catch (RuntimeException again) {
+                unfinished = true;
+                throw new IllegalStateException("Write set commit could not be finished", again);
+            }
+            return;
+        }
+        journal.getSource().delete(journalKey);
+    }
+
+    private WriteSetKVSource sourceOf(String name) {
+        for (WriteSetKVSource source : sources) {
+            if (name.equals(source.getName())) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    private void discard() {
+        for (WriteSetKVSource source : sources) {
+            source.clear();
+        }
+        afterCommit.clear();
+        rollbackOnly = false;
+        owner = null;
+    }
+
+    private void checkOwner() {
+        if (!isActive()) {
+            throw new IllegalStateException("Write set is not open on this thread");
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.google.common.collect.Lists;
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * {@link KVSource} decorator that buffers writes of an open {@link WriteSet}.
+ *
+ * <p>Without an open write set on the calling thread every call goes straight to the wrapped
+ * source. Otherwise writes go to an in-memory sorted map (a null value marks a delete), reads look
+ * at that map first, and prefix scans merge it with the wrapped source. Nothing reaches the wrapped
+ * source until the write set commits. Threads running a task of {@link WriteSet#readFor} read
+ * through the map as the owner does.
+ */
+@Slf4j
+public class WriteSetKVSource implements KVSource<byte[], byte[]> {
+
+    @Getter
+    private final KVSource<byte[], byte[]> source;
+    @Getter
+    private final WriteSet writeSet;
+    private final TreeMap<byte[], byte[]> changes = new TreeMap<>(Arrays::compareUnsigned);
+
+    public WriteSetKVSource(KVSource<byte[], byte[]> source, WriteSet writeSet) {
+        this.source = source;
+        this.writeSet = writeSet;
+        writeSet.register(this);
+    }
+
+    @Override
+    public String getName() {
+        return source.getName();
+    }
+
+    @Override
+    public void setName(String name) {
+        source.setName(name);
+    }
+
+    @Override
+    public boolean isAlive() {
+        return source.isAlive();
+    }
+
+    @Override
+    public void init() {
+        source.init();
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    @Override
+    public void reset() {
+        source.reset();
+    }
+
+    @Override
+    public void put(byte[] key, byte[] val) {
+        if (writeSet.isActive()) {
+            changes.put(key.clone(), val == null ? null : val.clone());
+        } else {
+            source.put(key, val);
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        if (writeSet.isVisible() && changes.containsKey(key)) {
+            byte[] val = changes.get(key);
+            return val == null ? null : val.clone();
+        }
+        return source.get(key);
+    }
+
+    @Override
+    public List<byte[]> multiGet(List<byte[]> keys) {
+        if (!writeSet.isVisible() || changes.isEmpty()) {
+            return source.multiGet(keys);
+        }
+        List<byte[]> missing = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            if (!changes.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        List<byte[]> stored = missing.isEmpty() ? List.of() : source.multiGet(missing);
+        List<byte[]> ret = new ArrayList<>(keys.size());
+        int i = 0;
+        for (byte[] key : keys) {
+            if (changes.containsKey(key)) {
+                byte[] val = changes.get(key);
+                ret.add(val == null ? null : val.clone());
+            } else {
+                ret.add(stored.get(i++));
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void delete(byte[] key) {
+        if (writeSet.isActive()) {
+            changes.put(key.clone(), null);
+        } else {
+            source.delete(key);
+        }
+    }
+
+    @Override
+    public int get(ByteBuffer key, ByteBuffer value) {
+        if (!writeSet.isVisible()) {
+            return source.get(key, value);
+        }
+        byte[] k = new byte[key.remaining()];
+        key.duplicate().get(k);
+        if (!changes.containsKey(k)) {
+            return source.get(key, value);
+        }
+        key.position(key.limit());
+        byte[] val = changes.get(k);
+        if (val == null) {
+            return NOT_FOUND;
+        }
+        int length = Math.min(val.length, value.remaining());
+        value.put(value.position(), val, 0, length);
+        value.limit(value.position() + length);
+        return val.length;
+    }
+
+    @Override
+    public void put(ByteBuffer key, ByteBuffer value) {
+        if (!writeSet.isActive()) {
+            source.put(key, value);
+            return;
+        }
+        byte[] k = new byte[key.remaining()];
+        byte[] v = new byte[value.remaining()];
+        key.get(k);
+        value.get(v);
+        changes.put(k, v);
+    }
+
+    @Override
+    public void writeBatch(Map<byte[], byte[]> updates) {
+        if (writeSet.isActive()) {
+            for (Map.Entry<byte[], byte[]> entry : updates.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        } else {
+            source.writeBatch(updates);
+        }
+    }
+
+    @Override
+    public Set<byte[]> keys() throws RuntimeException {
+        if (!writeSet.isVisible() || changes.isEmpty()) {
+            return source.keys();
+        }
+        Map<byte[], byte[]> merged = new TreeMap<>(Arrays::compareUnsigned);
+        for (byte[] key : source.keys()) {
+            merged.put(key, key);
+        }
+        changes.forEach((key, val) -> {
+            if (val == null) {
+                merged.remove(key);
+            } else {
+                merged.put(key, key);
+            }
+        });
+        return new HashSet<>(merged.keySet());
+    }
+
+    @Override
+    public List<byte[]> prefixKeyLookup(byte[] key) {
+        List<byte[]> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair.getKey());
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public List<byte[]> prefixValueLookup(byte[] key) {
+        List<byte[]> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair.getValue());
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public List<Pair<byte[], byte[]>> prefixKeyAndValueLookup(byte[] key) {
+        List<Pair<byte[], byte[]>> retList = Lists.newLinkedList();
+        fetchPrefix(key, pair -> {
+            retList.add(pair);
+            return Boolean.FALSE;
+        });
+        return retList;
+    }
+
+    @Override
+    public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        Map<byte[], byte[]> pending = writeSet.isVisible() ? prefixChanges(key) : Map.of();
+        if (pending.isEmpty()) {
+            source.fetchPrefix(key, func);
+            return;
+        }
+        TreeMap<byte[], byte[]> merged = new TreeMap<>(Arrays::compareUnsigned);
+        source.fetchPrefix(key, pair -> {
+            merged.put(pair.getKey(), pair.getValue());
+            return Boolean.FALSE;
+        });
+        pending.forEach((k, v) -> {
+            if (v == null) {
+                merged.remove(k);
+            } else {
+                merged.put(k.clone(), v.clone());
+            }
+        });
+        for (Map.Entry<byte[], byte[]> entry : merged.entrySet()) {
+            if (func.apply(Pair.of(entry.getKey(), entry.getValue()))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void fetchPrefixReverse(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        Map<byte[], byte[]> pending = writeSet.isVisible() ? prefixChanges(key) : Map.of();
+        if (pending.isEmpty()) {
+            source.fetchPrefixReverse(key, func);
+            return;
+        }
+        TreeMap<byte[], byte[]> merged = new TreeMap<>(Arrays::compareUnsigned);
+        source.fetchPrefix(key, pair -> {
+            merged.put(pair.getKey(), pair.getValue());
+            return Boolean.FALSE;
+        });
+        pending.forEach((k, v) -> {
+            if (v == null) {
+                merged.remove(k);
+            } else {
+                merged.put(k.clone(), v.clone());
+            }
+        });
+        for (Map.Entry<byte[], byte[]> entry : merged.descendingMap().entrySet()) {
+            if (func.apply(Pair.of(entry.getKey(), entry.getValue()))) {
+                return;
+            }
+        }
+    }
+
+    private Map<byte[], byte[]> prefixChanges(byte[] prefix) {
+        Map<byte[], byte[]> res = new LinkedHashMap<>();
+        for (Map.Entry<byte[], byte[]> entry : changes.tailMap(prefix, true).entrySet()) {
+            if (!BytesUtils.keyStartsWith(entry.getKey(), prefix)) {
+                break;
+            }
+            res.put(entry.getKey(), entry.getValue());
+        }
+        return res;
+    }
+
+    /**
+     * Buffered changes of the open write set, a null value marks a delete. Only meaningful on the
+     * thread that holds the write set.
+     */
+    public Map<byte[], byte[]> getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * Number of buffered changes of the calling thread's write set
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    void flush() {
+        if (!changes.isEmpty()) {
+            source.writeBatch(changes);
+        }
+    }
+
+    /**
+     * Compare the committed source with the buffered changes.
+     *
+     * @return number of keys that differ
+     */
+    int verify() {
+        int mismatches = 0;
+        for (Map.Entry<byte[], byte[]> entry : changes.entrySet()) {
+            byte[] stored = source.get(entry.getKey());
+            if (!Arrays.equals(stored, entry.getValue())) {
+                mismatches++;
+                log.error("Write set mismatch in {} for key {}: expected {}, stored {}", getName(),
+                        Hex.encodeHexString(entry.getKey()),
+                        entry.getValue() == null ? "null" : Hex.encodeHexString(entry.getValue()),
+                        stored == null ? "null" : Hex.encodeHexString(stored));
+            }
+        }
+        return mismatches;
+    }
+
+    void putChange(byte[] key, byte[] val) {
+        changes.put(key.clone(), val);
+    }
+
+    void removeChange(byte[] key) {
+        changes.remove(key);
+    }
+
+    void clear() {
+        changes.clear();
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.listener;
+
+import io.xdag.config.Constants.MessageType;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers chain events to listeners without making the publisher wait.
+ *
+ * <p>Every subscription owns a bounded buffer drained by its own daemon thread, so a slow listener
+ * only delays itself. When the buffer is full the subscription's {@link OverflowPolicy} decides
+ * what is lost, and the loss is counted in its metrics and logged.
+ */
+@Slf4j
+public class EventBus {
+
+    public enum OverflowPolicy {
+        // when full, the new event is dropped
+        DROP_NEWEST,
+        // when full, the oldest pending event is dropped
+        DROP_OLDEST,
+        // a new event replaces a pending event of the same type, when full the oldest is dropped
+        COALESCE,
+        // new blocks are never dropped and may go past capacity, when full the oldest other event is
+        // dropped, or the new one if only blocks are pending
+        KEEP_BLOCKS
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Attach a listener with its own buffer and dispatch thread
+     *
+     * @param name used for the thread name and in logs
+     */
+    public Subscription subscribe(String name, int capacity, OverflowPolicy policy, Listener listener) {
+        Subscription subscription = new Subscription(name, capacity, policy, listener);
+        subscriptions.add(subscription);
+        subscription.start();
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            subscription.close();
+        }
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Queue message for every subscriber, never blocks on a listener
+     */
+    public void publish(Message message) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(message);
+        }
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return List.copyOf(subscriptions);
+    }
+
+    /**
+     * Stop every dispatch thread, pending events are discarded
+     */
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+        subscriptions.clear();
+    }
+
+    private record Pending(Message message, long publishedAt) {
+    }
+
+    public static final class Subscription {
+
+        @Getter
+        private final String name;
+        @Getter
+        private final int capacity;
+        @Getter
+        private final OverflowPolicy policy;
+        private final Listener listener;
+        private final ArrayDeque<Pending> buffer;
+        private final Thread thread;
+        private volatile boolean closed;
+
+        // guarded by this
+        private long published;
+        private long delivered;
+        private long dropped;
+        private long coalesced;
+        private long failed;
+        private long maxLagMillis;
+
+        private Subscription(String name, int capacity, OverflowPolicy policy, Listener listener) {
+            this.name = name;
+            this.capacity = Math.max(1, capacity);
+            this.policy = policy;
+            this.listener = listener;
+            this.buffer = new ArrayDeque<>(this.capacity);
+            this.thread = new Thread(this::dispatch, "EventBus-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private synchronized void offer(Message message) {
+            if (closed) {
+                return;
+            }
+            published++;
+            Pending pending = new Pending(message, System.nanoTime());
+            if (policy == OverflowPolicy.COALESCE && replace(pending)) {
+                coalesced++;
+                return;
+            }
+            if (buffer.size() >= capacity) {
+                if (policy == OverflowPolicy.KEEP_BLOCKS) {
+                    if (!dropOldestExceptBlocks()) {
+                        if (!isBlock(message)) {
+                            drop(message);
+                            return;
+                        }
+                        if (buffer.size() % capacity == 0) {
+                            log.warn("Listener {} is behind, {} blocks pending", name, buffer.size());
+                        }
+                    }
+                } else if (policy == OverflowPolicy.DROP_NEWEST) {
+                    drop(message);
+                    return;
+                } else {
+                    drop(buffer.pollFirst().message());
+                }
+            }
+            buffer.addLast(pending);
+            notifyAll();
+        }
+
+        private boolean dropOldestExceptBlocks() {
+            Iterator<Pending> it = buffer.iterator();
+            while (it.hasNext()) {
+                Message message = it.next().message();
+                if (!isBlock(message)) {
+                    it.remove();
+                    drop(message);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isBlock(Message message) {
+            return message.getType() == MessageType.NEW_LINK;
+        }
+
+        private void drop(Message message) {
+            dropped++;
+            if (dropped == 1 || dropped % capacity == 0) {
+                log.warn("Listener {} is behind, dropped {} events so far, the last one {}", name, dropped,
+                        message.getType());
+            }
+        }
+
+        private boolean replace(Pending pending) {
+            MessageType type = pending.message().getType();
+            Iterator<Pending> it = buffer.iterator();
+            while (it.hasNext()) {
+                if (it.next().message().getType() == type) {
+                    it.remove();
+                    buffer.addLast(pending);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized Pending take() throws InterruptedException {
+            while (buffer.isEmpty() && !closed) {
+                wait();
+            }
+            Pending pending = buffer.pollFirst();
+            if (pending != null) {
+                long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pending.publishedAt());
+                maxLagMillis = Math.max(maxLagMillis, lag);
+            }
+            return pending;
+        }
+
+        private void dispatch() {
+            while (!closed) {
+                Pending pending;
+                try {
+                    pending = take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (pending == null) {
+                    continue;
+                }
+                try {
+                    listener.onMessage(pending.message());
+                    synchronized (this) {
+                        delivered++;
+                    }
+                } catch (Exception e) {
+                    synchronized (this) {
+                        failed++;
+                    }
+                    log.error("Listener {} failed on {}: {}", name, pending.message().getType(), e.getMessage(), e);
+                }
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+                buffer.clear();
+                notifyAll();
+            }
+            thread.interrupt();
+        }
+
+        public synchronized int getPending() {
+            return buffer.size();
+        }
+
+        public synchronized long getPublished() {
+            return published;
+        }
+
+        public synchronized long getDelivered() {
+            return delivered;
+        }
+
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        public synchronized long getCoalesced() {
+            return coalesced;
+        }
+
+        public synchronized long getFailed() {
+            return failed;
+        }
+
+        public synchronized long getMaxLagMillis() {
+            return maxLagMillis;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s[pending=%d, published=%d, delivered=%d, dropped=%d, coalesced=%d, failed=%d, maxLag=%dms]",
+                    name, buffer.size(), published, delivered, dropped, coalesced, failed, maxLagMillis);
+        }
+    }
+}
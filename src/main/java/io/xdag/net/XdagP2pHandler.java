@@ -357,7 +357,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
 
         log.debug("processNewBlock:{} from node {}", block.getHashLow(), channel.getRemoteAddress());
         BlockWrapper bw = new BlockWrapper(block, msg.getTtl() - 1, channel.getRemotePeer(), false);
-        syncMgr.validateAndAddNewBlock(bw);
+        syncMgr.submitBlock(bw);
     }
 
     protected void processSyncBlock(SyncBlockMessage msg) {
@@ -365,7 +365,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
 
         log.debug("processSyncBlock:{}  from node {}", block.getHashLow(), channel.getRemoteAddress());
         BlockWrapper bw = new BlockWrapper(block, msg.getTtl() - 1, channel.getRemotePeer(), true);
-        syncMgr.validateAndAddNewBlock(bw);
+        syncMgr.submitBlock(bw);
     }
 
     /**
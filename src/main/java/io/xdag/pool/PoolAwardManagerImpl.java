@@ -180,10 +180,15 @@ public class PoolAwardManagerImpl extends AbstractXdagLifecycle implements PoolA
                     hashlow.toHexString());
             return -3;
         }
-        if (kernel.getBlockchain().getMemOurBlocks().get(hashlow) == null) {
+        // the mined block index keeps the key of our main blocks, the other lookups scan our blocks
+        MinedBlock minedBlock = blockchain.getMinedBlock(block.getInfo().getHeight());
+        Integer memKeyPos = kernel.getBlockchain().getMemOurBlocks().get(HashLow.of(hashlow));
+        if (minedBlock != null && minedBlock.getHashlow().equals(hashlow) && minedBlock.getKeyIndex() >= 0) {
+            keyPos = minedBlock.getKeyIndex();
+        } else if (memKeyPos == null) {
             keyPos = kernel.getBlockStore().getKeyIndexByHash(hashlow);
         } else {
-            keyPos = kernel.getBlockchain().getMemOurBlocks().get(hashlow);
+            keyPos = memKeyPos;
         }
         if (keyPos < 0) {
             log.debug("keyPos < 0,keyPos = {}", keyPos);
@@ -208,11 +213,16 @@ public class PoolAwardManagerImpl extends AbstractXdagLifecycle implements PoolA
         TransactionInfoSender transactionInfoSender = new TransactionInfoSender();
         transactionInfoSender.setPreHash(preHash);
         transactionInfoSender.setShare(share);
-        doPayments(hashlow, allAmount, poolWalletAddress, keyPos, transactionInfoSender);
+        if (doPayments(hashlow, allAmount, poolWalletAddress, keyPos, transactionInfoSender)) {
+            blockchain.setMinedBlockPaid(block.getInfo().getHeight());
+        }
         return 0;
     }
 
-    public void doPayments(Bytes32 hashLow, XAmount allAmount, Bytes32 poolWalletAddress, int keyPos,
+    /**
+     * @return true if the reward transaction was sent
+     */
+    public boolean doPayments(Bytes32 hashLow, XAmount allAmount, Bytes32 poolWalletAddress, int keyPos,
                            TransactionInfoSender transactionInfoSender) {
         if (paymentsToNodesMap.size() == 10) {
             StringBuilder txHash = commands.xferToNode(paymentsToNodesMap);
@@ -231,7 +241,7 @@ public class PoolAwardManagerImpl extends AbstractXdagLifecycle implements PoolA
             log.error("Block reward distribution failed.The fundRation and nodeRation parameter settings are " +
                     "unreasonable.Your fundRation:{} ," +
                     "nodeRation:{}", fundRation, nodeRation);
-            return;
+            return false;
         }
         // Amount output: community, pool and node
         ArrayList<Address> receipt = new ArrayList<>(2);
@@ -252,8 +262,11 @@ public class PoolAwardManagerImpl extends AbstractXdagLifecycle implements PoolA
             log.debug("The balance of block {} is insufficient and rewards will not be distributed. Maybe this block " +
                             "has been rollback. send balance:{}",
                     hashLow.toHexString(), sendAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+            receipt.clear();
+            return false;
         }
         receipt.clear();
+        return true;
     }
 
     public void transaction(Bytes32 hashLow, ArrayList<Address> receipt, XAmount sendAmount, int keyPos,
@@ -178,6 +178,15 @@ public interface XdagApi extends XdagLifecycle {
      */
     String xdag_getRewardByNumber(String bnOrId);
 
+    /**
+     * Get the state hash of all balances after the main block at a height. Two nodes with the same
+     * state hash at a height agree on every balance there.
+     *
+     * @param bnOrId Main block height
+     * @return State hash as hex string, null if not recorded at that height
+     */
+    String xdag_getStateHash(String bnOrId);
+
     /**
      * Send a raw transaction to the network.
      *
@@ -186,6 +195,15 @@ public interface XdagApi extends XdagLifecycle {
      */
     String xdag_sendRawTransaction(String rawData);
 
+    /**
+     * Send several raw transactions in one call. Account transactions may come with consecutive
+     * nonces in any order, those ahead of the next nonce wait in the pending pool.
+     *
+     * @param rawData Raw data of each transaction
+     * @return Transaction hash or error of each transaction, in the given order
+     */
+    List<String> xdag_sendRawTransactions(List<String> rawData);
+
     /**
      * Get the list of network connections.
      *
@@ -101,6 +101,11 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
         }
     }
 
+    // replica nodes follow the store of a primary and have no sync manager to submit blocks to
+    private boolean isReplica() {
+        return kernel.getConfig().getNodeSpec().isStoreReplicaEnabled();
+    }
+
     @Override
     protected void doStart() {
         try {
@@ -358,12 +363,75 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
         }
     }
 
+    @Override
+    public String xdag_getStateHash(String bnOrId) {
+        try {
+            Bytes32 stateHash = blockchain.getStateHash(Long.parseLong(bnOrId));
+            return stateHash == null ? null : stateHash.toHexString();
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
     @Override
     public String xdag_sendRawTransaction(String rawData) {
         // 1. build transaction
         // 2. try to add blockchain
         // 3. check from address if valid.
+        if (isReplica()) {
+            return "INVALID_BLOCK read-only replica node";
+        }
         Block block = new Block(new XdagBlock(Hex.decode(rawData)));
+        String error = checkRawTransaction(block);
+        if (error != null) {
+            return error;
+        }
+        BlockWrapper blockWrapper = new BlockWrapper(block, kernel.getConfig().getNodeSpec().getTTL());
+        ImportResult result = block.getTxNonceField() != null
+                ? kernel.getSyncMgr().submitTransaction(blockWrapper)
+                : kernel.getSyncMgr().importBlock(blockWrapper);
+        return toSendResult(block, result);
+    }
+
+    @Override
+    public List<String> xdag_sendRawTransactions(List<String> rawData) {
+        List<String> results = Lists.newArrayListWithCapacity(rawData.size());
+        if (isReplica()) {
+            rawData.forEach(raw -> results.add("INVALID_BLOCK read-only replica node"));
+            return results;
+        }
+        // account transactions are submitted together so that their nonces can come in any order
+        List<Integer> batchIndexes = Lists.newArrayList();
+        List<BlockWrapper> batch = Lists.newArrayList();
+        for (String raw : rawData) {
+            Block block = new Block(new XdagBlock(Hex.decode(raw)));
+            String error = checkRawTransaction(block);
+            BlockWrapper blockWrapper = new BlockWrapper(block, kernel.getConfig().getNodeSpec().getTTL());
+            if (error != null) {
+                results.add(error);
+            } else if (block.getTxNonceField() != null) {
+                batchIndexes.add(results.size());
+                batch.add(blockWrapper);
+                results.add(null);
+            } else {
+                results.add(toSendResult(block, kernel.getSyncMgr().importBlock(blockWrapper)));
+            }
+        }
+        if (!batch.isEmpty()) {
+            List<ImportResult> batchResults = kernel.getSyncMgr().submitTransactions(batch);
+            for (int i = 0; i < batch.size(); i++) {
+                results.set(batchIndexes.get(i), toSendResult(batch.get(i).getBlock(), batchResults.get(i)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Checks of a raw transaction before it is submitted
+     *
+     * @return null if the transaction can be submitted, otherwise the error to return
+     */
+    private String checkRawTransaction(Block block) {
         ImportResult result;
         List<Address> inputs = block.getInputs();
         int inputSize = inputs.size();
@@ -388,29 +456,22 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
                     return "PLEASE DOWNLOAD THE LATEST WALLET " + result.getErrorInfo();
                 }
                 blockNonce = block.getTxNonceField().getTransactionNonce();
-                if (blockNonce.compareTo(legalNonce) != 0) {
+                // later nonces wait in the pending pool for the ones before them
+                if (blockNonce.compareTo(legalNonce) < 0) {
                     result = ImportResult.INVALID_BLOCK;
                     return "PLEASE FILL IN THE CORRECT NONCE " + result.getErrorInfo();
                 }
             }
         }
-        if (checkTransaction(block)) {
-            result = kernel.getSyncMgr().importBlock(
-                    new BlockWrapper(block, kernel.getConfig().getNodeSpec().getTTL()));
-        } else {
-            result = ImportResult.INVALID_BLOCK;
+        if (!checkTransaction(block)) {
+            return toSendResult(block, ImportResult.INVALID_BLOCK);
         }
-        if(result == ImportResult.IMPORTED_NOT_BEST && block.getTxNonceField() != null) {
-            List<Address> in = block.getInputs();
-            UInt64 blockNonce = block.getTxNonceField().getTransactionNonce();
-            for (Address input : in) {
-                if (input.getType() == XDAG_FIELD_INPUT) {
-                    byte[] addr = BytesUtils.byte32ToArray(input.getAddress());
-                    kernel.getAddressStore().updateTxQuantity(addr, blockNonce);
-                }
-            }
-        }
-        return result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST ?
+        return null;
+    }
+
+    private String toSendResult(Block block, ImportResult result) {
+        return result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST
+                || result == ImportResult.PENDING ?
                 BasicUtils.hash2Address(block.getHash()) : "INVALID_BLOCK " + result.getErrorInfo();
     }
 
@@ -418,6 +479,10 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
     public List<NetConnResponse> xdag_netConnectionList() {
         List<NetConnResponse> netConnResponseList = Lists.newArrayList();
         NetConnResponse.NetConnResponseBuilder netConnDTOBuilder = NetConnResponse.builder();
+        if (kernel.getChannelMgr() == null) {
+            // replica nodes have no p2p network
+            return netConnResponseList;
+        }
         List<Channel> channelList = kernel.getChannelMgr().getActiveChannels();
         for (Channel channel : channelList) {
             netConnDTOBuilder.connectTime(kernel.getConfig().getSnapshotSpec().getSnapshotTime())
@@ -732,6 +797,11 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
             UInt64 txNonce,
             ProcessResponse processResponse
     ) {
+        if (isReplica()) {
+            processResponse.setCode(ERR_XDAG_TX);
+            processResponse.setErrMsg("read-only replica node");
+            return;
+        }
         XAmount amount;
         try {
             amount = XAmount.of(BigDecimal.valueOf(sendValue), XUnit.XDAG);
@@ -814,7 +884,7 @@ public class XdagApiImpl extends AbstractXdagLifecycle implements XdagApi {
             ImportResult result = kernel.getSyncMgr().validateAndAddNewBlock(blockWrapper);
             if (result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST) {
                 kernel.getChannelMgr().sendNewBlock(blockWrapper);
-                Block block = new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray()));
+                Block block = new Block(blockWrapper.getBlock().getXdagBlock());
                 List<Address> inputs = block.getInputs();
                 UInt64 blockNonce = block.getTxNonceField().getTransactionNonce();
                 for (Address input : inputs) {
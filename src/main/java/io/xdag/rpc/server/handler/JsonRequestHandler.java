@@ -30,6 +30,8 @@ import io.xdag.rpc.server.protocol.JsonRpcRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import static io.xdag.rpc.server.handler.JsonRpcHandler.MAPPER;
@@ -49,9 +51,11 @@ public class JsonRequestHandler implements JsonRpcRequestHandler {
             "xdag_personal_sendTransaction",
             "xdag_personal_sendSafeTransaction",
             "xdag_sendRawTransaction",
+            "xdag_sendRawTransactions",
             "xdag_netConnectionList",
             "xdag_netType",
             "xdag_getRewardByNumber",
+            "xdag_getStateHash",
             "xdag_syncing",
             "xdag_protocolVersion",
             "xdag_getBlocksByNumber",
@@ -142,10 +146,22 @@ public class JsonRequestHandler implements JsonRpcRequestHandler {
                     validateParams(params, "Missing block number parameter");
                     yield xdagApi.xdag_getRewardByNumber(params[0].toString());
                 }
+                case "xdag_getStateHash" -> {
+                    validateParams(params, "Missing block number parameter");
+                    yield xdagApi.xdag_getStateHash(params[0].toString());
+                }
                 case "xdag_sendRawTransaction" -> {
                     validateParams(params, "Missing raw data parameter");
                     yield xdagApi.xdag_sendRawTransaction(params[0].toString());
                 }
+                case "xdag_sendRawTransactions" -> {
+                    validateParams(params, "Missing raw data parameter");
+                    List<String> rawData = new ArrayList<>(params.length);
+                    for (Object param : params) {
+                        rawData.add(param.toString());
+                    }
+                    yield xdagApi.xdag_sendRawTransactions(rawData);
+                }
                 case "xdag_personal_sendTransaction" -> {
                     validateParams(params, "Missing transaction arguments or passphrase");
                     if (params.length < 2) {
@@ -68,6 +68,15 @@ public final class BlockUtils {
         return BytesUtils.merge(BlockStore.BLOCK_HEIGHT, BytesUtils.longToBytes(height, false));
     }
 
+    /**
+     * Generates a key for our main block lookup by height
+     * @param height Main block height
+     * @return Generated key as byte array
+     */
+    public static byte[] getMinedKey(long height) {
+        return BytesUtils.merge(BlockStore.MINED_BLOCK, BytesUtils.longToBytes(height, false));
+    }
+
     /**
      * Extracts block index from a key
      * @param key Source key
@@ -34,6 +34,7 @@ import org.apache.tuweni.units.bigints.UInt64;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Utility class for byte array operations and conversions
@@ -333,6 +334,22 @@ public class BytesUtils {
         return true;
     }
 
+    /**
+     * Smallest key after every key starting with prefix
+     * @param prefix Key prefix
+     * @return The key, or null if the prefix is all 0xff and no such key exists
+     */
+    public static byte[] prefixEnd(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xff) {
+                byte[] end = Arrays.copyOf(prefix, i + 1);
+                end[i]++;
+                return end;
+            }
+        }
+        return null;
+    }
+
     /**
      * Checks if a byte array contains only zeros
      * @param input Array to check
@@ -24,20 +24,25 @@
 
 package io.xdag.utils;
 
+import io.xdag.crypto.Hash;
+import java.io.IOException;
+import java.security.MessageDigest;
 import org.apache.tuweni.bytes.Bytes;
 import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.io.DigestOutputStream;
 import org.bouncycastle.util.Arrays;
 
-import java.io.IOException;
-
 /**
  * Utility class for SHA256 hash operations
+ *
+ * <p>Hashing runs on a JCA digest. Its state after the fixed part of a block is the midstate:
+ * {@link #sha256FinalWith(Bytes)} finishes a copy of it, so the first 15 fields are hashed once
+ * per task instead of once per share. A BouncyCastle digest is fed alongside only to export the
+ * state with {@link #getState()}.
  */
 public class XdagSha256Digest {
 
-    private SHA256Digest sha256Digest;
-    private DigestOutputStream outputStream;
+    private MessageDigest digest;
+    private SHA256Digest stateDigest;
 
     /**
      * Default constructor that initializes SHA256 digest
@@ -51,16 +56,16 @@ public class XdagSha256Digest {
      * @param other The XdagSha256Digest instance to copy from
      */
     public XdagSha256Digest(XdagSha256Digest other) {
-        sha256Digest = new SHA256Digest(other.sha256Digest);
-        outputStream = new DigestOutputStream(sha256Digest);
+        digest = other.midstate();
+        stateDigest = new SHA256Digest(other.stateDigest);
     }
 
     /**
      * Initialize SHA256 digest and output stream
      */
     public void sha256Init() {
-        sha256Digest = new SHA256Digest();
-        outputStream = new DigestOutputStream(sha256Digest);
+        digest = Hash.newDigest();
+        stateDigest = new SHA256Digest();
     }
 
     /**
@@ -68,7 +73,9 @@ public class XdagSha256Digest {
      * @param in Input bytes to update
      */
     public void sha256Update(Bytes in) throws IOException {
-        outputStream.write(in.toArray());
+        byte[] bytes = in.toArrayUnsafe();
+        digest.update(bytes);
+        stateDigest.update(bytes, 0, bytes.length);
     }
 
     /**
@@ -77,13 +84,21 @@ public class XdagSha256Digest {
      * @return Reversed double SHA256 hash result
      */
     public byte[] sha256Final(Bytes in) throws IOException {
-        outputStream.write(in.toArray());
-        byte[] hash = outputStream.getDigest();
-        sha256Digest.reset();
-        outputStream.write(hash);
-        byte[] origin = outputStream.getDigest();
-        origin = Arrays.reverse(origin);
-        return origin;
+        in.update(digest);
+        stateDigest.reset();
+        return Arrays.reverse(Hash.finishTwice(digest));
+    }
+
+    /**
+     * Same as {@link #sha256Final(Bytes)} on a copy of the current state, this digest is unchanged.
+     * Safe to call from several threads once no more updates are made.
+     * @param in Input bytes to hash after the midstate
+     * @return Reversed double SHA256 hash result
+     */
+    public byte[] sha256FinalWith(Bytes in) {
+        MessageDigest copy = midstate();
+        in.update(copy);
+        return Arrays.reverse(Hash.finishTwice(copy));
     }
 
     /**
@@ -92,7 +107,7 @@ public class XdagSha256Digest {
      * @return 32 bytes state with adjusted endianness
      */
     public byte[] getState() {
-        byte[] encodedState = sha256Digest.getEncodedState();
+        byte[] encodedState = stateDigest.getEncodedState();
         byte[] state = new byte[32];
         System.arraycopy(encodedState, encodedState.length - 32 - 4, state, 0, 32);
         for (int i = 0; i < 32; i += 4) {
@@ -102,4 +117,12 @@ public class XdagSha256Digest {
         return state;
     }
 
+    private MessageDigest midstate() {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest can't be cloned", e);
+        }
+    }
+
 }
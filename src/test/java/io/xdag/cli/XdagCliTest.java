@@ -100,6 +100,7 @@ public class XdagCliTest {
                     --importprivatekey <key>          import hex key
                     --makesnapshot <covertuint>       make snapshot
                     --password <password>             wallet password
+                    --replica                         serve rpc from a read-only replica of the local node's store
                     --version                         show version
                 """;
         assertEquals(helpStr.replaceAll("\\R", ""),
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import io.xdag.BlockBuilder;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.BlockWrapper;
+import io.xdag.core.Blockchain;
+import io.xdag.core.ImportResult;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.crypto.Sign;
+import io.xdag.utils.XdagTime;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+
+public class BlockImportPipelineTest {
+
+    private final Config config = new DevnetConfig();
+    private final KeyPair key = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+    private final List<Bytes32> committed = Collections.synchronizedList(new ArrayList<>());
+    private Blockchain blockchain;
+    private BlockImportPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        blockchain = Mockito.mock(Blockchain.class);
+        pipeline = new BlockImportPipeline(blockchain, bw -> {
+            assertNotNull(bw.getPrepared());
+            committed.add(bw.getBlock().getHashLow());
+            return ImportResult.IMPORTED_NOT_BEST;
+        }, 4);
+        pipeline.start();
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.stop();
+    }
+
+    @Test
+    public void testCommitInSubmissionOrder() {
+        Mockito.when(blockchain.preValidate(any(Block.class))).thenReturn(true);
+        long time = XdagTime.getCurrentTimestamp();
+        List<Bytes32> expected = new ArrayList<>();
+        List<CompletableFuture<ImportResult>> results = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            Block block = BlockBuilder.generateAddressBlock(config, key, time + i);
+            expected.add(block.getHashLow());
+            results.add(pipeline.submit(new BlockWrapper(block, 1)));
+        }
+        results.forEach(r -> assertEquals(ImportResult.IMPORTED_NOT_BEST, r.join()));
+        assertEquals(expected, committed);
+        assertEquals(64, pipeline.getValidateStats().getCount());
+        assertEquals(64, pipeline.getCommitStats().getCount());
+    }
+
+    @Test
+    public void testRejectedBlockIsNotCommitted() {
+        long time = XdagTime.getCurrentTimestamp();
+        Block good = BlockBuilder.generateAddressBlock(config, key, time);
+        Block bad = BlockBuilder.generateAddressBlock(config, key, time + 1);
+        Mockito.when(blockchain.preValidate(any(Block.class)))
+                .thenAnswer(inv -> !((Block) inv.getArgument(0)).getHashLow().equals(bad.getHashLow()));
+
+        assertEquals(ImportResult.INVALID_BLOCK, pipeline.submit(new BlockWrapper(bad, 1)).join());
+        assertEquals(ImportResult.IMPORTED_NOT_BEST, pipeline.submit(new BlockWrapper(good, 1)).join());
+        assertEquals(Collections.singletonList(good.getHashLow()), committed);
+        assertEquals(1, pipeline.getValidateStats().getRejected());
+    }
+}
@@ -24,14 +24,17 @@
 
 package io.xdag.core;
 
+import io.xdag.crypto.Hash;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.SimpleEncoder;
+import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.Test;
 
 import java.nio.ByteOrder;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class BlockTest {
@@ -75,6 +78,49 @@ public class BlockTest {
           //assertEquals(first.getXdagBlock().getData(), new XdagBlock(Hex.decode(blockRawdata)).getData());//A 'block' create by rawdata, its xdagblock will not change.
      }
 
+     @Test
+     public void testLazyFieldsMatchCopiedParse() {
+          byte[] raw = Hex.decode("000000000000000038324654050000004d3782fa780100000000000000000000"
+                  + "c86357a2f57bb9df4f8b43b7a60e24d1ccc547c606f2d7980000000000000000"
+                  + "afa5fec4f56f7935125806e235d5280d7092c6840f35b397000000000a000000"
+                  + "a08202c3f60123df5e3a973e21a2dd0418b9926a2eb7c4fc000000000a000000"
+                  + "08b65d2e2816c0dea73bf1b226c95c2ae3bc683574f559bbc5dd484864b1dbeb"
+                  + "f02a041d5f7ff83a69c0e35e7eeeb64496f76f69958485787d2c50fd8d9614e6"
+                  + "7c2b69c79eddeff5d05b2bfc1ee487b9c691979d315586e9928c04ab3ace15bb"
+                  + "3866f1a25ed00aa18dde715d2a4fc05147d16300c31fefc0f3ebe4d77c63fcbb"
+                  + "ec6ece350f6be4c84b8705d3b49866a83986578a3a20e876eefe74de0c094bac"
+                  + "0".repeat(7 * 64));
+          byte[] copy = raw.clone();
+          XdagBlock xdagBlock = new XdagBlock(raw);
+          Block first = new Block(xdagBlock);
+          Block second = new Block(xdagBlock);
+          assertEquals(first.getHash(), second.getHash());
+          assertEquals(Bytes32.wrap(Hash.hashTwice(Bytes.wrap(copy)).reverse()), first.getHash());
+
+          long sum = 0;
+          for (int i = 0; i < XdagBlock.XDAG_BLOCK_SIZE / 8; i++) {
+               sum += Bytes.wrap(copy).getLong(i * 8, ByteOrder.LITTLE_ENDIAN);
+          }
+          assertEquals(sum, xdagBlock.getSum());
+
+          int links = 0;
+          for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+               XdagField field = xdagBlock.getField(i);
+               if (field.getType() != XdagField.FieldType.XDAG_FIELD_IN
+                       && field.getType() != XdagField.FieldType.XDAG_FIELD_OUT) {
+                    continue;
+               }
+               Address lazy = new Address(field, false);
+               Address copied = new Address(Bytes32.wrap(field.getData().reverse()), field.getType(), false);
+               assertEquals(copied.getAddress(), lazy.getAddress());
+               assertEquals(copied.getAmount(), lazy.getAmount());
+               assertEquals(copied.getData(), lazy.getData());
+               links++;
+          }
+          assertEquals(3, links);
+          assertArrayEquals(copy, raw);
+     }
+
     /**
      Config config = new Config();
      Wallet xdagWallet;
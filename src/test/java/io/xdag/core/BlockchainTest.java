@@ -28,6 +28,7 @@ import com.google.common.collect.Lists;
 import io.xdag.Kernel;
 import io.xdag.Wallet;
 import io.xdag.config.Config;
+import io.xdag.config.Constants;
 import io.xdag.config.DevnetConfig;
 import io.xdag.crypto.Hash;
 import io.xdag.crypto.Keys;
@@ -44,6 +45,7 @@ import io.xdag.utils.XdagTime;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.units.bigints.UInt256;
 import org.apache.tuweni.units.bigints.UInt64;
 import org.hyperledger.besu.crypto.KeyPair;
 import org.hyperledger.besu.crypto.SECPPrivateKey;
@@ -82,6 +84,7 @@ public class BlockchainTest {
     String pwd;
     Kernel kernel;
     DatabaseFactory dbFactory;
+    WriteSet writeSet;
 
     BigInteger private_1 = new BigInteger("c85ef7d79691fe79573b1a7064c19c1a9819ebdbd1faaab1a8ec92344438aaf4", 16);
     BigInteger private_2 = new BigInteger("10a55f0c18c46873ddbf9f15eddfc06f10953c601fd144474131199e04148046", 16);
@@ -110,9 +113,12 @@ public class BlockchainTest {
 
         kernel = new Kernel(config, key);
         dbFactory = new RocksdbFactory(config);
+        // every main block is applied through the write set, checked against the db after commit
+        writeSet = new WriteSet();
+        writeSet.setVerify(true);
 
         BlockStore blockStore = new BlockStoreImpl(
-                dbFactory.getDB(DatabaseName.INDEX),
+                new WriteSetKVSource(dbFactory.getDB(DatabaseName.INDEX), writeSet),
                 dbFactory.getDB(DatabaseName.TIME),
                 dbFactory.getDB(DatabaseName.BLOCK),
                 dbFactory.getDB(DatabaseName.TXHISTORY));
@@ -121,7 +127,7 @@ public class BlockchainTest {
         OrphanBlockStore orphanBlockStore = new OrphanBlockStoreImpl(dbFactory.getDB(DatabaseName.ORPHANIND));
         orphanBlockStore.reset();
 
-        AddressStore addressStore = new AddressStoreImpl(dbFactory.getDB(DatabaseName.ADDRESS));
+        AddressStore addressStore = new AddressStoreImpl(new WriteSetKVSource(dbFactory.getDB(DatabaseName.ADDRESS), writeSet));
         addressStore.reset();
 
         TransactionHistoryStore txHistoryStore = Mockito.mock(TransactionHistoryStore.class);
@@ -131,11 +137,13 @@ public class BlockchainTest {
         kernel.setAddressStore(addressStore);
         kernel.setTxHistoryStore(txHistoryStore);
         kernel.setWallet(wallet);
+        kernel.setWriteSet(writeSet);
     }
 
     @After
     public void tearDown() throws IOException {
         wallet.delete();
+        assertEquals(0, writeSet.getMismatches());
     }
 
     @Test
@@ -216,6 +224,39 @@ public class BlockchainTest {
         });
     }
 
+    @Test
+    public void testStatusFlushedInBatches() {
+        long generateTime = 1600616700000L;
+        KeyPair key = KeyPair.create(secretary_1, Sign.CURVE, Sign.CURVE_NAME);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        BlockStore blockStore = kernel.getBlockStore();
+        assertTrue(blockStore.isStatusOpen());
+
+        // imports only change the stats in memory
+        Block addressBlock = generateAddressBlock(config, key, generateTime);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        XdagStats stored = blockStore.getXdagStatus();
+        assertTrue(stored == null || stored.nblocks == 0);
+
+        blockchain.flushStatus();
+        assertEquals(1, blockStore.getXdagStatus().nblocks);
+        assertArrayEquals(addressBlock.getHashLow().toArray(), blockStore.getXdagTopStatus().getTop());
+
+        // a crash after more imports, the block count is recounted on the next start
+        generateTime += 64000L;
+        Block secondBlock = generateAddressBlock(config, key, generateTime);
+        assertSame(IMPORTED_NOT_BEST, blockchain.tryToConnect(secondBlock));
+        assertEquals(1, blockStore.getXdagStatus().nblocks);
+        MockBlockchain restarted = new MockBlockchain(kernel);
+        assertEquals(2, restarted.getXdagStats().nblocks);
+        assertEquals(2, blockStore.getXdagStatus().nblocks);
+        assertEquals(blockchain.getXdagStats().nnoref, restarted.getXdagStats().nnoref);
+        assertEquals(2, blockStore.getXdagStatus().nnoref);
+
+        restarted.stopCheckMain();
+        assertFalse(blockStore.isStatusOpen());
+    }
+
     @Test
     public void testNew2NewTransactionBlock() {
         KeyPair addrKey = KeyPair.create(secretary_1, Sign.CURVE, Sign.CURVE_NAME);
@@ -387,6 +428,157 @@ public class BlockchainTest {
 
     }
 
+    @Test
+    public void testUnSetMainWithUndoRecord() {
+        KeyPair addrKey = KeyPair.create(secretary_1, Sign.CURVE, Sign.CURVE_NAME);
+        KeyPair poolKey = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        Block addressBlock = generateAddressBlock(config, addrKey, generateTime);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        blockchain.getAddressStore().updateBalance(Keys.toBytesAddress(poolKey), XAmount.of(1000, XUnit.XDAG));
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        // the balances were set outside any main block, seed the state hashes again like an operator would
+        blockchain.rebuildStateHash();
+        List<Bytes32> created = Lists.newArrayList(addressBlock.getHashLow());
+        List<Address> pending = Lists.newArrayList();
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 1; i <= 10; i++) {
+            generateTime += 64000L;
+            pending.clear();
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            pending.add(new Address(keyPair2Hash(wallet.getDefKey()), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+            blockchain.tryToConnect(extraBlock);
+            created.add(extraBlock.getHashLow());
+            ref = extraBlock.getHashLow();
+        }
+        Address from = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(poolKey)), XDAG_FIELD_INPUT, true);
+        Address to = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(addrKey)), XDAG_FIELD_OUTPUT, true);
+        long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+        Block txBlock = generateNewTransactionBlock(config, poolKey, xdagTime - 1, from, to, XAmount.of(100, XUnit.XDAG), UInt64.ONE);
+        blockchain.tryToConnect(txBlock);
+        created.add(txBlock.getHashLow());
+        pending.clear();
+        pending.add(new Address(txBlock.getHashLow(), false));
+        for (int i = 1; i <= 16; i++) {
+            generateTime += 64000L;
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            pending.add(new Address(keyPair2Hash(wallet.getDefKey()), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+            xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+            blockchain.tryToConnect(extraBlock);
+            created.add(extraBlock.getHashLow());
+            ref = extraBlock.getHashLow();
+            pending.clear();
+        }
+
+        // main blocks from the one that applied the transaction up to the top
+        BlockStore blockStore = kernel.getBlockStore();
+        Block txMain = blockchain.getBlockByHash(Bytes32.wrap(blockStore.getBlockInfoByHash(txBlock.getHashLow()).getInfo().getRef()), false);
+        long top = blockchain.getXdagStats().nmain;
+        List<Bytes32> mains = Lists.newArrayList();
+        for (long h = txMain.getInfo().getHeight(); h <= top; h++) {
+            assertNotNull(blockStore.getUndoRecord(h));
+            mains.add(blockchain.getBlockByHeight(h).getHashLow());
+        }
+        // our main blocks are indexed as they are set
+        List<MinedBlock> mined = blockchain.getMinedBlocks(3);
+        assertEquals(3, mined.size());
+        for (int i = 0; i < mined.size(); i++) {
+            assertEquals(top - i, mined.get(i).getHeight());
+            assertEquals(blockchain.getBlockByHeight(top - i).getHashLow(), mined.get(i).getHashlow());
+            assertEquals(0, mined.get(i).getKeyIndex());
+        }
+        assertEquals(mined.get(0).getHashlow(), blockchain.listMinedBlocks(1).get(0).getHashLow());
+        // a node that made these blocks before the index existed finds them on demand, with the same rewards
+        List<MinedBlock> indexed = Lists.newArrayList();
+        for (long h = 1; h <= top; h++) {
+            if (blockStore.getMinedBlock(h) != null) {
+                indexed.add(blockStore.getMinedBlock(h));
+                blockStore.removeMinedBlock(h);
+            }
+        }
+        long floor = blockStore.getMinedFloor();
+        blockStore.saveMinedFloor(top + 1);
+        List<MinedBlock> backfilled = blockchain.getMinedBlocks(3);
+        assertEquals(3, backfilled.size());
+        for (int i = 0; i < backfilled.size(); i++) {
+            assertEquals(mined.get(i).getHeight(), backfilled.get(i).getHeight());
+            assertEquals(mined.get(i).getHashlow(), backfilled.get(i).getHashlow());
+            assertEquals(mined.get(i).getReward(), backfilled.get(i).getReward());
+        }
+        assertEquals(top - 2, blockStore.getMinedFloor());
+        indexed.forEach(blockStore::saveMinedBlock);
+        blockStore.saveMinedFloor(floor);
+        // the state hash kept per main block is the one of all balances, moved on from the seed
+        UInt256 stateHash = UInt256.ZERO;
+        for (Bytes32 hashlow : created) {
+            stateHash = stateHash.add(StateHash.ofBlock(hashlow, blockchain.getBlockByHash(hashlow, false).getInfo().getAmount()));
+        }
+        for (KeyPair k : List.of(poolKey, addrKey)) {
+            byte[] address = Keys.toBytesAddress(k);
+            stateHash = stateHash.add(StateHash.ofAddress(address, blockchain.getAddressStore().getBalanceByAddress(address)));
+        }
+        Bytes32 topStateHash = blockchain.getStateHash(top);
+        assertEquals(stateHash, UInt256.fromBytes(topStateHash));
+        assertEquals(stateHash, UInt256.fromBytes(blockchain.rebuildStateHash()));
+        List<Bytes32> checked = Lists.newArrayList(mains);
+        checked.add(txBlock.getHashLow());
+        List<String> before = chainState(blockchain, checked, poolKey, addrKey);
+        // the next transaction of the pool is submitted meanwhile, outside any write set
+        byte[] poolAddress = Keys.toBytesAddress(poolKey);
+        blockchain.getAddressStore().updateTxQuantity(poolAddress, UInt64.valueOf(2));
+
+        // unwind through the undo records
+        Block target = blockchain.getBlockByHeight(txMain.getInfo().getHeight() - 1);
+        blockchain.unWindMain(target);
+        assertEquals(UInt64.valueOf(2), blockchain.getAddressStore().getTxQuantity(poolAddress));
+        assertNull(blockStore.getUndoRecord(top));
+        assertNull(blockchain.getMinedBlock(top));
+        assertNull(blockchain.getStateHash(top));
+        assertEquals(txMain.getInfo().getHeight() - 1, blockchain.getMinedBlocks(1).get(0).getHeight());
+        List<String> undone = chainState(blockchain, checked, poolKey, addrKey);
+        assertEquals("1000.00", blockchain.getAddressStore().getBalanceByAddress(Keys.toBytesAddress(poolKey))
+                .toDecimal(2, XUnit.XDAG).toString());
+
+        for (Bytes32 hash : mains) {
+            blockchain.setMain(blockchain.getBlockByHash(hash, true));
+        }
+        assertEquals(before, chainState(blockchain, checked, poolKey, addrKey));
+        assertEquals(topStateHash, blockchain.getStateHash(top));
+
+        // the same unwind walking the DAG gives the same state
+        for (long h = top; h >= top - mains.size() + 1; h--) {
+            blockStore.removeUndoRecord(h);
+        }
+        blockchain.unWindMain(target);
+        assertEquals(undone, chainState(blockchain, checked, poolKey, addrKey));
+
+        // without a record below it none is kept, the balances are not scanned under the chain lock
+        blockStore.removeStateHash(target.getInfo().getHeight());
+        blockchain.setMain(blockchain.getBlockByHash(mains.get(0), true));
+        assertNull(blockchain.getStateHash(target.getInfo().getHeight() + 1));
+    }
+
+    private List<String> chainState(BlockchainImpl blockchain, List<Bytes32> blocks, KeyPair... keys) {
+        List<String> state = Lists.newArrayList();
+        state.add("nmain=" + blockchain.getXdagStats().nmain);
+        state.add("all=" + blockchain.getAddressStore().getAllBalance());
+        for (KeyPair key : keys) {
+            byte[] address = Keys.toBytesAddress(key);
+            state.add(WalletUtils.toBase58(address) + " balance=" + blockchain.getAddressStore().getBalanceByAddress(address)
+                    + " nonce=" + blockchain.getAddressStore().getExecutedNonceNum(address));
+        }
+        for (Bytes32 hash : blocks) {
+            BlockInfo info = kernel.getBlockStore().getBlockInfoByHash(hash).getInfo();
+            state.add(hash.toHexString() + " flags=" + Integer.toHexString(info.getFlags() & ~Constants.BI_MAIN_CHAIN)
+                    + " amount=" + info.getAmount() + " fee=" + info.getFee() + " height=" + info.getHeight()
+                    + " ref=" + (info.getRef() == null ? "null" : Hex.toHexString(info.getRef())));
+        }
+        return state;
+    }
+
     @Test
     public void DuplicateLink_Rollback(){
         KeyPair addrKey = KeyPair.create(secretary_1, Sign.CURVE, Sign.CURVE_NAME);
@@ -632,6 +824,119 @@ public class BlockchainTest {
         assertEquals("0.0" , RollBackMainBlockLinkTxBalance.toDecimal(1, XUnit.XDAG).toString());//A mainBlock reward back 1024 - 1024 = 0.
     }
 
+    @Test
+    public void testParallelApplyMatchesSequential() {
+        List<String> sequential = applyTransfers(false);
+        kernel.getBlockStore().reset();
+        kernel.getOrphanBlockStore().reset();
+        kernel.getAddressStore().reset();
+        List<String> parallel = applyTransfers(true);
+        assertEquals(sequential, parallel);
+    }
+
+    /**
+     * Confirm transfers from two accounts and failing ones in one main block, returning the state
+     * they leave
+     */
+    private List<String> applyTransfers(boolean parallel) {
+        config.getNodeSpec().setApplyParallelEnabled(parallel);
+        config.getNodeSpec().setApplyParallelVerify(parallel);
+        KeyPair addrKey = KeyPair.create(secretary_1, Sign.CURVE, Sign.CURVE_NAME);
+        KeyPair addrKey1 = KeyPair.create(secretary_2, Sign.CURVE, Sign.CURVE_NAME);
+        KeyPair poolKey = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+        List<KeyPair> receivers = Lists.newArrayList();
+        for (int i = 1; i <= 4; i++) {
+            receivers.add(KeyPair.create(SECPPrivateKey.create(BigInteger.valueOf(1000 + i), Sign.CURVE_NAME),
+                    Sign.CURVE, Sign.CURVE_NAME));
+        }
+        long generateTime = 1600616700000L;
+        Block addressBlock = generateAddressBlock(config, addrKey, generateTime);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        blockchain.getAddressStore().updateBalance(Keys.toBytesAddress(poolKey), XAmount.of(1000, XUnit.XDAG));
+        blockchain.getAddressStore().updateBalance(Keys.toBytesAddress(addrKey1), XAmount.of(1000, XUnit.XDAG));
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        List<Address> pending = Lists.newArrayList();
+        List<Block> extraBlockList = Lists.newLinkedList();
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 1; i <= 10; i++) {
+            generateTime += 64000L;
+            pending.clear();
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            pending.add(new Address(keyPair2Hash(wallet.getDefKey()), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+            Block extraBlock = generateExtraBlock(config, poolKey,
+                    XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime)), pending);
+            assertSame(IMPORTED_BEST, blockchain.tryToConnect(extraBlock));
+            ref = extraBlock.getHashLow();
+            extraBlockList.add(extraBlock);
+        }
+
+        long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+        List<Block> txs = Lists.newArrayList();
+        for (int i = 1; i <= 4; i++) {
+            // one account paying in nonce order and one paying distinct receivers
+            txs.add(transfer(poolKey, addrKey, xdagTime - txs.size() - 1, 10 + i, i));
+            txs.add(transfer(addrKey1, receivers.get(i - 1), xdagTime - txs.size() - 1, 20 + i, i));
+        }
+        // nonce gap, and more than is left once the earlier transfers are applied
+        txs.add(transfer(poolKey, addrKey, xdagTime - txs.size() - 1, 1, 7));
+        txs.add(transfer(addrKey1, addrKey, xdagTime - txs.size() - 1, 950, 5));
+
+        pending.clear();
+        for (Block tx : txs) {
+            assertNotSame(INVALID_BLOCK, blockchain.tryToConnect(tx));
+            pending.add(new Address(tx.getHashLow(), false));
+        }
+        ref = extraBlockList.getLast().getHashLow();
+        for (int i = 1; i <= 16; i++) {
+            generateTime += 64000L;
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            pending.add(new Address(keyPair2Hash(wallet.getDefKey()), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+            Block extraBlock = generateExtraBlock(config, poolKey,
+                    XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime)), pending);
+            blockchain.tryToConnect(extraBlock);
+            ref = extraBlock.getHashLow();
+            extraBlockList.add(extraBlock);
+            pending.clear();
+        }
+        if (parallel) {
+            assertTrue(blockchain.getApplyVerified().get() > 0);
+            assertEquals(0, blockchain.getApplyMismatches().get());
+        }
+
+        List<String> state = Lists.newArrayList();
+        List<KeyPair> accounts = Lists.newArrayList(poolKey, addrKey, addrKey1);
+        accounts.addAll(receivers);
+        AddressStore addressStore = kernel.getAddressStore();
+        for (KeyPair account : accounts) {
+            byte[] address = Keys.toBytesAddress(account);
+            state.add(addressStore.getBalanceByAddress(address) + " " + addressStore.getExecutedNonceNum(address)
+                    + " " + addressStore.getTxQuantity(address));
+        }
+        state.add(addressStore.getAllBalance().toString());
+        state.add(blockchain.getXdagStats().getBalance().toString());
+        for (Block tx : txs) {
+            Block stored = blockchain.getBlockByHash(tx.getHashLow(), false);
+            byte[] txRef = stored.getInfo().getRef();
+            state.add(stored.getInfo().getFlags() + " " + stored.getInfo().getAmount() + " "
+                    + (txRef == null ? "-" : Hex.toHexString(txRef)));
+        }
+        for (Block extra : extraBlockList) {
+            Block stored = blockchain.getBlockByHash(extra.getHashLow(), false);
+            state.add(stored.getInfo().getAmount() + " " + stored.getInfo().getFee());
+        }
+        // 1000 - (11 + 12 + 13 + 14)
+        assertEquals("950.00", addressStore.getBalanceByAddress(Keys.toBytesAddress(poolKey))
+                .toDecimal(2, XUnit.XDAG).toString());
+        return state;
+    }
+
+    private Block transfer(KeyPair from, KeyPair to, long xdagTime, long amount, long nonce) {
+        Address input = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(from)), XDAG_FIELD_INPUT, true);
+        Address output = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(to)), XDAG_FIELD_OUTPUT, true);
+        return generateNewTransactionBlock(config, from, xdagTime, input, output, XAmount.of(amount, XUnit.XDAG),
+                UInt64.valueOf(nonce));
+    }
+
     @Test
     public void testIfTxBlockTobeMain() {
         KeyPair addrKey = KeyPair.create(secretary_1, Sign.CURVE, Sign.CURVE_NAME);
@@ -0,0 +1,207 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.config.Constants.BI_MAIN;
+import static io.xdag.config.Constants.BI_MAIN_CHAIN;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChainWindowTest {
+
+    private final Map<Bytes32, Block> store = new HashMap<>();
+    private int loads;
+    private ChainWindow window;
+
+    @Before
+    public void setUp() {
+        window = new ChainWindow(2, hashlow -> {
+            loads++;
+            return store.get(hashlow);
+        });
+    }
+
+    @Test
+    public void testWalkFromStoreThenMemory() {
+        Block a = block(1, 1, null);
+        Block b = block(2, 2, a);
+        Block c = block(3, 3, b);
+        store.put(Bytes32.wrap(a.getHashLow()), a);
+        store.put(Bytes32.wrap(b.getHashLow()), b);
+        window.put(c);
+
+        ChainWindow.Node node = window.get(c.getHashLow());
+        assertEquals(BigInteger.valueOf(3), node.getDifficulty());
+        ChainWindow.Node nodeB = window.next(node);
+        assertEquals(Bytes32.wrap(b.getHashLow()), nodeB.getHashlow());
+        assertEquals(Bytes32.wrap(a.getHashLow()), window.next(nodeB).getHashlow());
+        assertNull(window.next(window.next(nodeB)));
+        assertEquals(2, loads);
+
+        // second walk is served from memory
+        assertSame(nodeB, window.next(node));
+        assertEquals(2, loads);
+
+        window.updateFlags(b.getHashLow(), BI_MAIN_CHAIN);
+        assertTrue(window.next(node).hasFlag(BI_MAIN_CHAIN));
+    }
+
+    @Test
+    public void testEviction() {
+        Block a = block(1, 1, null);
+        store.put(Bytes32.wrap(a.getHashLow()), a);
+        window.put(a);
+        window.put(block(2, 2, a));
+        assertEquals(2, window.size());
+
+        // epoch 1 falls out of a two epoch window
+        window.put(block(4, 3, null));
+        assertEquals(2, window.size());
+        window.get(a.getHashLow());
+        assertEquals(1, loads);
+        window.get(a.getHashLow());
+        assertEquals(2, loads);
+
+        window.clear();
+        assertEquals(0, window.size());
+    }
+
+    @Test
+    public void testEpochExit() {
+        Block a = block(1, 1, null);
+        Block b = block(2, 2, a);
+        Block c = block(2, 3, b);
+        Block d = block(2, 4, c);
+        window.put(a);
+        window.put(b);
+        window.put(c);
+        window.put(d);
+
+        assertEquals(Bytes32.wrap(a.getHashLow()), window.epochExit(window.get(d.getHashLow())).getHashlow());
+        int hits = (int) window.getHits();
+        // remembered for the blocks walked on the way
+        assertEquals(Bytes32.wrap(a.getHashLow()), window.epochExit(window.get(c.getHashLow())).getHashlow());
+        assertEquals(hits + 2, window.getHits());
+        assertNull(window.epochExit(window.get(a.getHashLow())));
+        assertEquals(0, loads);
+
+        // refreshing a block keeps its exit while its max difficulty link is the same
+        window.put(c);
+        hits = (int) window.getHits();
+        assertEquals(Bytes32.wrap(a.getHashLow()), window.epochExit(window.get(c.getHashLow())).getHashlow());
+        assertEquals(hits + 2, window.getHits());
+        Block e = block(1, 5, null);
+        window.put(e);
+        window.put(block(2, 3, e));
+        assertEquals(Bytes32.wrap(e.getHashLow()), window.epochExit(window.get(c.getHashLow())).getHashlow());
+    }
+
+    @Test
+    public void testResetFlags() {
+        Block a = block(1, 1, null);
+        window.put(a);
+        window.updateFlags(a.getHashLow(), BI_MAIN_CHAIN);
+        window.mark();
+        window.updateFlags(a.getHashLow(), BI_MAIN_CHAIN | BI_MAIN);
+        window.updateFlags(a.getHashLow(), BI_MAIN);
+        window.reset();
+        assertEquals(BI_MAIN_CHAIN, window.peek(a.getHashLow()).getFlags());
+
+        window.mark();
+        window.updateFlags(a.getHashLow(), BI_MAIN);
+        window.unmark();
+        window.reset();
+        assertEquals(BI_MAIN, window.peek(a.getHashLow()).getFlags());
+    }
+
+    @Test
+    public void testLinksBothWays() {
+        Block a = block(1, 1, null);
+        Block b = block(2, 2, a);
+        Block c = block(2, 3, b);
+        b.getOutputs().add(new Address(a.getHashLow(), XDAG_FIELD_OUT, false));
+        c.getOutputs().add(new Address(a.getHashLow(), XDAG_FIELD_OUT, false));
+        c.getOutputs().add(new Address(b.getHashLow(), XDAG_FIELD_OUT, false));
+        store.put(Bytes32.wrap(a.getHashLow()), a);
+        window.get(a.getHashLow());
+        window.put(b);
+        window.put(c);
+
+        Bytes32 hashA = Bytes32.wrap(a.getHashLow());
+        Bytes32 hashB = Bytes32.wrap(b.getHashLow());
+        Bytes32 hashC = Bytes32.wrap(c.getHashLow());
+        assertNull(window.peek(hashA).getLinks());
+        assertEquals(List.of(hashA), window.peek(hashB).getLinks());
+        assertEquals(List.of(hashA, hashB), window.peek(hashC).getLinks());
+        assertEquals(List.of(hashB, hashC), window.children(hashA));
+        assertEquals(List.of(hashC), window.children(hashB));
+
+        // refreshing from block info keeps the links and the walk out of the epoch
+        Bytes32 exit = window.epochExit(window.peek(hashC)).getHashlow();
+        window.refresh(block(2, 3, b));
+        assertEquals(List.of(hashA, hashB), window.peek(hashC).getLinks());
+        assertEquals(List.of(hashB, hashC), window.children(hashA));
+        int before = loads;
+        assertEquals(exit, window.epochExit(window.peek(hashC)).getHashlow());
+        assertEquals(before, loads);
+
+        window.remove(hashC);
+        assertNull(window.peek(hashC));
+        assertEquals(List.of(hashB), window.children(hashA));
+        assertTrue(window.children(hashB).isEmpty());
+
+        // epoch 1 finalizes, its blocks and their edges are dropped, links into it are still known
+        window.put(block(4, 4, null));
+        assertNull(window.peek(hashA));
+        assertEquals(List.of(hashB), window.children(hashA));
+        assertEquals(List.of(hashA), window.peek(hashB).getLinks());
+        window.put(block(5, 5, null));
+        assertTrue(window.children(hashA).isEmpty());
+    }
+
+    private Block block(long epoch, long difficulty, Block maxDiffLink) {
+        BlockInfo info = new BlockInfo();
+        MutableBytes32 hashlow = MutableBytes32.create();
+        hashlow.setLong(24, epoch * 1000 + difficulty);
+        info.setHashlow(hashlow.toArray());
+        info.setTimestamp(epoch << 16);
+        info.setDifficulty(BigInteger.valueOf(difficulty));
+        if (maxDiffLink != null) {
+            info.setMaxDiffLink(maxDiffLink.getHashLow().toArray());
+        }
+        return new Block(info);
+    }
+}
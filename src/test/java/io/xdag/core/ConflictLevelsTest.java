@@ -0,0 +1,61 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class ConflictLevelsTest {
+
+    @Test
+    public void testIndependentItemsShareLevel() {
+        List<Set<String>> keys = List.of(Set.of("a", "x"), Set.of("b", "y"), Set.of("c"));
+        assertArrayEquals(new int[]{0, 0, 0}, ConflictLevels.assign(keys));
+    }
+
+    @Test
+    public void testItemFollowsEveryEarlierConflict() {
+        List<Set<String>> keys = List.of(
+                Set.of("a"),
+                Set.of("a", "b"),
+                Set.of("c"),
+                Set.of("c", "b"),
+                Set.of("d"),
+                Set.of("a"));
+        assertArrayEquals(new int[]{0, 1, 0, 2, 0, 2}, ConflictLevels.assign(keys));
+
+        List<List<Integer>> groups = ConflictLevels.group(keys);
+        assertEquals(List.of(List.of(0, 2, 4), List.of(1), List.of(3, 5)), groups);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, ConflictLevels.assign(List.<Set<String>>of()).length);
+        assertEquals(List.of(), ConflictLevels.group(List.<Set<String>>of()));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.junit.Test;
+
+public class ExtraBlockPoolTest {
+
+    @Test
+    public void testEvictOldestEpochFirst() {
+        ExtraBlockPool pool = new ExtraBlockPool(2);
+        Block late = block(3, 1);
+        Block early = block(1, 2);
+        Block earlier = block(1, 1);
+        pool.put(late);
+        pool.put(early);
+        assertNull(pool.overflow());
+        pool.put(earlier);
+
+        assertSame(earlier, pool.overflow());
+        pool.evict(earlier.getHashLow());
+        assertNull(pool.overflow());
+        assertSame(early, pool.oldest());
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.getEvictions());
+    }
+
+    @Test
+    public void testLookupAndPersist() {
+        ExtraBlockPool pool = new ExtraBlockPool(16);
+        Block a = block(1, 1);
+        Block b = block(2, 1);
+        pool.put(a);
+        pool.put(b);
+
+        assertSame(a, pool.get(a.getHashLow()));
+        assertNull(pool.get(block(5, 5).getHashLow()));
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        pool.removeAll(List.of(a, b));
+        assertFalse(pool.contains(a.getHashLow()));
+        assertEquals(0, pool.size());
+        assertNull(pool.oldest());
+        assertEquals(2, pool.getPersisted());
+    }
+
+    @Test
+    public void testReadsDuringChurn() throws InterruptedException {
+        ExtraBlockPool pool = new ExtraBlockPool(64);
+        Block stable = block(1_000_000, 0);
+        pool.put(stable);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    assertSame(stable, pool.get(stable.getHashLow()));
+                    pool.size();
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 1; i <= 20000; i++) {
+            pool.put(block(i, i));
+            Block overflow = pool.overflow();
+            if (overflow != null) {
+                pool.evict(overflow.getHashLow());
+            }
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+        assertTrue(pool.size() <= 65);
+    }
+
+    private Block block(long epoch, long n) {
+        BlockInfo info = new BlockInfo();
+        MutableBytes32 hashlow = MutableBytes32.create();
+        hashlow.setLong(24, epoch * 100000 + n);
+        info.setHashlow(hashlow.toArray());
+        info.setTimestamp(epoch << 16);
+        return new Block(info);
+    }
+}
@@ -32,6 +32,7 @@ import io.xdag.config.DevnetConfig;
 import io.xdag.consensus.XdagPow;
 import io.xdag.crypto.SampleKeys;
 import io.xdag.crypto.Sign;
+import io.xdag.db.AddressStore;
 import io.xdag.db.BlockStore;
 import io.xdag.db.OrphanBlockStore;
 import io.xdag.db.rocksdb.*;
@@ -99,9 +100,12 @@ public class ExtraBlockTest {
         blockStore.reset();
         OrphanBlockStore orphanBlockStore = new OrphanBlockStoreImpl(dbFactory.getDB(DatabaseName.ORPHANIND));
         orphanBlockStore.reset();
+        AddressStore addressStore = new AddressStoreImpl(dbFactory.getDB(DatabaseName.ADDRESS));
+        addressStore.reset();
 
         kernel.setBlockStore(blockStore);
         kernel.setOrphanBlockStore(orphanBlockStore);
+        kernel.setAddressStore(addressStore);
         kernel.setWallet(wallet);
         kernel.setPow(new XdagPow(kernel));
     }
@@ -216,8 +220,8 @@ public class ExtraBlockTest {
 
         @Override
         public void processExtraBlock() {
-            if (this.getMemOrphanPool().size() > expectedExtraBlocks) {
-                Block reuse = getMemOrphanPool().entrySet().iterator().next().getValue();
+            if (this.getExtraBlockPool().size() > expectedExtraBlocks) {
+                Block reuse = getExtraBlockPool().oldest();
                 removeOrphan(reuse.getHashLow(), OrphanRemoveActions.ORPHAN_REMOVE_REUSE);
                 this.getXdagStats().nblocks--;
                 this.getXdagStats().totalnblocks = Math
@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.junit.Test;
+
+public class HashLowTest {
+
+    @Test
+    public void testHashAndHashlowGiveSameKey() {
+        Bytes32 hash = Bytes32.fromHexString("0x1122334455667788a1a2a3a4a5a6a7a8b1b2b3b4b5b6b7b8c1c2c3c4c5c6c7c8");
+        MutableBytes32 hashlow = MutableBytes32.create();
+        hashlow.set(8, hash.slice(8, 24));
+
+        HashLow key = HashLow.of(hash);
+        assertEquals(key, HashLow.of(hashlow));
+        assertEquals(key, HashLow.of(hash.toArray()));
+        assertEquals(key.hashCode(), HashLow.of(hashlow.toArray()).hashCode());
+        assertEquals(hashlow, key.toBytes32());
+    }
+
+    @Test
+    public void testOrderFollowsUnsignedBytes() {
+        MutableBytes32 a = MutableBytes32.create();
+        MutableBytes32 b = MutableBytes32.create();
+        a.set(31, (byte) 0x01);
+        b.set(8, (byte) 0xff);
+
+        assertTrue(HashLow.of(a).compareTo(HashLow.of(b)) < 0);
+        assertTrue(a.compareTo(b) < 0);
+        assertNotEquals(HashLow.of(a), HashLow.of(b));
+    }
+}
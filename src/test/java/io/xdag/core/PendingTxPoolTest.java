@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.BlockBuilder.generateNewTransactionBlock;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUTPUT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.Keys;
+import io.xdag.utils.BytesUtils;
+import io.xdag.utils.XdagTime;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.units.bigints.UInt64;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PendingTxPoolTest {
+
+    Config config = new DevnetConfig();
+    KeyPair alice;
+    KeyPair bob;
+    long xdagTime;
+
+    @Before
+    public void setUp() throws Exception {
+        alice = Keys.createEcKeyPair();
+        bob = Keys.createEcKeyPair();
+        xdagTime = XdagTime.getEndOfEpoch(XdagTime.getCurrentTimestamp());
+    }
+
+    @Test
+    public void testAdmission() {
+        PendingTxPool pool = new PendingTxPool(16, 4);
+        assertEquals(PendingTxPool.Admission.STALE, pool.add(wrap(tx(alice, 1, 100)), 2));
+        assertEquals(PendingTxPool.Admission.READY, pool.add(wrap(tx(alice, 2, 100)), 2));
+        assertEquals(0, pool.queuedSize());
+
+        BlockWrapper queued = wrap(tx(alice, 4, 100));
+        assertEquals(PendingTxPool.Admission.QUEUED, pool.add(queued, 2));
+        assertEquals(PendingTxPool.Admission.KNOWN, pool.add(queued, 2));
+        assertEquals(PendingTxPool.Admission.NONCE_TOO_FAR, pool.add(wrap(tx(alice, 6, 100)), 2));
+        assertEquals(1, pool.queuedSize());
+    }
+
+    @Test
+    public void testReplaceNeedsFeeBump() {
+        PendingTxPool pool = new PendingTxPool(16, 8);
+        assertEquals(PendingTxPool.Admission.QUEUED, pool.add(wrap(tx(alice, 3, 100)), 1));
+        assertEquals(PendingTxPool.Admission.UNDERPRICED, pool.add(wrap(tx(alice, 3, 105)), 1));
+
+        BlockWrapper better = wrap(tx(alice, 3, 110));
+        assertEquals(PendingTxPool.Admission.REPLACED, pool.add(better, 1));
+        assertEquals(1, pool.queuedSize());
+        assertEquals(1, pool.getReplaced());
+
+        assertNull(pool.pollReady(sender(alice), 2));
+        assertSame(better, pool.pollReady(sender(alice), 3));
+        assertEquals(0, pool.queuedSize());
+        assertEquals(1, pool.getPromoted());
+    }
+
+    @Test
+    public void testFullEvictsCheapestTail() {
+        PendingTxPool pool = new PendingTxPool(2, 8);
+        assertEquals(PendingTxPool.Admission.QUEUED, pool.add(wrap(tx(alice, 3, 200)), 1));
+        assertEquals(PendingTxPool.Admission.QUEUED, pool.add(wrap(tx(bob, 3, 100)), 1));
+        assertEquals(PendingTxPool.Admission.FULL, pool.add(wrap(tx(alice, 4, 100)), 1));
+
+        assertEquals(PendingTxPool.Admission.QUEUED, pool.add(wrap(tx(alice, 4, 150)), 1));
+        assertEquals(2, pool.queuedSize());
+        assertEquals(1, pool.getEvicted());
+        assertNull(pool.pollReady(sender(bob), 3));
+    }
+
+    @Test
+    public void testPollReadyInNonceOrder() {
+        PendingTxPool pool = new PendingTxPool(16, 8);
+        BlockWrapper tx3 = wrap(tx(alice, 3, 100));
+        BlockWrapper tx4 = wrap(tx(alice, 4, 100));
+        pool.add(wrap(tx(alice, 2, 100)), 1);
+        pool.add(tx4, 1);
+        pool.add(tx3, 1);
+
+        // nonce 2 was imported some other way, it is dropped on the way to 3
+        assertSame(tx3, pool.pollReady(sender(alice), 3));
+        assertSame(tx4, pool.pollReady(sender(alice), 4));
+        assertNull(pool.pollReady(sender(alice), 5));
+        assertEquals(0, pool.queuedSize());
+    }
+
+    @Test
+    public void testSelectForLinkByFeeInNonceOrder() {
+        PendingTxPool pool = new PendingTxPool(16, 8);
+        Block alice1 = tx(alice, 1, 100);
+        Block alice2 = tx(alice, 2, 500);
+        Block bob1 = tx(bob, 1, 300);
+        pool.onImported(alice2);
+        pool.onImported(bob1);
+        pool.onImported(alice1);
+
+        // alice 2 pays the most but waits for alice 1
+        assertEquals(List.of(bob1, alice1, alice2), pool.selectForLink(10, xdagTime + 1));
+        assertEquals(List.of(bob1), pool.selectForLink(1, xdagTime + 1));
+        assertEquals(List.of(bob1, alice1, alice2), pool.selectForLink(10, xdagTime));
+        assertEquals(List.of(), pool.selectForLink(10, xdagTime - 1));
+
+        pool.onLinked(bob1.getHashLowKey());
+        assertEquals(List.of(alice1, alice2), pool.selectForLink(10, xdagTime + 1));
+        assertEquals(2, pool.importedSize());
+    }
+
+    private Block tx(KeyPair key, long nonce, long feeMilli) {
+        Address from = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(key)), XDAG_FIELD_INPUT, true);
+        Address to = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(bob == key ? alice : bob)),
+                XDAG_FIELD_OUTPUT, true);
+        return generateNewTransactionBlock(config, key, xdagTime, from, to, XAmount.of(1, XUnit.XDAG),
+                XAmount.of(feeMilli, XUnit.MILLI_XDAG), UInt64.valueOf(nonce));
+    }
+
+    private BlockWrapper wrap(Block block) {
+        return new BlockWrapper(block, 5);
+    }
+
+    private Bytes sender(KeyPair key) {
+        return Bytes.wrap(Keys.toBytesAddress(key));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.xdag.utils.XdagSha256Digest;
+import java.io.IOException;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class HashTest {
+
+    @Test
+    public void testMatchesBesu() {
+        for (int size : new int[]{0, 32, 480, 512, 1000}) {
+            Bytes input = Bytes.random(size);
+            Bytes32 once = org.hyperledger.besu.crypto.Hash.sha256(input);
+            assertEquals(once, Hash.sha256(input));
+            assertEquals(org.hyperledger.besu.crypto.Hash.sha256(once), Hash.hashTwice(input));
+            assertArrayEquals(Hash.hashTwice(input).toArray(), Hash.hashTwice(input.toArray()));
+        }
+    }
+
+    @Test
+    public void testMidstateLeavesDigestUnchanged() throws IOException {
+        Bytes fixed = Bytes.random(480);
+        XdagSha256Digest digest = new XdagSha256Digest();
+        digest.sha256Update(fixed);
+        byte[] state = digest.getState();
+
+        for (int i = 0; i < 3; i++) {
+            Bytes share = Bytes.random(32);
+            byte[] expected = Bytes.wrap(Hash.hashTwice(Bytes.wrap(fixed, share))).reverse().toArray();
+            assertArrayEquals(expected, digest.sha256FinalWith(share));
+            assertArrayEquals(expected, new XdagSha256Digest(digest).sha256Final(share));
+        }
+        assertArrayEquals(state, digest.getState());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.apache.tuweni.bytes.Bytes;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.hyperledger.besu.crypto.SECPPublicKey;
+import org.junit.Test;
+
+public class PublicKeyCacheTest {
+
+    @Test
+    public void testRoundTrip() {
+        PublicKeyCache.invalidateAll();
+        KeyPair key = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+        Bytes compressed = PublicKeyCache.compress(key.getPublicKey());
+        assertEquals(SampleKeys.PUBLIC_KEY_COMPRESS_STRING, compressed.toUnprefixedHexString());
+
+        SECPPublicKey decoded = PublicKeyCache.decompress(compressed);
+        assertEquals(key.getPublicKey(), decoded);
+        assertSame(decoded, PublicKeyCache.decompress(Bytes.fromHexString(SampleKeys.PUBLIC_KEY_COMPRESS_STRING)));
+        assertSame(decoded, PublicKeyCache.decompress(compressed.slice(1), compressed.get(0) == 0x03));
+        assertEquals(1, PublicKeyCache.size());
+    }
+}
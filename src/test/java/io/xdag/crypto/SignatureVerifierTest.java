@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.hyperledger.besu.crypto.SECPPrivateKey;
+import org.hyperledger.besu.crypto.SECPSignature;
+import org.junit.Test;
+
+public class SignatureVerifierTest {
+
+    private final KeyPair key = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+    private final KeyPair other = KeyPair.create(
+            SECPPrivateKey.create(BigInteger.valueOf(0x1234567L), Sign.CURVE_NAME), Sign.CURVE, Sign.CURVE_NAME);
+
+    private SignatureVerifier.Request request(Bytes32 blockHash, int sigIndex, Bytes data, KeyPair signer, KeyPair candidate) {
+        Bytes encoded = SignatureVerifier.encode(signer.getPublicKey());
+        SECPSignature signature = Sign.SECP256K1.sign(Hash.hashTwice(Bytes.wrap(data, encoded)), signer);
+        return new SignatureVerifier.Request(blockHash, sigIndex, data, signature, candidate.getPublicKey(),
+                SignatureVerifier.encode(candidate.getPublicKey()));
+    }
+
+    @Test
+    public void testVerifyAndCache() {
+        SignatureVerifier verifier = new SignatureVerifier(2, 16);
+        Bytes data = Bytes.random(512);
+        Bytes32 blockHash = Bytes32.random();
+
+        assertTrue(verifier.verify(request(blockHash, 3, data, key, key)));
+        assertFalse(verifier.verify(request(blockHash, 3, data, key, other)));
+        assertEquals(2, verifier.getCacheMisses());
+
+        assertTrue(verifier.verify(request(blockHash, 3, data, key, key)));
+        assertEquals(1, verifier.getCacheHits());
+
+        // Without a block hash nothing is cached
+        verifier.verify(request(null, 3, data, key, key));
+        verifier.verify(request(null, 3, data, key, key));
+        assertEquals(1, verifier.getCacheHits());
+    }
+
+    @Test
+    public void testVerifyBatch() {
+        SignatureVerifier verifier = new SignatureVerifier(4, 1024);
+        List<SignatureVerifier.Request> requests = new ArrayList<>();
+        boolean[] expected = new boolean[16];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i % 3 != 0;
+            requests.add(request(Bytes32.random(), i, Bytes.random(512), key, expected[i] ? key : other));
+        }
+        assertArrayEquals(expected, verifier.verify(requests));
+        assertEquals(expected.length, verifier.getCacheMisses());
+        assertArrayEquals(expected, verifier.verify(requests));
+        assertEquals(expected.length, verifier.getCacheHits());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.utils.BytesUtils;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HeightKVSourceTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+
+    HeightKVSource source;
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        source = new HeightKVSource(DatabaseName.HEIGHT.toString());
+        source.setConfig(config);
+        source.init();
+    }
+
+    @After
+    public void tearDown() {
+        source.close();
+    }
+
+    private static byte[] hashlow(long height) {
+        byte[] hashlow = new byte[32];
+        System.arraycopy(BytesUtils.longToBytes(height, false), 0, hashlow, 24, 8);
+        hashlow[8] = 1;
+        return hashlow;
+    }
+
+    @Test
+    public void testPutGet() {
+        assertNull(source.get(1));
+        source.put(1, hashlow(1));
+        source.put(2, hashlow(2));
+        assertArrayEquals(hashlow(2), source.get(2));
+        assertArrayEquals(hashlow(1), source.get(BytesUtils.longToBytes(1, false)));
+        assertNull(source.get(3));
+        assertNull(source.get(0));
+        assertEquals(2, source.getMaxHeight());
+    }
+
+    @Test
+    public void testRollback() {
+        for (long i = 1; i <= 10; i++) {
+            source.put(i, hashlow(i));
+        }
+        source.delete(10);
+        source.delete(9);
+        assertEquals(8, source.getMaxHeight());
+        assertNull(source.get(9));
+        source.put(9, hashlow(99));
+        assertArrayEquals(hashlow(99), source.get(9));
+    }
+
+    @Test
+    public void testReopen() {
+        long height = HeightKVSource.HEIGHTS_PER_CHUNK + 5;
+        source.put(3, hashlow(3));
+        source.put(height, hashlow(height));
+        source.close();
+
+        source.init();
+        assertEquals(height, source.getMaxHeight());
+        assertArrayEquals(hashlow(3), source.get(3));
+        assertArrayEquals(hashlow(height), source.get(height));
+
+        List<byte[]> keys = source.prefixKeyLookup(new byte[0]);
+        assertEquals(2, keys.size());
+        assertArrayEquals(BytesUtils.longToBytes(3, false), keys.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidHashlow() {
+        source.put(1, new byte[8]);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.tuple.Pair;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+/**
+ * Runs the {@link RocksdbKVSourceTest} cases against {@link MemoryKVSource}.
+ */
+public class MemoryKVSourceTest extends RocksdbKVSourceTest {
+
+    @Override
+    protected DatabaseFactory newFactory() {
+        return new MemoryDatabaseFactory();
+    }
+
+    @Test
+    public void testCopyOnReadAndWrite() {
+        MemoryKVSource source = new MemoryKVSource("TEST");
+        source.init();
+        byte[] key = Hex.decode("01");
+        byte[] value = Hex.decode("1234");
+        source.put(key, value);
+        value[0] = 0;
+        source.get(key)[1] = 0;
+        assertEquals("1234", Hex.toHexString(source.get(key)));
+    }
+
+    @Test
+    public void testRangeBatchAndSnapshot() {
+        MemoryKVSource source = new MemoryKVSource("TEST");
+        source.init();
+        source.putAll(Map.of(Hex.decode("01"), Hex.decode("aa"), Hex.decode("02ff"), Hex.decode("bb"),
+                Hex.decode("03"), Hex.decode("cc")));
+
+        MemoryKVSource snapshot = source.snapshot();
+        source.put(Hex.decode("01"), null);
+        assertNull(source.get(Hex.decode("01")));
+        assertEquals("aa", Hex.toHexString(snapshot.get(Hex.decode("01"))));
+
+        List<Pair<byte[], byte[]>> range = new ArrayList<>();
+        snapshot.fetchRange(Hex.decode("01"), Hex.decode("03"), pair -> {
+            range.add(pair);
+            return Boolean.FALSE;
+        });
+        assertEquals(2, range.size());
+        assertArrayEquals(Hex.decode("02ff"), range.get(1).getKey());
+
+        source.reset();
+        assertEquals(0, source.keys().size());
+    }
+}
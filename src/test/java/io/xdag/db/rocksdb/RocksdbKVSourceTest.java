@@ -36,9 +36,12 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class RocksdbKVSourceTest {
@@ -54,9 +57,16 @@ public class RocksdbKVSourceTest {
         config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
     }
 
+    /**
+     * Factory under test, other {@link KVSource} implementations reuse these cases by overriding it.
+     */
+    protected DatabaseFactory newFactory() {
+        return new RocksdbFactory(config);
+    }
+
     @Test
     public void testRocksdbFactory() {
-        DatabaseFactory factory = new RocksdbFactory(config);
+        DatabaseFactory factory = newFactory();
         KVSource<byte[], byte[]> blockSource = factory.getDB(DatabaseName.BLOCK); // <block-hash,block-info>
         KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX); // <hash,info>
         KVSource<byte[], byte[]> orphanSource = factory.getDB(DatabaseName.ORPHANIND); // <hash,info>
@@ -79,7 +89,7 @@ public class RocksdbKVSourceTest {
 
     @Test
     public void testPrefixKeyLookup() {
-        DatabaseFactory factory = new RocksdbFactory(config);
+        DatabaseFactory factory = newFactory();
         KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.TIME);
         indexSource.reset();
 
@@ -103,4 +113,60 @@ public class RocksdbKVSourceTest {
         List<byte[]> values = indexSource.prefixValueLookup(key);
         assertEquals(2, values.size());
     }
+
+    @Test
+    public void testFetchPrefixReverse() {
+        DatabaseFactory factory = newFactory();
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        indexSource.reset();
+
+        for (String key : List.of("0f01", "1001", "1002", "10ff", "11", "ff01", "ffff")) {
+            indexSource.put(Hex.decode(key), Hex.decode("01"));
+        }
+        assertEquals(List.of("10ff", "1002", "1001"), reverseKeys(indexSource, "10", 0));
+        assertEquals(List.of("10ff", "1002"), reverseKeys(indexSource, "10", 2));
+        // a prefix of 0xff runs up to the last key
+        assertEquals(List.of("ffff", "ff01"), reverseKeys(indexSource, "ff", 0));
+        assertEquals(List.of(), reverseKeys(indexSource, "12", 0));
+    }
+
+    @Test
+    public void testByteBufferGetPut() {
+        DatabaseFactory factory = newFactory();
+        KVSource<byte[], byte[]> timeSource = factory.getDB(DatabaseName.TIME);
+        timeSource.reset();
+
+        Bytes32 hashlow = Hash.hashTwice(Bytes.wrap("1".getBytes(StandardCharsets.UTF_8)));
+        long time = 1602226304712L;
+        KeyBuilder keys = KeyBuilder.local();
+        assertArrayEquals(BlockUtils.getTimeKey(time, hashlow), toArray(keys.time(time, hashlow)));
+        assertArrayEquals(BlockUtils.getHeight(5), toArray(keys.height(5)));
+
+        timeSource.put(keys.time(time, hashlow), keys.value(Bytes.fromHexString("0x1234")));
+        assertEquals("1234", Hex.toHexString(timeSource.get(BlockUtils.getTimeKey(time, hashlow))));
+
+        ByteBuffer value = keys.value();
+        assertEquals(2, timeSource.get(keys.time(time, hashlow), value));
+        assertEquals(2, value.remaining());
+        assertEquals(0x12, value.get(0));
+
+        // too small buffer still reports the full size
+        assertEquals(2, timeSource.get(keys.time(time, hashlow), keys.value().limit(0)));
+        assertEquals(KVSource.NOT_FOUND, timeSource.get(keys.height(5), keys.value()));
+    }
+
+    private static List<String> reverseKeys(KVSource<byte[], byte[]> source, String prefix, int limit) {
+        List<String> keys = new ArrayList<>();
+        source.fetchPrefixReverse(Hex.decode(prefix), pair -> {
+            keys.add(Hex.toHexString(pair.getKey()));
+            return keys.size() == limit;
+        });
+        return keys;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RocksdbSecondaryTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+    }
+
+    @Test
+    public void testCatchUpWithPrimary() throws Exception {
+        RocksdbKVSource primary = new RocksdbKVSource(DatabaseName.INDEX.toString());
+        primary.setConfig(config);
+        primary.init();
+        primary.put(Hex.decode("01"), Hex.decode("1234"));
+
+        RocksdbKVSource secondary = new RocksdbKVSource(DatabaseName.INDEX.toString());
+        secondary.setConfig(config);
+        secondary.setSecondaryPath(root.newFolder().getAbsolutePath());
+        secondary.init();
+        assertEquals("1234", Hex.toHexString(secondary.get(Hex.decode("01"))));
+
+        primary.put(Hex.decode("02"), Hex.decode("5678"));
+        assertNull(secondary.get(Hex.decode("02")));
+        secondary.tryCatchUpWithPrimary();
+        assertEquals("5678", Hex.toHexString(secondary.get(Hex.decode("02"))));
+
+        secondary.close();
+        primary.close();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSecondaryIsReadOnly() throws Exception {
+        RocksdbKVSource primary = new RocksdbKVSource(DatabaseName.INDEX.toString());
+        primary.setConfig(config);
+        primary.init();
+
+        RocksdbKVSource secondary = new RocksdbKVSource(DatabaseName.INDEX.toString());
+        secondary.setConfig(config);
+        secondary.setSecondaryPath(root.newFolder().getAbsolutePath());
+        secondary.init();
+        try {
+            secondary.put(Hex.decode("01"), Hex.decode("1234"));
+        } finally {
+            secondary.close();
+            primary.close();
+        }
+    }
+}
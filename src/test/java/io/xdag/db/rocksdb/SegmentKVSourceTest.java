@@ -0,0 +1,202 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.utils.BlockUtils;
+import io.xdag.utils.BytesUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentKVSourceTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+
+    SegmentKVSource source;
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        source = new SegmentKVSource(DatabaseName.SEGMENT.toString());
+        source.setConfig(config);
+        source.init();
+    }
+
+    @After
+    public void tearDown() {
+        source.close();
+    }
+
+    private static byte[] key(int i) {
+        byte[] key = new byte[32];
+        System.arraycopy(BytesUtils.intToBytes(i, false), 0, key, 28, 4);
+        key[8] = 1;
+        return key;
+    }
+
+    private static byte[] body(long time, int fill) {
+        byte[] body = new byte[512];
+        Arrays.fill(body, (byte) fill);
+        System.arraycopy(BytesUtils.longToBytes(time, true), 0, body, 16, 8);
+        return body;
+    }
+
+    @Test
+    public void testPutGet() {
+        byte[] body = body(0x10000L * 5, 1);
+        source.put(key(1), body);
+        assertArrayEquals(body, source.get(key(1)));
+        assertNull(source.get(key(2)));
+        assertEquals(1, source.keys().size());
+    }
+
+    @Test
+    public void testReopen() {
+        for (int i = 0; i < 100; i++) {
+            source.put(key(i), body(0x10000L * 1024 * (i % 3) + i, i));
+        }
+        source.delete(key(7));
+        source.put(key(8), body(0x10000L * 1024 * 2 + 8, 88));
+        source.close();
+
+        source.init();
+        assertEquals(99, source.keys().size());
+        assertNull(source.get(key(7)));
+        assertArrayEquals(body(0x10000L * 1024 * 2 + 8, 88), source.get(key(8)));
+        assertArrayEquals(body(0x10000L * 1024 + 10, 10), source.get(key(10)));
+
+        // appends after reopening go behind the existing records
+        source.put(key(200), body(1, 2));
+        source.close();
+        source.init();
+        assertArrayEquals(body(1, 2), source.get(key(200)));
+        assertArrayEquals(body(0, 0), source.get(key(0)));
+    }
+
+    @Test
+    public void testFetchRange() {
+        long base = 0x10000L * 1024;
+        source.put(key(1), body(base - 1, 1));
+        source.put(key(2), body(base, 2));
+        source.put(key(3), body(base + 0x10000L, 3));
+        source.put(key(4), body(base * 3, 4));
+        // overwritten record must be reported once with its latest body
+        source.put(key(2), body(base + 1, 5));
+
+        List<Pair<byte[], byte[]>> result = new ArrayList<>();
+        source.fetchRange(base, base * 3, pair -> {
+            result.add(pair);
+            return Boolean.FALSE;
+        });
+        assertEquals(2, result.size());
+        assertArrayEquals(key(3), result.get(0).getKey());
+        assertArrayEquals(key(2), result.get(1).getKey());
+        assertArrayEquals(body(base + 1, 5), result.get(1).getValue());
+    }
+
+    @Test
+    public void testPrefixLookup() {
+        source.put(key(2), body(3, 2));
+        source.put(key(1), body(0x10000L * 4096, 1));
+        byte[] prefix = new byte[9];
+        prefix[8] = 1;
+        List<byte[]> keys = source.prefixKeyLookup(prefix);
+        assertEquals(2, keys.size());
+        assertArrayEquals(key(1), keys.get(0));
+        assertEquals(0, source.prefixKeyLookup(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 2}).size());
+    }
+
+    @Test
+    public void testImportFrom() throws Exception {
+        MemoryKVSource time = new MemoryKVSource(DatabaseName.BLOCK.toString());
+        MemoryKVSource raw = new MemoryKVSource(DatabaseName.TIME.toString());
+        long base = 0x10000L * 1024;
+        // within an epoch the time index is ordered by hash, the import must follow the timestamps
+        long[] times = {base + 3, base + 1, base + 2, base + 0x10000L};
+        for (int i = 0; i < times.length; i++) {
+            time.put(BlockUtils.getTimeKey(times[i], Bytes32.wrap(key(i))), new byte[]{0});
+            raw.put(key(i), body(times[i], i));
+        }
+        // indexed without a body, skipped
+        time.put(BlockUtils.getTimeKey(base, Bytes32.wrap(key(9))), new byte[]{0});
+
+        assertTrue(source.isEmpty());
+        assertEquals(4, source.importFrom(time, raw));
+        assertFalse(source.isImportPending());
+        List<byte[]> keys = new ArrayList<>();
+        source.fetchRange(0, base * 2, pair -> {
+            keys.add(pair.getKey());
+            return Boolean.FALSE;
+        });
+        assertEquals(4, keys.size());
+        assertArrayEquals(key(1), keys.get(0));
+        assertArrayEquals(key(2), keys.get(1));
+        assertArrayEquals(key(0), keys.get(2));
+        assertArrayEquals(key(3), keys.get(3));
+
+        // running it again after an interruption does not append the same bodies twice
+        source.importFrom(time, raw);
+        source.close();
+        source.init();
+        assertEquals(4, source.keys().size());
+        assertArrayEquals(body(times[3], 3), source.get(key(3)));
+    }
+
+    @Test
+    public void testReset() {
+        source.put(key(1), body(1, 1));
+        source.reset();
+        assertNull(source.get(key(1)));
+        assertEquals(0, source.keys().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidValueSize() {
+        source.put(key(1), new byte[32]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey() {
+        source.put(new byte[]{1, 2, 3}, body(1, 1));
+    }
+}
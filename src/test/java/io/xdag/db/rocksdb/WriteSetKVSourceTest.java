@@ -0,0 +1,241 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteSetKVSourceTest {
+
+    private MemoryKVSource db;
+    private WriteSet writeSet;
+    private WriteSetKVSource source;
+
+    @Before
+    public void setUp() {
+        db = new MemoryKVSource("TEST");
+        writeSet = new WriteSet();
+        source = new WriteSetKVSource(db, writeSet);
+        source.init();
+        db.put(Hex.decode("0101"), Hex.decode("aa"));
+        db.put(Hex.decode("0102"), Hex.decode("bb"));
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        writeSet.begin();
+        source.put(Hex.decode("0103"), Hex.decode("cc"));
+        source.delete(Hex.decode("0101"));
+        assertEquals("cc", Hex.toHexString(source.get(Hex.decode("0103"))));
+        assertNull(source.get(Hex.decode("0101")));
+
+        // nothing is visible to the db or other threads before commit
+        assertNull(db.get(Hex.decode("0103")));
+        assertEquals("aa", Hex.toHexString(CompletableFuture.supplyAsync(() -> source.get(Hex.decode("0101"))).get()));
+
+        List<String> keys = new ArrayList<>();
+        source.fetchPrefix(Hex.decode("01"), pair -> {
+            keys.add(Hex.toHexString(pair.getKey()));
+            return Boolean.FALSE;
+        });
+        assertEquals(List.of("0102", "0103"), keys);
+        keys.clear();
+        source.fetchPrefixReverse(Hex.decode("01"), pair -> {
+            keys.add(Hex.toHexString(pair.getKey()));
+            return Boolean.FALSE;
+        });
+        assertEquals(List.of("0103", "0102"), keys);
+
+        writeSet.commit();
+        assertFalse(writeSet.isActive());
+        assertNull(db.get(Hex.decode("0101")));
+        assertEquals("cc", Hex.toHexString(db.get(Hex.decode("0103"))));
+        assertEquals(0, source.size());
+    }
+
+    @Test
+    public void testReadForOwner() throws Exception {
+        writeSet.begin();
+        source.put(Hex.decode("0103"), Hex.decode("cc"));
+        source.delete(Hex.decode("0101"));
+
+        // a task read for the owner sees its writes, a plain one does not
+        Callable<byte[][]> task = writeSet.readFor(() -> new byte[][]{
+                source.get(Hex.decode("0103")), source.get(Hex.decode("0101"))});
+        byte[][] seen = CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).get();
+        assertEquals("cc", Hex.toHexString(seen[0]));
+        assertNull(seen[1]);
+        assertNull(CompletableFuture.supplyAsync(() -> source.get(Hex.decode("0103"))).get());
+        writeSet.commit();
+    }
+
+    @Test
+    public void testRollbackAndNesting() {
+        List<String> actions = new ArrayList<>();
+        writeSet.begin();
+        source.put(Hex.decode("0103"), Hex.decode("cc"));
+        writeSet.afterCommit(() -> actions.add("first"));
+        writeSet.begin();
+        source.put(Hex.decode("0104"), Hex.decode("dd"));
+        writeSet.rollback();
+        writeSet.commit();
+
+        // the inner rollback discards the whole write set
+        assertNull(db.get(Hex.decode("0103")));
+        assertNull(db.get(Hex.decode("0104")));
+        assertTrue(actions.isEmpty());
+
+        writeSet.afterCommit(() -> actions.add("direct"));
+        assertEquals(List.of("direct"), actions);
+    }
+
+    @Test
+    public void testMultiGet() {
+        writeSet.begin();
+        source.put(Hex.decode("0103"), Hex.decode("cc"));
+        source.delete(Hex.decode("0101"));
+        List<byte[]> values = source.multiGet(List.of(Hex.decode("0101"), Hex.decode("0102"),
+                Hex.decode("0103"), Hex.decode("0104")));
+        assertEquals(4, values.size());
+        assertNull(values.get(0));
+        assertArrayEquals(Hex.decode("bb"), values.get(1));
+        assertArrayEquals(Hex.decode("cc"), values.get(2));
+        assertNull(values.get(3));
+        writeSet.rollback();
+    }
+
+    @Test
+    public void testByteBuffer() {
+        writeSet.begin();
+        source.put(ByteBuffer.wrap(Hex.decode("0105")), ByteBuffer.wrap(Hex.decode("eeff")));
+        ByteBuffer value = ByteBuffer.allocate(1);
+        ByteBuffer key = ByteBuffer.wrap(Hex.decode("0105"));
+        assertEquals(2, source.get(key, value));
+        assertEquals(0, key.remaining());
+        assertEquals(1, value.limit());
+        assertEquals((byte) 0xee, value.get(0));
+
+        source.delete(Hex.decode("0102"));
+        assertEquals(KVSource.NOT_FOUND, source.get(ByteBuffer.wrap(Hex.decode("0102")), ByteBuffer.allocate(4)));
+        writeSet.commit();
+        assertArrayEquals(Hex.decode("eeff"), db.get(Hex.decode("0105")));
+    }
+
+    @Test
+    public void testVerify() {
+        writeSet.setVerify(true);
+        writeSet.begin();
+        source.put(Hex.decode("0103"), Hex.decode("cc"));
+        writeSet.commit();
+        assertEquals(1, writeSet.getCommits());
+        assertEquals(0, writeSet.getMismatches());
+    }
+
+    @Test
+    public void testJournalFinishesCommit() {
+        FailingSource failing = new FailingSource();
+        WriteSetKVSource other = new WriteSetKVSource(failing, writeSet);
+        writeSet.setJournal(source, Hex.decode("ff"));
+
+        // the second batch fails once and is written again from the journal
+        failing.failures = 1;
+        writeSet.begin();
+        source.put(Hex.decode("0103"), Hex.decode("cc"));
+        other.put(Hex.decode("0201"), Hex.decode("dd"));
+        writeSet.commit();
+        assertEquals("cc", Hex.toHexString(db.get(Hex.decode("0103"))));
+        assertEquals("dd", Hex.toHexString(failing.get(Hex.decode("0201"))));
+        assertNull(db.get(Hex.decode("ff")));
+        // the commit closed the write set, a rollback after it does nothing
+        writeSet.rollback();
+
+        // it keeps failing: the journal stays and no write set can begin until it is replayed
+        failing.failures = 2;
+        writeSet.begin();
+        source.delete(Hex.decode("0103"));
+        other.put(Hex.decode("0202"), Hex.decode("ee"));
+        try {
+            writeSet.commit();
+            throw new AssertionError("commit should fail");
+        } catch (IllegalStateException e) {
+            writeSet.rollback();
+        }
+        assertNull(db.get(Hex.decode("0103")));
+        assertNull(failing.get(Hex.decode("0202")));
+        try {
+            writeSet.begin();
+            throw new AssertionError("begin should fail");
+        } catch (IllegalStateException e) {
+            assertFalse(writeSet.isActive());
+        }
+
+        // next start
+        WriteSet restarted = new WriteSet();
+        WriteSetKVSource index = new WriteSetKVSource(db, restarted);
+        new WriteSetKVSource(failing, restarted);
+        restarted.setJournal(index, Hex.decode("ff"));
+        assertEquals(1, restarted.recover());
+        assertEquals("ee", Hex.toHexString(failing.get(Hex.decode("0202"))));
+        assertNull(db.get(Hex.decode("ff")));
+        assertEquals(0, restarted.recover());
+    }
+
+    private static class FailingSource extends MemoryKVSource {
+
+        private int failures;
+
+        FailingSource() {
+            super("OTHER");
+        }
+
+        @Override
+        public void writeBatch(Map<byte[], byte[]> updates) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("write failed");
+            }
+            super.writeBatch(updates);
+        }
+    }
+}
@@ -27,12 +27,16 @@ package io.xdag.db.store;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.core.Block;
+import io.xdag.core.MinedBlock;
 import io.xdag.core.XAmount;
+import io.xdag.core.XUnit;
 import io.xdag.core.XdagBlock;
 import io.xdag.core.XdagStats;
 import io.xdag.crypto.Keys;
 import io.xdag.db.BlockStore;
 import io.xdag.db.rocksdb.*;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.besu.crypto.KeyPair;
@@ -159,6 +163,32 @@ public class BlockStoreImplTest {
         assertTrue(equalBytes(bs.getOurBlock(1).toArray(), new byte[]{0}));
     }
 
+    @Test
+    public void testMinedBlocks() {
+        BlockStore bs = new BlockStoreImpl(indexSource, timeSource, blockSource,TxHistorySource);
+        bs.start();
+        assertEquals(-1, bs.getMinedFloor());
+        bs.saveMinedFloor(3);
+        assertEquals(3, bs.getMinedFloor());
+
+        for (long height : new long[]{3, 7, 12, 5}) {
+            bs.saveMinedBlock(new MinedBlock(height, Bytes32.leftPad(Bytes.ofUnsignedLong(height)), (int) height,
+                    XAmount.of(height, XUnit.XDAG), false));
+        }
+        bs.saveMinedBlock(bs.getMinedBlock(7).withPaid());
+        bs.removeMinedBlock(5);
+
+        List<MinedBlock> mined = bs.getMinedBlocks(2);
+        assertEquals(2, mined.size());
+        assertEquals(12, mined.get(0).getHeight());
+        assertEquals(7, mined.get(1).getHeight());
+        assertTrue(mined.get(1).isPaid());
+        assertEquals(7, mined.get(1).getKeyIndex());
+        assertEquals(XAmount.of(7, XUnit.XDAG), mined.get(1).getReward());
+        assertEquals(3, bs.getMinedBlocks(10).size());
+        assertNull(bs.getMinedBlock(5));
+    }
+
     @Test
     public void testSaveBlockSums()
             throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
@@ -0,0 +1,160 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.listener;
+
+import static io.xdag.config.Constants.MessageType.NEW_LINK;
+import static io.xdag.config.Constants.MessageType.PRE_TOP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.apache.tuweni.bytes.Bytes;
+import org.junit.After;
+import org.junit.Test;
+
+public class EventBusTest {
+
+    private final EventBus bus = new EventBus();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Message> received = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        bus.close();
+    }
+
+    @Test
+    public void testPublishDoesNotWaitForListener() throws InterruptedException {
+        EventBus.Subscription subscription = bus.subscribe("slow", 2, EventBus.OverflowPolicy.DROP_OLDEST, blocking());
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            bus.publish(block(i));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+
+        release.countDown();
+        waitDelivered(subscription, 10 - subscription.getDropped());
+        assertEquals(10, subscription.getPublished());
+        // the first block is taken by the listener before the buffer fills, the last two survive
+        assertEquals(Bytes.of(9), received.get(received.size() - 1).getData());
+        assertTrue(subscription.getDropped() >= 7);
+    }
+
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        EventBus.Subscription subscription = bus.subscribe("slow", 2, EventBus.OverflowPolicy.DROP_NEWEST, blocking());
+        for (int i = 0; i < 10; i++) {
+            bus.publish(block(i));
+        }
+        release.countDown();
+        waitDelivered(subscription, 10 - subscription.getDropped());
+        assertEquals(Bytes.of(0), received.get(0).getData());
+        assertTrue(received.size() <= 3);
+    }
+
+    @Test
+    public void testCoalesceKeepsLatestOfType() throws InterruptedException {
+        EventBus.Subscription subscription = bus.subscribe("slow", 8, EventBus.OverflowPolicy.COALESCE, blocking());
+        bus.publish(block(0));
+        waitUntil(() -> subscription.getPending() == 0);
+        for (int i = 1; i <= 5; i++) {
+            bus.publish(new PretopMessage(Bytes.of(i), PRE_TOP));
+        }
+        bus.publish(block(6));
+        assertEquals(2, subscription.getPending());
+        assertEquals(4, subscription.getCoalesced());
+
+        release.countDown();
+        waitDelivered(subscription, 3);
+        assertEquals(Bytes.of(5), received.get(1).getData());
+        assertEquals(Bytes.of(6), received.get(2).getData());
+    }
+
+    @Test
+    public void testKeepBlocks() throws InterruptedException {
+        EventBus.Subscription subscription = bus.subscribe("slow", 2, EventBus.OverflowPolicy.KEEP_BLOCKS, blocking());
+        bus.publish(block(0));
+        waitUntil(() -> subscription.getPending() == 0);
+        bus.publish(new PretopMessage(Bytes.of(1), PRE_TOP));
+        bus.publish(block(2));
+        // the pretop makes room for the block
+        bus.publish(block(3));
+        // only blocks are pending, the pretop is dropped and further blocks go past capacity
+        bus.publish(new PretopMessage(Bytes.of(4), PRE_TOP));
+        bus.publish(block(5));
+        assertEquals(3, subscription.getPending());
+        assertEquals(2, subscription.getDropped());
+
+        release.countDown();
+        waitDelivered(subscription, 4);
+        assertEquals(List.of(Bytes.of(0), Bytes.of(2), Bytes.of(3), Bytes.of(5)),
+                received.stream().map(Message::getData).toList());
+    }
+
+    @Test
+    public void testFailingListenerKeepsRunning() throws InterruptedException {
+        EventBus.Subscription subscription = bus.subscribe("failing", 8, EventBus.OverflowPolicy.DROP_OLDEST, message -> {
+            received.add(message);
+            if (received.size() == 1) {
+                throw new IllegalStateException("boom");
+            }
+        });
+        bus.publish(block(0));
+        bus.publish(block(1));
+        waitUntil(() -> received.size() == 2);
+        assertEquals(1, subscription.getFailed());
+    }
+
+    private Listener blocking() {
+        return message -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(message);
+        };
+    }
+
+    private static Message block(int i) {
+        return new BlockMessage(Bytes.of(i), NEW_LINK);
+    }
+
+    private void waitDelivered(EventBus.Subscription subscription, long count) throws InterruptedException {
+        waitUntil(() -> subscription.getDelivered() >= count && subscription.getPending() == 0);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -160,6 +160,24 @@ public class WalletTest {
         assertEquals(oldAccountSize, wallet.getAccounts().size());
     }
 
+    @Test
+    public void testGetAccountIndex()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        wallet.unlock(pwd);
+        KeyPair key1 = Keys.createEcKeyPair();
+        KeyPair key2 = Keys.createEcKeyPair();
+        wallet.addAccount(key1);
+        wallet.addAccount(key2);
+        List<KeyPair> accounts = wallet.getAccounts();
+        assertEquals(accounts.indexOf(key1), wallet.getAccountIndex(Keys.toBytesAddress(key1)));
+        assertEquals(accounts.indexOf(key2), wallet.getAccountIndex(Keys.toBytesAddress(key2)));
+
+        wallet.removeAccount(key1);
+        accounts = wallet.getAccounts();
+        assertEquals(-1, wallet.getAccountIndex(Keys.toBytesAddress(key1)));
+        assertEquals(accounts.indexOf(key2), wallet.getAccountIndex(Keys.toBytesAddress(key2)));
+    }
+
     @Test
     public void testInitializeHdWallet() {
         wallet.initializeHdWallet(SampleKeys.MNEMONIC);